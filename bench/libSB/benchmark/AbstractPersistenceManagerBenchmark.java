@@ -0,0 +1,113 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.benchmark;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Save and restore of a {@link Workload} through every {@link Backend}, the
+ * subclasses choose the shape of the workload.
+ * Throughput and sampled latency percentiles are reported per parameter
+ * combination, the allocation rate when run with {@code -prof gc} or through
+ * {@link BenchmarkRunner}.
+ * <p>
+ * Each save changes one value of the workload beforehand.
+ *
+ * @author Simon Berndt
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public abstract class AbstractPersistenceManagerBenchmark {
+
+    @Param({"PROPERTIES", "DOM", "STREAMING_XML", "PREFERENCES", "BINARY", "LOG"})
+    public Backend backend;
+
+    private Path directory;
+    private Backend.Instance instance;
+    private Workload workload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+	this.directory = Files.createTempDirectory("libSB-benchmark");
+	this.instance = this.backend.open(this.directory);
+	this.workload = createWorkload();
+	this.instance.save(this.workload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+	this.instance.close();
+	Files.walkFileTree(this.directory, new SimpleFileVisitor<Path>() {
+	    @Override
+	    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+		Files.delete(file);
+		return FileVisitResult.CONTINUE;
+	    }
+
+	    @Override
+	    public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+		Files.delete(dir);
+		return FileVisitResult.CONTINUE;
+	    }
+	});
+    }
+
+    protected abstract Workload createWorkload();
+
+    @Benchmark
+    public void save() {
+	this.workload.touch();
+	this.instance.save(this.workload);
+    }
+
+    @Benchmark
+    public long restore() throws IOException {
+	this.instance.restore(this.workload);
+	return this.workload.checksum();
+    }
+
+}
@@ -0,0 +1,193 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.Saveable;
+import libSB.persistence.binaryBased.BinaryPersistenceManager;
+import libSB.persistence.logBased.LogStructuredPersistenceManager;
+import libSB.persistence.preferenceBased.PreferenceBasedPersistanceManager;
+import libSB.persistence.propertiesBased.PropertiesPersistenceManager;
+import libSB.persistence.xmlBased.DOMPersistenceManager;
+import libSB.persistence.xmlBased.DocumentIO;
+import libSB.persistence.xmlBased.StreamingXMLPersistenceManager;
+import org.w3c.dom.Document;
+
+/**
+ * The backends under benchmark. Every save and restore includes the
+ * backend's storage I/O.
+ *
+ * @author Simon Berndt
+ */
+public enum Backend {
+
+    PROPERTIES {
+	@Override
+	Instance open(Path directory) {
+	    return new ManagerInstance(new PropertiesPersistenceManager(directory.resolve("persistedValues.xml")));
+	}
+    },
+    DOM {
+	@Override
+	Instance open(Path directory) throws IOException {
+	    return new DocumentInstance(directory.resolve("persistedValues.xml"));
+	}
+    },
+    STREAMING_XML {
+	@Override
+	Instance open(Path directory) {
+	    return new ManagerInstance(new StreamingXMLPersistenceManager(directory.resolve("persistedValues.xml")));
+	}
+    },
+    PREFERENCES {
+	@Override
+	Instance open(Path directory) {
+	    return new PreferencesInstance(directory.getFileName().toString());
+	}
+    },
+    BINARY {
+	@Override
+	Instance open(Path directory) {
+	    return new ManagerInstance(new BinaryPersistenceManager(directory.resolve("persistedValues.bin")));
+	}
+    },
+    LOG {
+	@Override
+	Instance open(Path directory) throws IOException {
+	    final LogStructuredPersistenceManager manager = new LogStructuredPersistenceManager(directory.resolve("log"));
+	    return new ManagerInstance(manager) {
+		@Override
+		public void close() throws IOException {
+		    manager.close();
+		}
+	    };
+	}
+    };
+
+    private static final String PREFERENCES_APPLICATION = "libSB-benchmark";
+
+    abstract Instance open(Path directory) throws IOException;
+
+    interface Instance extends AutoCloseable {
+
+	void save(Saveable saveable);
+
+	void restore(Loadable loadable) throws IOException;
+
+	@Override
+	void close() throws IOException;
+
+    }
+
+    private static class ManagerInstance implements Instance {
+
+	private final PersistenceManager manager;
+
+	ManagerInstance(PersistenceManager manager) {
+	    this.manager = manager;
+	}
+
+	@Override
+	public void save(Saveable saveable) {
+	    this.manager.save(saveable);
+	}
+
+	@Override
+	public void restore(Loadable loadable) {
+	    this.manager.restore(loadable);
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+
+    }
+
+    private static final class DocumentInstance implements Instance {
+
+	private final Path file;
+	private final DocumentIO documentIO;
+	private final Document document;
+	private final PersistenceManager manager;
+
+	DocumentInstance(Path file) throws IOException {
+	    this.file = file;
+	    this.documentIO = new DocumentIO();
+	    try {
+		this.document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+	    } catch (final ParserConfigurationException ex) {
+		throw new IOException(ex);
+	    }
+	    this.manager = new DOMPersistenceManager(this.document);
+	}
+
+	@Override
+	public void save(Saveable saveable) {
+	    this.manager.save(saveable);
+	    try {
+		this.documentIO.writeDocumentToXML(this.document, this.file);
+	    } catch (final IOException ex) {
+		throw new IllegalStateException(ex);
+	    }
+	}
+
+	@Override
+	public void restore(Loadable loadable) throws IOException {
+	    new DOMPersistenceManager(this.documentIO.loadDocumentFromXML(this.file)).restore(loadable);
+	}
+
+	@Override
+	public void close() {
+	}
+
+    }
+
+    private static final class PreferencesInstance extends ManagerInstance {
+
+	private final String subModule;
+
+	PreferencesInstance(String subModule) {
+	    super(new PreferenceBasedPersistanceManager(PREFERENCES_APPLICATION, subModule));
+	    this.subModule = subModule;
+	}
+
+	@Override
+	public void close() throws IOException {
+	    try {
+		Preferences.userRoot().node(PREFERENCES_APPLICATION + '/' + this.subModule).removeNode();
+	    } catch (final BackingStoreException ex) {
+		throw new IOException(ex);
+	    }
+	}
+
+    }
+
+}
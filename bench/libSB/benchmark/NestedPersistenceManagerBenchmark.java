@@ -0,0 +1,55 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.benchmark;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Workloads with nested lists. A workload of depth 2 holds
+ * {@code 1 + listLength + listLength * listLength} times the values of a flat
+ * one, so key counts and value sizes stay small enough to keep a save at a few
+ * megabytes.
+ *
+ * @author Simon Berndt
+ */
+public class NestedPersistenceManagerBenchmark extends AbstractPersistenceManagerBenchmark {
+
+    @Param({"10", "100"})
+    public int keyCount;
+
+    @Param({"16", "256"})
+    public int valueSize;
+
+    @Param({"1", "2"})
+    public int nestingDepth;
+
+    @Param({"10"})
+    public int listLength;
+
+    @Override
+    protected Workload createWorkload() {
+	return new Workload(this.keyCount, this.valueSize, this.nestingDepth, this.listLength, 42);
+    }
+
+}
@@ -0,0 +1,194 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import libSB.byteTools.StandardByteConverters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every conversion of {@link StandardByteConverters} in both directions. The
+ * inputs are held in non-final fields so the JIT cannot fold them.
+ *
+ * @author Simon Berndt
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StandardByteConvertersBenchmark {
+
+    @Param({"8", "256"})
+    public int stringLength;
+
+    private Byte byteValue;
+    private Short shortValue;
+    private Integer intValue;
+    private Long longValue;
+    private Float floatValue;
+    private Double doubleValue;
+    private Boolean booleanValue;
+    private Character charValue;
+    private String stringValue;
+
+    private byte[] byteBytes;
+    private byte[] shortBytes;
+    private byte[] intBytes;
+    private byte[] longBytes;
+    private byte[] floatBytes;
+    private byte[] doubleBytes;
+    private byte[] booleanBytes;
+    private byte[] charBytes;
+    private byte[] stringBytes;
+
+    @Setup
+    public void setUp() {
+	this.byteValue = (byte) 42;
+	this.shortValue = (short) 4242;
+	this.intValue = 424242;
+	this.longValue = 4242424242L;
+	this.floatValue = 42.42f;
+	this.doubleValue = 4242.4242;
+	this.booleanValue = Boolean.TRUE;
+	this.charValue = '\u00e4';
+	final StringBuilder string = new StringBuilder(this.stringLength);
+	for (int i = 0; i < this.stringLength; i++) {
+	    string.append((char) ('a' + i % 26));
+	}
+	this.stringValue = string.toString();
+
+	this.byteBytes = StandardByteConverters.byteToBytes(this.byteValue);
+	this.shortBytes = StandardByteConverters.shortToBytes(this.shortValue);
+	this.intBytes = StandardByteConverters.intToBytes(this.intValue);
+	this.longBytes = StandardByteConverters.longToBytes(this.longValue);
+	this.floatBytes = StandardByteConverters.floatToBytes(this.floatValue);
+	this.doubleBytes = StandardByteConverters.doubleToBytes(this.doubleValue);
+	this.booleanBytes = StandardByteConverters.booleanToBytes(this.booleanValue);
+	this.charBytes = StandardByteConverters.charToBytes(this.charValue);
+	this.stringBytes = StandardByteConverters.stringToBytes(this.stringValue);
+    }
+
+    @Benchmark
+    public byte[] byteToBytes() {
+	return StandardByteConverters.byteToBytes(this.byteValue);
+    }
+
+    @Benchmark
+    public Byte byteFromBytes() {
+	return StandardByteConverters.byteFromBytes(this.byteBytes);
+    }
+
+    @Benchmark
+    public byte[] shortToBytes() {
+	return StandardByteConverters.shortToBytes(this.shortValue);
+    }
+
+    @Benchmark
+    public Short shortFromBytes() {
+	return StandardByteConverters.shortFromBytes(this.shortBytes);
+    }
+
+    @Benchmark
+    public byte[] intToBytes() {
+	return StandardByteConverters.intToBytes(this.intValue);
+    }
+
+    @Benchmark
+    public Integer intFromBytes() {
+	return StandardByteConverters.intFromBytes(this.intBytes);
+    }
+
+    @Benchmark
+    public byte[] longToBytes() {
+	return StandardByteConverters.longToBytes(this.longValue);
+    }
+
+    @Benchmark
+    public Long longFromBytes() {
+	return StandardByteConverters.longFromBytes(this.longBytes);
+    }
+
+    @Benchmark
+    public byte[] floatToBytes() {
+	return StandardByteConverters.floatToBytes(this.floatValue);
+    }
+
+    @Benchmark
+    public Float floatFromBytes() {
+	return StandardByteConverters.floatFromBytes(this.floatBytes);
+    }
+
+    @Benchmark
+    public byte[] doubleToBytes() {
+	return StandardByteConverters.doubleToBytes(this.doubleValue);
+    }
+
+    @Benchmark
+    public Double doubleFromBytes() {
+	return StandardByteConverters.doubleFromBytes(this.doubleBytes);
+    }
+
+    @Benchmark
+    public byte[] booleanToBytes() {
+	return StandardByteConverters.booleanToBytes(this.booleanValue);
+    }
+
+    @Benchmark
+    public Boolean booleanFromBytes() {
+	return StandardByteConverters.booleanFromBytes(this.booleanBytes);
+    }
+
+    @Benchmark
+    public byte[] charToBytes() {
+	return StandardByteConverters.charToBytes(this.charValue);
+    }
+
+    @Benchmark
+    public Character charFromBytes() {
+	return StandardByteConverters.charFromBytes(this.charBytes);
+    }
+
+    @Benchmark
+    public byte[] stringToBytes() {
+	return StandardByteConverters.stringToBytes(this.stringValue);
+    }
+
+    @Benchmark
+    public String stringFromBytes() {
+	return StandardByteConverters.stringFromBytes(this.stringBytes);
+    }
+
+}
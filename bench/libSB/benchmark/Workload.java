@@ -0,0 +1,111 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Persistable;
+import libSB.persistence.SaveVisitor;
+
+/**
+ * Synthetic state object: {@code keyCount} values of {@code valueSize} random
+ * bytes each, plus, while {@code nestingDepth} is positive, a nested list of
+ * {@code listLength} items that are workloads one level shallower.
+ *
+ * @author Simon Berndt
+ */
+final class Workload implements Persistable {
+
+    private static final String NESTED_KEY = "items";
+
+    private final String[] keys;
+    private final byte[][] values;
+    private final List<Workload> items;
+    private long checksum;
+    private int revision;
+
+    Workload(int keyCount, int valueSize, int nestingDepth, int listLength, long seed) {
+	final Random random = new Random(seed);
+	this.keys = new String[keyCount];
+	this.values = new byte[keyCount][valueSize];
+	for (int i = 0; i < keyCount; i++) {
+	    this.keys[i] = "key" + i;
+	    random.nextBytes(this.values[i]);
+	}
+	this.items = new ArrayList<>();
+	if (nestingDepth > 0) {
+	    for (int i = 0; i < listLength; i++) {
+		this.items.add(new Workload(keyCount, valueSize, nestingDepth - 1, listLength, random.nextLong()));
+	    }
+	}
+    }
+
+    /**
+     * Changes one value, so incremental backends have something to write.
+     */
+    void touch() {
+	if (this.keys.length > 0 && this.values[0].length > 0) {
+	    this.values[this.revision++ % this.keys.length][0]++;
+	}
+    }
+
+    long checksum() {
+	return this.checksum;
+    }
+
+    @Override
+    public void accept(SaveVisitor visitor) {
+	for (int i = 0; i < this.keys.length; i++) {
+	    final byte[] value = this.values[i];
+	    visitor.persistSingle(this.keys[i], () -> value, Function.<byte[]>identity());
+	}
+	if (!this.items.isEmpty()) {
+	    visitor.persistNested(NESTED_KEY, this.items.stream().map((Workload item) -> (Consumer<SaveVisitor>) item::accept));
+	}
+    }
+
+    @Override
+    public void accept(LoadVisitor visitor) {
+	this.checksum = 0;
+	for (final String key : this.keys) {
+	    visitor.restoreSingle(key, (byte[] value) -> this.checksum += value.length, Function.<byte[]>identity());
+	}
+	if (!this.items.isEmpty()) {
+	    final Iterator<Workload> targets = this.items.iterator();
+	    visitor.restoreNested(NESTED_KEY).forEach((LoadVisitor itemVisitor) -> {
+		if (targets.hasNext()) {
+		    final Workload item = targets.next();
+		    item.accept(itemVisitor);
+		    this.checksum += item.checksum;
+		}
+	    });
+	}
+    }
+
+}
@@ -0,0 +1,62 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts values directly into and out of a caller provided buffer, so many
+ * values can share one buffer without allocating per value.
+ * <p>
+ * Values are written and read at the buffer's position, which is advanced by
+ * the encoded size.
+ *
+ * @author Simon Berndt
+ */
+public interface BufferConverter<T> {
+
+    /**
+     * @return the number of bytes {@link #write(Object, ByteBuffer)} writes
+     * for {@code value}
+     */
+    int sizeOf(T value);
+
+    /**
+     * @throws IllegalArgumentException          if {@code value} is
+     *                                           {@code null}
+     * @throws java.nio.BufferOverflowException if {@code target} has less
+     *                                           than {@link #sizeOf(Object)}
+     *                                           bytes remaining
+     */
+    void write(T value, ByteBuffer target);
+
+    /**
+     * @throws java.nio.BufferUnderflowException if {@code source} ends within
+     *                                            the value
+     * @throws IllegalArgumentException           if the bytes are not a valid
+     *                                            encoding
+     */
+    T read(ByteBuffer source);
+
+}
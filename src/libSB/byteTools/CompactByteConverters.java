@@ -0,0 +1,360 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Variable length counterparts of {@link StandardByteConverters}, for values
+ * that are usually small. Integers are written as unsigned LEB128 varints,
+ * seven bits per byte with the high bit marking that another byte follows.
+ * The zigzag variants map signed values of small magnitude to small unsigned
+ * ones first. Counts of booleans and sequences are varints as well.
+ * <p>
+ * Decoders reject truncated input, overlong varints, values out of range and
+ * trailing bytes with an {@link IllegalArgumentException}.
+ *
+ * @author Simon Berndt
+ */
+public final class CompactByteConverters {
+
+    private static final int MAX_INT_VARINT_BYTES = 5;
+    private static final int MAX_LONG_VARINT_BYTES = 10;
+
+    private CompactByteConverters() {
+    }
+
+    public static byte[] varIntToBytes(Integer i) {
+	if (i == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	final Writer writer = new Writer(MAX_INT_VARINT_BYTES);
+	writer.putVarInt(i);
+	return writer.toBytes();
+    }
+
+    public static Integer varIntFromBytes(byte[] b) {
+	final Reader reader = new Reader(b);
+	final int value = reader.getVarInt();
+	reader.requireEnd();
+	return value;
+    }
+
+    public static byte[] varLongToBytes(Long l) {
+	if (l == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	final Writer writer = new Writer(MAX_LONG_VARINT_BYTES);
+	writer.putVarLong(l);
+	return writer.toBytes();
+    }
+
+    public static Long varLongFromBytes(byte[] b) {
+	final Reader reader = new Reader(b);
+	final long value = reader.getVarLong();
+	reader.requireEnd();
+	return value;
+    }
+
+    public static byte[] zigZagIntToBytes(Integer i) {
+	if (i == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	return varIntToBytes(zigZag(i));
+    }
+
+    public static Integer zigZagIntFromBytes(byte[] b) {
+	return unZigZag(varIntFromBytes(b));
+    }
+
+    public static byte[] zigZagLongToBytes(Long l) {
+	if (l == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	return varLongToBytes(zigZag(l));
+    }
+
+    public static Long zigZagLongFromBytes(byte[] b) {
+	return unZigZag(varLongFromBytes(b));
+    }
+
+    /**
+     * The count followed by the flags, eight per byte, lowest bit first.
+     */
+    public static byte[] packedBooleansToBytes(boolean[] flags) {
+	if (flags == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	final Writer writer = new Writer(MAX_INT_VARINT_BYTES + (flags.length + 7) / 8);
+	writer.putVarInt(flags.length);
+	for (int i = 0; i < flags.length; i += 8) {
+	    int packed = 0;
+	    for (int bit = 0; bit < 8 && i + bit < flags.length; bit++) {
+		if (flags[i + bit]) {
+		    packed |= 1 << bit;
+		}
+	    }
+	    writer.put((byte) packed);
+	}
+	return writer.toBytes();
+    }
+
+    public static boolean[] packedBooleansFromBytes(byte[] b) {
+	final Reader reader = new Reader(b);
+	final int count = reader.getVarInt();
+	if (count < 0 || (count + 7L) / 8 != reader.remaining()) {
+	    throw new IllegalArgumentException("Flag count " + count + " does not match " + reader.remaining() + " remaining bytes");
+	}
+	final boolean[] flags = new boolean[count];
+	for (int i = 0; i < count; i += 8) {
+	    final int packed = reader.get() & 0xFF;
+	    final int bits = Math.min(8, count - i);
+	    if (packed >>> bits != 0) {
+		throw new IllegalArgumentException("Flags set beyond the count");
+	    }
+	    for (int bit = 0; bit < bits; bit++) {
+		flags[i + bit] = (packed & (1 << bit)) != 0;
+	    }
+	}
+	return flags;
+    }
+
+    /**
+     * The set bits packed like {@link #packedBooleansToBytes(boolean[])},
+     * without a count. Trailing clear bits are not written.
+     */
+    public static byte[] bitSetToBytes(BitSet bits) {
+	if (bits == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	return bits.toByteArray();
+    }
+
+    public static BitSet bitSetFromBytes(byte[] b) {
+	if (b == null) {
+	    throw new IllegalArgumentException("Null bytes");
+	}
+	if (b.length > 0 && b[b.length - 1] == 0) {
+	    throw new IllegalArgumentException("Trailing zero byte");
+	}
+	return BitSet.valueOf(b);
+    }
+
+    /**
+     * The count followed by the first value and the differences between
+     * successive values, all zigzag encoded. Sorted and otherwise clustered
+     * sequences take one or two bytes per value.
+     */
+    public static byte[] deltaIntsToBytes(int[] values) {
+	if (values == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	final Writer writer = new Writer(MAX_INT_VARINT_BYTES * (values.length + 1));
+	writer.putVarInt(values.length);
+	int previous = 0;
+	for (final int value : values) {
+	    writer.putVarInt(zigZag(value - previous));
+	    previous = value;
+	}
+	return writer.toBytes();
+    }
+
+    public static int[] deltaIntsFromBytes(byte[] b) {
+	final Reader reader = new Reader(b);
+	final int[] values = new int[reader.getCount()];
+	int previous = 0;
+	for (int i = 0; i < values.length; i++) {
+	    previous += unZigZag(reader.getVarInt());
+	    values[i] = previous;
+	}
+	reader.requireEnd();
+	return values;
+    }
+
+    public static byte[] deltaLongsToBytes(long[] values) {
+	if (values == null) {
+	    throw new IllegalArgumentException("Null value");
+	}
+	final Writer writer = new Writer(MAX_INT_VARINT_BYTES + MAX_LONG_VARINT_BYTES * values.length);
+	writer.putVarInt(values.length);
+	long previous = 0;
+	for (final long value : values) {
+	    writer.putVarLong(zigZag(value - previous));
+	    previous = value;
+	}
+	return writer.toBytes();
+    }
+
+    public static long[] deltaLongsFromBytes(byte[] b) {
+	final Reader reader = new Reader(b);
+	final long[] values = new long[reader.getCount()];
+	long previous = 0;
+	for (int i = 0; i < values.length; i++) {
+	    previous += unZigZag(reader.getVarLong());
+	    values[i] = previous;
+	}
+	reader.requireEnd();
+	return values;
+    }
+
+    private static int zigZag(int i) {
+	return (i << 1) ^ (i >> 31);
+    }
+
+    private static int unZigZag(int i) {
+	return (i >>> 1) ^ -(i & 1);
+    }
+
+    private static long zigZag(long l) {
+	return (l << 1) ^ (l >> 63);
+    }
+
+    private static long unZigZag(long l) {
+	return (l >>> 1) ^ -(l & 1);
+    }
+
+    private static final class Writer {
+
+	private final byte[] buffer;
+	private int position;
+
+	Writer(int capacity) {
+	    this.buffer = new byte[capacity];
+	}
+
+	void put(byte b) {
+	    this.buffer[this.position++] = b;
+	}
+
+	void putVarInt(int i) {
+	    while ((i & ~0x7F) != 0) {
+		put((byte) (i & 0x7F | 0x80));
+		i >>>= 7;
+	    }
+	    put((byte) i);
+	}
+
+	void putVarLong(long l) {
+	    while ((l & ~0x7FL) != 0) {
+		put((byte) (l & 0x7F | 0x80));
+		l >>>= 7;
+	    }
+	    put((byte) l);
+	}
+
+	byte[] toBytes() {
+	    return Arrays.copyOf(this.buffer, this.position);
+	}
+
+    }
+
+    private static final class Reader {
+
+	private final byte[] buffer;
+	private int position;
+
+	Reader(byte[] buffer) {
+	    if (buffer == null) {
+		throw new IllegalArgumentException("Null bytes");
+	    }
+	    this.buffer = buffer;
+	}
+
+	int remaining() {
+	    return this.buffer.length - this.position;
+	}
+
+	byte get() {
+	    if (this.position >= this.buffer.length) {
+		throw new IllegalArgumentException("Truncated input");
+	    }
+	    return this.buffer[this.position++];
+	}
+
+	int getVarInt() {
+	    int value = 0;
+	    for (int shift = 0; shift < 7 * MAX_INT_VARINT_BYTES; shift += 7) {
+		final byte b = get();
+		// the fifth byte only holds the top four bits
+		if (shift == 28 && (b & 0xF0) != 0) {
+		    throw new IllegalArgumentException("Varint out of int range");
+		}
+		value |= (b & 0x7F) << shift;
+		if (b >= 0) {
+		    requireCanonical(b, shift);
+		    return value;
+		}
+	    }
+	    throw new IllegalArgumentException("Varint too long");
+	}
+
+	long getVarLong() {
+	    long value = 0;
+	    for (int shift = 0; shift < 7 * MAX_LONG_VARINT_BYTES; shift += 7) {
+		final byte b = get();
+		// the tenth byte only holds the top bit
+		if (shift == 63 && (b & 0xFE) != 0) {
+		    throw new IllegalArgumentException("Varint out of long range");
+		}
+		value |= (long) (b & 0x7F) << shift;
+		if (b >= 0) {
+		    requireCanonical(b, shift);
+		    return value;
+		}
+	    }
+	    throw new IllegalArgumentException("Varint too long");
+	}
+
+	/**
+	 * The writers never end a varint of more than one byte with a zero byte,
+	 * so such a varint is an overlong encoding of a shorter one.
+	 */
+	private static void requireCanonical(byte last, int shift) {
+	    if (last == 0 && shift > 0) {
+		throw new IllegalArgumentException("Overlong varint");
+	    }
+	}
+
+	/**
+	 * A count of values taking at least one byte each, checked against the
+	 * remaining input before anything is allocated for them.
+	 */
+	int getCount() {
+	    final int count = getVarInt();
+	    if (count < 0 || count > remaining()) {
+		throw new IllegalArgumentException("Count " + count + " exceeds the " + remaining() + " remaining bytes");
+	    }
+	    return count;
+	}
+
+	void requireEnd() {
+	    if (this.position != this.buffer.length) {
+		throw new IllegalArgumentException(remaining() + " trailing bytes");
+	    }
+	}
+
+    }
+
+}
@@ -0,0 +1,429 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link BufferConverter}s for the types of {@link StandardByteConverters}.
+ * Fixed size values use the same big endian layout. Strings and arrays are
+ * preceded by their length as int, for strings the number of UTF-8 bytes, for
+ * arrays the number of elements.
+ *
+ * @author Simon Berndt
+ */
+public final class StandardBufferConverters {
+
+    public static final BufferConverter<Byte> BYTE = new FixedSize<Byte>(Byte.BYTES) {
+	@Override
+	void put(Byte value, ByteBuffer target) {
+	    target.put(value);
+	}
+
+	@Override
+	public Byte read(ByteBuffer source) {
+	    return source.get();
+	}
+    };
+
+    public static final BufferConverter<Short> SHORT = new FixedSize<Short>(Short.BYTES) {
+	@Override
+	void put(Short value, ByteBuffer target) {
+	    target.putShort(value);
+	}
+
+	@Override
+	public Short read(ByteBuffer source) {
+	    return source.getShort();
+	}
+    };
+
+    public static final BufferConverter<Integer> INT = new FixedSize<Integer>(Integer.BYTES) {
+	@Override
+	void put(Integer value, ByteBuffer target) {
+	    target.putInt(value);
+	}
+
+	@Override
+	public Integer read(ByteBuffer source) {
+	    return source.getInt();
+	}
+    };
+
+    public static final BufferConverter<Long> LONG = new FixedSize<Long>(Long.BYTES) {
+	@Override
+	void put(Long value, ByteBuffer target) {
+	    target.putLong(value);
+	}
+
+	@Override
+	public Long read(ByteBuffer source) {
+	    return source.getLong();
+	}
+    };
+
+    public static final BufferConverter<Float> FLOAT = new FixedSize<Float>(Float.BYTES) {
+	@Override
+	void put(Float value, ByteBuffer target) {
+	    target.putFloat(value);
+	}
+
+	@Override
+	public Float read(ByteBuffer source) {
+	    return source.getFloat();
+	}
+    };
+
+    public static final BufferConverter<Double> DOUBLE = new FixedSize<Double>(Double.BYTES) {
+	@Override
+	void put(Double value, ByteBuffer target) {
+	    target.putDouble(value);
+	}
+
+	@Override
+	public Double read(ByteBuffer source) {
+	    return source.getDouble();
+	}
+    };
+
+    public static final BufferConverter<Boolean> BOOLEAN = new FixedSize<Boolean>(1) {
+	@Override
+	void put(Boolean value, ByteBuffer target) {
+	    target.put(value ? (byte) 1 : (byte) 0);
+	}
+
+	@Override
+	public Boolean read(ByteBuffer source) {
+	    return source.get() > 0;
+	}
+    };
+
+    public static final BufferConverter<Character> CHAR = new FixedSize<Character>(Character.BYTES) {
+	@Override
+	void put(Character value, ByteBuffer target) {
+	    target.putChar(value);
+	}
+
+	@Override
+	public Character read(ByteBuffer source) {
+	    return source.getChar();
+	}
+    };
+
+    /**
+     * Encodes the characters straight into the target buffer. Unpaired
+     * surrogates are written as {@code '?'}, like {@link String#getBytes}.
+     */
+    public static final BufferConverter<String> STRING = new BufferConverter<String>() {
+	@Override
+	public int sizeOf(String value) {
+	    return Integer.BYTES + utf8Length(requireValue(value));
+	}
+
+	@Override
+	public void write(String value, ByteBuffer target) {
+	    final int length = utf8Length(requireValue(value));
+	    requireRemaining(target, Integer.BYTES + length);
+	    target.putInt(length);
+	    for (int i = 0; i < value.length(); i++) {
+		final char c = value.charAt(i);
+		if (c < 0x80) {
+		    target.put((byte) c);
+		} else if (c < 0x800) {
+		    target.put((byte) (0xC0 | c >> 6));
+		    target.put((byte) (0x80 | c & 0x3F));
+		} else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+		    final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+		    target.put((byte) (0xF0 | codePoint >> 18));
+		    target.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+		    target.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+		    target.put((byte) (0x80 | codePoint & 0x3F));
+		} else if (Character.isSurrogate(c)) {
+		    target.put((byte) '?');
+		} else {
+		    target.put((byte) (0xE0 | c >> 12));
+		    target.put((byte) (0x80 | c >> 6 & 0x3F));
+		    target.put((byte) (0x80 | c & 0x3F));
+		}
+	    }
+	}
+
+	@Override
+	public String read(ByteBuffer source) {
+	    final int length = readLength(source, 1);
+	    final String value;
+	    if (source.hasArray()) {
+		value = new String(source.array(), source.arrayOffset() + source.position(), length, StandardCharsets.UTF_8);
+	    } else {
+		final byte[] bytes = new byte[length];
+		source.duplicate().get(bytes);
+		value = new String(bytes, StandardCharsets.UTF_8);
+	    }
+	    source.position(source.position() + length);
+	    return value;
+	}
+    };
+
+    public static final BufferConverter<byte[]> BYTE_ARRAY = new BufferConverter<byte[]>() {
+	@Override
+	public int sizeOf(byte[] value) {
+	    return Integer.BYTES + requireValue(value).length;
+	}
+
+	@Override
+	public void write(byte[] value, ByteBuffer target) {
+	    requireRemaining(target, sizeOf(value));
+	    target.putInt(value.length);
+	    target.put(value);
+	}
+
+	@Override
+	public byte[] read(ByteBuffer source) {
+	    final byte[] value = new byte[readLength(source, 1)];
+	    source.get(value);
+	    return value;
+	}
+    };
+
+    public static final BufferConverter<short[]> SHORT_ARRAY = new BufferConverter<short[]>() {
+	@Override
+	public int sizeOf(short[] value) {
+	    return Integer.BYTES + requireValue(value).length * Short.BYTES;
+	}
+
+	@Override
+	public void write(short[] value, ByteBuffer target) {
+	    requireRemaining(target, sizeOf(value));
+	    target.putInt(value.length);
+	    target.asShortBuffer().put(value);
+	    target.position(target.position() + value.length * Short.BYTES);
+	}
+
+	@Override
+	public short[] read(ByteBuffer source) {
+	    final short[] value = new short[readLength(source, Short.BYTES)];
+	    source.asShortBuffer().get(value);
+	    source.position(source.position() + value.length * Short.BYTES);
+	    return value;
+	}
+    };
+
+    public static final BufferConverter<int[]> INT_ARRAY = new BufferConverter<int[]>() {
+	@Override
+	public int sizeOf(int[] value) {
+	    return Integer.BYTES + requireValue(value).length * Integer.BYTES;
+	}
+
+	@Override
+	public void write(int[] value, ByteBuffer target) {
+	    requireRemaining(target, sizeOf(value));
+	    target.putInt(value.length);
+	    target.asIntBuffer().put(value);
+	    target.position(target.position() + value.length * Integer.BYTES);
+	}
+
+	@Override
+	public int[] read(ByteBuffer source) {
+	    final int[] value = new int[readLength(source, Integer.BYTES)];
+	    source.asIntBuffer().get(value);
+	    source.position(source.position() + value.length * Integer.BYTES);
+	    return value;
+	}
+    };
+
+    public static final BufferConverter<long[]> LONG_ARRAY = new BufferConverter<long[]>() {
+	@Override
+	public int sizeOf(long[] value) {
+	    return Integer.BYTES + requireValue(value).length * Long.BYTES;
+	}
+
+	@Override
+	public void write(long[] value, ByteBuffer target) {
+	    requireRemaining(target, sizeOf(value));
+	    target.putInt(value.length);
+	    target.asLongBuffer().put(value);
+	    target.position(target.position() + value.length * Long.BYTES);
+	}
+
+	@Override
+	public long[] read(ByteBuffer source) {
+	    final long[] value = new long[readLength(source, Long.BYTES)];
+	    source.asLongBuffer().get(value);
+	    source.position(source.position() + value.length * Long.BYTES);
+	    return value;
+	}
+    };
+
+    public static final BufferConverter<float[]> FLOAT_ARRAY = new BufferConverter<float[]>() {
+	@Override
+	public int sizeOf(float[] value) {
+	    return Integer.BYTES + requireValue(value).length * Float.BYTES;
+	}
+
+	@Override
+	public void write(float[] value, ByteBuffer target) {
+	    requireRemaining(target, sizeOf(value));
+	    target.putInt(value.length);
+	    target.asFloatBuffer().put(value);
+	    target.position(target.position() + value.length * Float.BYTES);
+	}
+
+	@Override
+	public float[] read(ByteBuffer source) {
+	    final float[] value = new float[readLength(source, Float.BYTES)];
+	    source.asFloatBuffer().get(value);
+	    source.position(source.position() + value.length * Float.BYTES);
+	    return value;
+	}
+    };
+
+    public static final BufferConverter<double[]> DOUBLE_ARRAY = new BufferConverter<double[]>() {
+	@Override
+	public int sizeOf(double[] value) {
+	    return Integer.BYTES + requireValue(value).length * Double.BYTES;
+	}
+
+	@Override
+	public void write(double[] value, ByteBuffer target) {
+	    requireRemaining(target, sizeOf(value));
+	    target.putInt(value.length);
+	    target.asDoubleBuffer().put(value);
+	    target.position(target.position() + value.length * Double.BYTES);
+	}
+
+	@Override
+	public double[] read(ByteBuffer source) {
+	    final double[] value = new double[readLength(source, Double.BYTES)];
+	    source.asDoubleBuffer().get(value);
+	    source.position(source.position() + value.length * Double.BYTES);
+	    return value;
+	}
+    };
+
+    private StandardBufferConverters() {
+    }
+
+    /**
+     * Writes to a temporary buffer, for callers that need the value as byte
+     * array after all.
+     */
+    public static <T> byte[] toBytes(T value, BufferConverter<T> converter) {
+	final ByteBuffer buffer = ByteBuffer.allocate(converter.sizeOf(value));
+	converter.write(value, buffer);
+	return buffer.array();
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code bytes} hold more than one
+     *                                  value
+     */
+    public static <T> T fromBytes(byte[] bytes, BufferConverter<T> converter) {
+	if (bytes == null) {
+	    throw new IllegalArgumentException();
+	}
+	final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+	final T value;
+	try {
+	    value = converter.read(buffer);
+	} catch (final BufferUnderflowException ex) {
+	    throw new IllegalArgumentException(ex);
+	}
+	if (buffer.hasRemaining()) {
+	    throw new IllegalArgumentException();
+	}
+	return value;
+    }
+
+    static int utf8Length(String value) {
+	int length = value.length();
+	for (int i = 0; i < value.length(); i++) {
+	    final char c = value.charAt(i);
+	    if (c >= 0x800) {
+		if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+		    length += 2;
+		    i++;
+		} else if (!Character.isSurrogate(c)) {
+		    length += 2;
+		}
+	    } else if (c >= 0x80) {
+		length++;
+	    }
+	}
+	return length;
+    }
+
+    private static <T> T requireValue(T value) {
+	if (value == null) {
+	    throw new IllegalArgumentException();
+	}
+	return value;
+    }
+
+    private static void requireRemaining(ByteBuffer buffer, int bytes) {
+	if (buffer.remaining() < bytes) {
+	    throw new BufferOverflowException();
+	}
+    }
+
+    /**
+     * Reads a length prefix and checks that the buffer holds that many
+     * elements of {@code elementSize} bytes.
+     */
+    private static int readLength(ByteBuffer source, int elementSize) {
+	final int length = source.getInt();
+	if (length < 0) {
+	    throw new IllegalArgumentException("Negative length " + length);
+	}
+	if ((long) length * elementSize > source.remaining()) {
+	    throw new BufferUnderflowException();
+	}
+	return length;
+    }
+
+    private abstract static class FixedSize<T> implements BufferConverter<T> {
+
+	private final int size;
+
+	FixedSize(int size) {
+	    this.size = size;
+	}
+
+	@Override
+	public int sizeOf(T value) {
+	    return this.size;
+	}
+
+	@Override
+	public void write(T value, ByteBuffer target) {
+	    put(requireValue(value), target);
+	}
+
+	abstract void put(T value, ByteBuffer target);
+
+    }
+
+}
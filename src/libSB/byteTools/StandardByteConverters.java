@@ -25,8 +25,14 @@ package libSB.byteTools;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
+ * Converters for single values and, in bulk, for primitive arrays and lists
+ * of boxed numbers. Arrays and lists use the layout of the array converters
+ * of {@link StandardBufferConverters}: the element count as int followed by
+ * the elements, copied through a typed view of the buffer in one block.
  *
  * @author Simon Berndt
  */
@@ -182,4 +188,114 @@ final public class StandardByteConverters {
 	}
 	return new String(b, StandardCharsets.UTF_8);
     }
+
+    public static byte[] shortArrayToBytes(short[] a) {
+	return StandardBufferConverters.toBytes(a, StandardBufferConverters.SHORT_ARRAY);
+    }
+
+    public static short[] shortArrayFromBytes(byte[] b) {
+	return StandardBufferConverters.fromBytes(b, StandardBufferConverters.SHORT_ARRAY);
+    }
+
+    public static byte[] intArrayToBytes(int[] a) {
+	return StandardBufferConverters.toBytes(a, StandardBufferConverters.INT_ARRAY);
+    }
+
+    public static int[] intArrayFromBytes(byte[] b) {
+	return StandardBufferConverters.fromBytes(b, StandardBufferConverters.INT_ARRAY);
+    }
+
+    public static byte[] longArrayToBytes(long[] a) {
+	return StandardBufferConverters.toBytes(a, StandardBufferConverters.LONG_ARRAY);
+    }
+
+    public static long[] longArrayFromBytes(byte[] b) {
+	return StandardBufferConverters.fromBytes(b, StandardBufferConverters.LONG_ARRAY);
+    }
+
+    public static byte[] floatArrayToBytes(float[] a) {
+	return StandardBufferConverters.toBytes(a, StandardBufferConverters.FLOAT_ARRAY);
+    }
+
+    public static float[] floatArrayFromBytes(byte[] b) {
+	return StandardBufferConverters.fromBytes(b, StandardBufferConverters.FLOAT_ARRAY);
+    }
+
+    public static byte[] doubleArrayToBytes(double[] a) {
+	return StandardBufferConverters.toBytes(a, StandardBufferConverters.DOUBLE_ARRAY);
+    }
+
+    public static double[] doubleArrayFromBytes(byte[] b) {
+	return StandardBufferConverters.fromBytes(b, StandardBufferConverters.DOUBLE_ARRAY);
+    }
+
+    public static byte[] intListToBytes(List<Integer> l) {
+	if (l == null) {
+	    throw new IllegalArgumentException();
+	}
+	final int[] a = new int[l.size()];
+	int i = 0;
+	for (final Integer element : l) {
+	    a[i++] = requireElement(element);
+	}
+	return intArrayToBytes(a);
+    }
+
+    public static List<Integer> intListFromBytes(byte[] b) {
+	final int[] a = intArrayFromBytes(b);
+	final List<Integer> l = new ArrayList<>(a.length);
+	for (final int element : a) {
+	    l.add(element);
+	}
+	return l;
+    }
+
+    public static byte[] longListToBytes(List<Long> l) {
+	if (l == null) {
+	    throw new IllegalArgumentException();
+	}
+	final long[] a = new long[l.size()];
+	int i = 0;
+	for (final Long element : l) {
+	    a[i++] = requireElement(element);
+	}
+	return longArrayToBytes(a);
+    }
+
+    public static List<Long> longListFromBytes(byte[] b) {
+	final long[] a = longArrayFromBytes(b);
+	final List<Long> l = new ArrayList<>(a.length);
+	for (final long element : a) {
+	    l.add(element);
+	}
+	return l;
+    }
+
+    public static byte[] doubleListToBytes(List<Double> l) {
+	if (l == null) {
+	    throw new IllegalArgumentException();
+	}
+	final double[] a = new double[l.size()];
+	int i = 0;
+	for (final Double element : l) {
+	    a[i++] = requireElement(element);
+	}
+	return doubleArrayToBytes(a);
+    }
+
+    public static List<Double> doubleListFromBytes(byte[] b) {
+	final double[] a = doubleArrayFromBytes(b);
+	final List<Double> l = new ArrayList<>(a.length);
+	for (final double element : a) {
+	    l.add(element);
+	}
+	return l;
+    }
+
+    private static <T> T requireElement(T element) {
+	if (element == null) {
+	    throw new IllegalArgumentException("null element");
+	}
+	return element;
+    }
 }
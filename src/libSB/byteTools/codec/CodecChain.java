@@ -0,0 +1,135 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools.codec;
+
+import java.util.Arrays;
+
+/**
+ * Encodes converted values with a sequence of {@link ValueCodec}s.
+ * <p>
+ * Every encoded value starts with a header: the number of codecs applied,
+ * followed by their ids in the order they were applied. Values shorter than
+ * the threshold are stored raw behind a header of 0, and a codec is skipped
+ * for a value it does not shrink. Decoding only relies on the header, so
+ * values written with a different chain of known codecs can still be read.
+ * <p>
+ * The header changes the stored format, values written without a chain
+ * cannot be read through one.
+ *
+ * @author Simon Berndt
+ */
+public final class CodecChain {
+
+    public static final int DEFAULT_THRESHOLD = 64;
+
+    private final int threshold;
+    private final ValueCodec[] codecs;
+
+    public CodecChain(int threshold, ValueCodec... codecs) {
+	if (threshold < 0) {
+	    throw new IllegalArgumentException("threshold must not be negative");
+	}
+	if (codecs.length > Byte.MAX_VALUE) {
+	    throw new IllegalArgumentException("Too many codecs");
+	}
+	for (int i = 0; i < codecs.length; i++) {
+	    if (codecs[i].getId() == 0) {
+		throw new IllegalArgumentException("Codec id 0 is reserved");
+	    }
+	    for (int j = 0; j < i; j++) {
+		if (codecs[i].getId() == codecs[j].getId()) {
+		    throw new IllegalArgumentException("Duplicate codec id " + codecs[i].getId());
+		}
+	    }
+	}
+	this.threshold = threshold;
+	this.codecs = codecs.clone();
+    }
+
+    public static CodecChain of(ValueCodec... codecs) {
+	return new CodecChain(DEFAULT_THRESHOLD, codecs);
+    }
+
+    public byte[] encode(byte[] raw) {
+	if (raw == null) {
+	    return null;
+	}
+	byte[] encoded = raw;
+	final byte[] applied = new byte[this.codecs.length];
+	int appliedCount = 0;
+	if (raw.length >= this.threshold) {
+	    for (final ValueCodec codec : this.codecs) {
+		final byte[] candidate = codec.encode(encoded);
+		if (candidate.length < encoded.length) {
+		    encoded = candidate;
+		    applied[appliedCount++] = codec.getId();
+		}
+	    }
+	}
+	final byte[] stored = new byte[1 + appliedCount + encoded.length];
+	stored[0] = (byte) appliedCount;
+	System.arraycopy(applied, 0, stored, 1, appliedCount);
+	System.arraycopy(encoded, 0, stored, 1 + appliedCount, encoded.length);
+	return stored;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the header is malformed or names an
+     *                                  unknown codec
+     */
+    public byte[] decode(byte[] stored) {
+	if (stored == null) {
+	    return null;
+	}
+	if (stored.length == 0) {
+	    throw new IllegalArgumentException("Missing codec header");
+	}
+	final int appliedCount = stored[0];
+	if (appliedCount < 0 || 1 + appliedCount > stored.length) {
+	    throw new IllegalArgumentException("Corrupt codec header");
+	}
+	byte[] decoded = Arrays.copyOfRange(stored, 1 + appliedCount, stored.length);
+	for (int i = appliedCount; i > 0; i--) {
+	    decoded = codec(stored[i]).decode(decoded);
+	}
+	return decoded;
+    }
+
+    private ValueCodec codec(byte id) {
+	for (final ValueCodec codec : this.codecs) {
+	    if (codec.getId() == id) {
+		return codec;
+	    }
+	}
+	switch (id) {
+	    case DeflateCodec.ID:
+		return new DeflateCodec();
+	    case LZCodec.ID:
+		return new LZCodec();
+	    default:
+		throw new IllegalArgumentException("Unknown codec id " + id);
+	}
+    }
+
+}
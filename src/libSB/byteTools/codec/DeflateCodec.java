@@ -0,0 +1,113 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw deflate without zlib framing, preceded by the length of the raw value.
+ *
+ * @author Simon Berndt
+ */
+public class DeflateCodec implements ValueCodec {
+
+    public static final byte ID = 1;
+
+    private final int level;
+
+    public DeflateCodec() {
+	this(Deflater.BEST_SPEED);
+    }
+
+    public DeflateCodec(int level) {
+	if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+	    throw new IllegalArgumentException("Invalid compression level " + level);
+	}
+	this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+	return ID;
+    }
+
+    @Override
+    public byte[] encode(byte[] raw) {
+	final Deflater deflater = new Deflater(this.level, true);
+	try {
+	    deflater.setInput(raw);
+	    deflater.finish();
+	    byte[] encoded = new byte[Integer.BYTES + raw.length / 2 + 64];
+	    ByteBuffer.wrap(encoded).putInt(raw.length);
+	    int length = Integer.BYTES;
+	    while (!deflater.finished()) {
+		if (length == encoded.length) {
+		    encoded = Arrays.copyOf(encoded, encoded.length * 2);
+		}
+		length += deflater.deflate(encoded, length, encoded.length - length);
+	    }
+	    return Arrays.copyOf(encoded, length);
+	} finally {
+	    deflater.end();
+	}
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded) {
+	if (encoded.length < Integer.BYTES) {
+	    throw new IllegalArgumentException("Missing raw length");
+	}
+	final int rawLength = ByteBuffer.wrap(encoded).getInt();
+	// deflate cannot compress better than about 1:1032
+	if (rawLength < 0 || rawLength / 1032 > encoded.length) {
+	    throw new IllegalArgumentException("Invalid raw length " + rawLength);
+	}
+	final Inflater inflater = new Inflater(true);
+	try {
+	    inflater.setInput(encoded, Integer.BYTES, encoded.length - Integer.BYTES);
+	    final byte[] raw = new byte[rawLength];
+	    int length = 0;
+	    while (length < rawLength) {
+		final int inflated = inflater.inflate(raw, length, rawLength - length);
+		if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+		    throw new IllegalArgumentException("Truncated deflate data");
+		}
+		length += inflated;
+	    }
+	    if (!inflater.finished() && (inflater.inflate(new byte[1]) != 0 || !inflater.finished())) {
+		throw new IllegalArgumentException("Deflate data does not end at the raw length");
+	    }
+	    return raw;
+	} catch (final DataFormatException ex) {
+	    throw new IllegalArgumentException(ex);
+	} finally {
+	    inflater.end();
+	}
+    }
+
+}
@@ -0,0 +1,208 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools.codec;
+
+import java.util.Arrays;
+
+/**
+ * Fast byte oriented LZ77 compression in the style of LZ4, trading ratio for
+ * speed.
+ * <p>
+ * The raw length as int is followed by sequences of a token byte, literals
+ * and a match. The high nibble of the token is the literal count, the low
+ * nibble the match length minus {@value #MIN_MATCH}, a nibble of 15 is
+ * continued by bytes added to it until one is not 255. The match is a two
+ * byte offset back into the output. The last sequence ends after its
+ * literals.
+ *
+ * @author Simon Berndt
+ */
+public class LZCodec implements ValueCodec {
+
+    public static final byte ID = 2;
+
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int HASH_BITS = 12;
+
+    @Override
+    public byte getId() {
+	return ID;
+    }
+
+    @Override
+    public byte[] encode(byte[] raw) {
+	final Output output = new Output(Integer.BYTES + raw.length + raw.length / 255 + 16);
+	output.putInt(raw.length);
+	final int[] table = new int[1 << HASH_BITS];
+	Arrays.fill(table, -1);
+	int anchor = 0;
+	int position = 0;
+	while (position + MIN_MATCH <= raw.length) {
+	    final int sequence = readInt(raw, position);
+	    final int hash = (sequence * -1640531535) >>> (Integer.SIZE - HASH_BITS);
+	    final int candidate = table[hash];
+	    table[hash] = position;
+	    if (candidate >= 0 && position - candidate <= MAX_OFFSET && readInt(raw, candidate) == sequence) {
+		int matchLength = MIN_MATCH;
+		while (position + matchLength < raw.length && raw[candidate + matchLength] == raw[position + matchLength]) {
+		    matchLength++;
+		}
+		output.putSequence(raw, anchor, position - anchor, position - candidate, matchLength);
+		position += matchLength;
+		anchor = position;
+	    } else {
+		position++;
+	    }
+	}
+	output.putSequence(raw, anchor, raw.length - anchor, 0, 0);
+	return output.toByteArray();
+    }
+
+    @Override
+    public byte[] decode(byte[] encoded) {
+	try {
+	    final int rawLength = readInt(encoded, 0);
+	    // a byte of input expands to at most 255 bytes of output
+	    if (rawLength < 0 || rawLength / 255 > encoded.length) {
+		throw new IllegalArgumentException("Invalid raw length " + rawLength);
+	    }
+	    final byte[] raw = new byte[rawLength];
+	    int in = Integer.BYTES;
+	    int out = 0;
+	    while (true) {
+		final int token = encoded[in++] & 0xFF;
+		int literals = token >>> 4;
+		if (literals == 15) {
+		    int extension;
+		    do {
+			extension = encoded[in++] & 0xFF;
+			literals += extension;
+		    } while (extension == 255);
+		}
+		if (literals > rawLength - out) {
+		    throw new IllegalArgumentException("Literals exceed the raw length");
+		}
+		System.arraycopy(encoded, in, raw, out, literals);
+		in += literals;
+		out += literals;
+		if (out == rawLength) {
+		    break;
+		}
+		final int offset = (encoded[in++] & 0xFF) << 8 | encoded[in++] & 0xFF;
+		if (offset == 0 || offset > out) {
+		    throw new IllegalArgumentException("Invalid match offset " + offset);
+		}
+		int matchLength = token & 0x0F;
+		if (matchLength == 15) {
+		    int extension;
+		    do {
+			extension = encoded[in++] & 0xFF;
+			matchLength += extension;
+		    } while (extension == 255);
+		}
+		matchLength += MIN_MATCH;
+		if (matchLength > rawLength - out) {
+		    throw new IllegalArgumentException("Match exceeds the raw length");
+		}
+		for (int i = 0; i < matchLength; i++, out++) {
+		    raw[out] = raw[out - offset];
+		}
+	    }
+	    if (in != encoded.length) {
+		throw new IllegalArgumentException("Trailing bytes after the last sequence");
+	    }
+	    return raw;
+	} catch (final ArrayIndexOutOfBoundsException ex) {
+	    throw new IllegalArgumentException("Truncated LZ data", ex);
+	}
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+	return (bytes[position] & 0xFF) << 24 | (bytes[position + 1] & 0xFF) << 16 | (bytes[position + 2] & 0xFF) << 8 | bytes[position + 3] & 0xFF;
+    }
+
+    private static final class Output {
+
+	private byte[] bytes;
+	private int length;
+
+	Output(int capacity) {
+	    this.bytes = new byte[capacity];
+	}
+
+	void putInt(int i) {
+	    put((byte) (i >>> 24));
+	    put((byte) (i >>> 16));
+	    put((byte) (i >>> 8));
+	    put((byte) i);
+	}
+
+	/**
+	 * A match length of 0 marks the last sequence.
+	 */
+	void putSequence(byte[] source, int literalStart, int literals, int offset, int matchLength) {
+	    final int matchCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+	    put((byte) (Math.min(literals, 15) << 4 | Math.min(matchCode, 15)));
+	    if (literals >= 15) {
+		putExtension(literals - 15);
+	    }
+	    ensureRemaining(literals);
+	    System.arraycopy(source, literalStart, this.bytes, this.length, literals);
+	    this.length += literals;
+	    if (matchLength > 0) {
+		put((byte) (offset >>> 8));
+		put((byte) offset);
+		if (matchCode >= 15) {
+		    putExtension(matchCode - 15);
+		}
+	    }
+	}
+
+	byte[] toByteArray() {
+	    return Arrays.copyOf(this.bytes, this.length);
+	}
+
+	private void putExtension(int value) {
+	    while (value >= 255) {
+		put((byte) 255);
+		value -= 255;
+	    }
+	    put((byte) value);
+	}
+
+	private void put(byte b) {
+	    ensureRemaining(1);
+	    this.bytes[this.length++] = b;
+	}
+
+	private void ensureRemaining(int count) {
+	    if (this.bytes.length - this.length < count) {
+		this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.length + count));
+	    }
+	}
+
+    }
+
+}
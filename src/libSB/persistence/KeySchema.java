@@ -0,0 +1,112 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The keys of an enum, compiled once into slots. The slot of a key is the
+ * ordinal of its constant, its name is the key the {@code Enum<?>} overloads
+ * of the visitors use. Schemas are cached per enum class.
+ *
+ * @author Simon Berndt
+ * @param <K> the enum holding the keys
+ */
+public final class KeySchema<K extends Enum<K>> {
+
+    private static final ClassValue<KeySchema<?>> SCHEMAS = new ClassValue<KeySchema<?>>() {
+	@Override
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	protected KeySchema<?> computeValue(Class<?> type) {
+	    return new KeySchema(type);
+	}
+    };
+
+    private final Class<K> keyType;
+    private final K[] constants;
+    private final String[] keys;
+    private final byte[][] keyBytes;
+    private final Map<String, Integer> slots;
+
+    private KeySchema(Class<K> keyType) {
+	this.keyType = keyType;
+	this.constants = keyType.getEnumConstants();
+	this.keys = new String[this.constants.length];
+	this.keyBytes = new byte[this.constants.length][];
+	this.slots = new HashMap<>(this.constants.length * 2);
+	for (int slot = 0; slot < this.constants.length; slot++) {
+	    this.keys[slot] = this.constants[slot].name();
+	    this.keyBytes[slot] = this.keys[slot].getBytes(StandardCharsets.UTF_8);
+	    this.slots.put(this.keys[slot], slot);
+	}
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Enum<K>> KeySchema<K> of(Class<K> keyType) {
+	if (!keyType.isEnum()) {
+	    throw new IllegalArgumentException(keyType + " is not an enum");
+	}
+	return (KeySchema<K>) SCHEMAS.get(keyType);
+    }
+
+    public Class<K> keyType() {
+	return this.keyType;
+    }
+
+    public int size() {
+	return this.constants.length;
+    }
+
+    public int slot(K key) {
+	return key.ordinal();
+    }
+
+    /**
+     * @return the slot of {@code key}, {@code -1} if it is not part of the
+     * schema
+     */
+    public int slot(String key) {
+	final Integer slot = this.slots.get(key);
+	return slot != null ? slot : -1;
+    }
+
+    public K constant(int slot) {
+	return this.constants[slot];
+    }
+
+    public String key(int slot) {
+	return this.keys[slot];
+    }
+
+    /**
+     * @return the UTF-8 encoding of the key of {@code slot}, shared and not to
+     * be modified
+     */
+    public byte[] keyBytes(int slot) {
+	return this.keyBytes[slot];
+    }
+
+}
@@ -0,0 +1,83 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence;
+
+import java.util.function.Supplier;
+
+/**
+ * A value resolved on first access and kept from then on. Handed out by
+ * {@link LoadVisitor#restoreLazy(String, java.util.function.Consumer, java.util.function.Function)},
+ * so values that are never read are never converted. Safe for concurrent
+ * access, the source is called at most once.
+ *
+ * @author Simon Berndt
+ * @param <T> the type of the value
+ */
+public final class Lazy<T> implements Supplier<T> {
+
+    private Supplier<? extends T> source;
+    private T value;
+    private volatile boolean resolved;
+
+    private Lazy(Supplier<? extends T> source, T value, boolean resolved) {
+	this.source = source;
+	this.value = value;
+	this.resolved = resolved;
+    }
+
+    public static <T> Lazy<T> of(Supplier<? extends T> source) {
+	if (source == null) {
+	    throw new IllegalArgumentException();
+	}
+	return new Lazy<>(source, null, false);
+    }
+
+    public static <T> Lazy<T> resolved(T value) {
+	return new Lazy<>(null, value, true);
+    }
+
+    @Override
+    public T get() {
+	if (!this.resolved) {
+	    synchronized (this) {
+		if (!this.resolved) {
+		    this.value = this.source.get();
+		    this.source = null;
+		    this.resolved = true;
+		}
+	    }
+	}
+	return this.value;
+    }
+
+    public boolean isResolved() {
+	return this.resolved;
+    }
+
+    @Override
+    public String toString() {
+	return this.resolved ? "Lazy[" + this.value + "]" : "Lazy[?]";
+    }
+
+}
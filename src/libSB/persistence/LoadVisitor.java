@@ -23,9 +23,19 @@
  */
 package libSB.persistence;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.byteTools.StandardBufferConverters;
+import libSB.byteTools.StandardByteConverters;
 
 /**
  *
@@ -39,6 +49,123 @@ public interface LoadVisitor {
         restoreSingle(key.name(), field, typeConverter);
     }
 
+    /**
+     * Like {@link #restoreSingle(String, Consumer, Function)}, but hands the
+     * converter a read-only view of the stored bytes from position to limit.
+     * Backends override this to pass a view of their storage, without
+     * copying the value to a fresh array. The view is only valid during the
+     * call, converters must copy whatever they keep.
+     */
+    default <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+        restoreSingle(key, field, (byte[] bytes) -> viewConverter.apply(ByteBuffer.wrap(bytes).asReadOnlyBuffer()));
+    }
+
+    /**
+     * Like {@link #restoreSingle(String, Consumer, Function)}, but hands out a
+     * {@link Lazy} that only calls the converter when it is first read. The
+     * field is only set if there is a stored value, the handle yields
+     * {@code null} if the converter does. Backends override this to defer
+     * reading and decoding the stored bytes as well.
+     */
+    default <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+        Objects.requireNonNull(typeConverter);
+        restoreSingle(key, (byte[] bytes) -> field.accept(Lazy.of(() -> typeConverter.apply(bytes))), Function.identity());
+    }
+
+    /**
+     * Restores a value persisted in the layout of {@link StandardByteConverters#intToBytes(Integer)}.
+     * Backends override this to avoid boxing the value.
+     */
+    default void restoreInt(String key, IntConsumer field) {
+        restoreSingle(key, (Integer value) -> field.accept(value), StandardByteConverters::intFromBytes);
+    }
+
+    default void restoreInt(Enum<?> key, IntConsumer field) {
+        restoreInt(key.name(), field);
+    }
+
+    /**
+     * @return the restored value, {@code defaultValue} if there is none
+     */
+    default int restoreInt(String key, int defaultValue) {
+        final int[] value = {defaultValue};
+        restoreInt(key, (int restored) -> value[0] = restored);
+        return value[0];
+    }
+
+    /**
+     * Restores a value persisted in the layout of {@link StandardByteConverters#longToBytes(Long)}.
+     * Backends override this to avoid boxing the value.
+     */
+    default void restoreLong(String key, LongConsumer field) {
+        restoreSingle(key, (Long value) -> field.accept(value), StandardByteConverters::longFromBytes);
+    }
+
+    default void restoreLong(Enum<?> key, LongConsumer field) {
+        restoreLong(key.name(), field);
+    }
+
+    /**
+     * @return the restored value, {@code defaultValue} if there is none
+     */
+    default long restoreLong(String key, long defaultValue) {
+        final long[] value = {defaultValue};
+        restoreLong(key, (long restored) -> value[0] = restored);
+        return value[0];
+    }
+
+    /**
+     * Restores a value persisted in the layout of {@link StandardByteConverters#doubleToBytes(Double)}.
+     * Backends override this to avoid boxing the value.
+     */
+    default void restoreDouble(String key, DoubleConsumer field) {
+        restoreSingle(key, (Double value) -> field.accept(value), StandardByteConverters::doubleFromBytes);
+    }
+
+    default void restoreDouble(Enum<?> key, DoubleConsumer field) {
+        restoreDouble(key.name(), field);
+    }
+
+    /**
+     * @return the restored value, {@code defaultValue} if there is none
+     */
+    default double restoreDouble(String key, double defaultValue) {
+        final double[] value = {defaultValue};
+        restoreDouble(key, (double restored) -> value[0] = restored);
+        return value[0];
+    }
+
+    /**
+     * Restores a value persisted in the layout of {@code converter}. Backends
+     * holding their data in a buffer override this to convert in place.
+     */
+    default <T> void restoreBuffered(String key, Consumer<? super T> field, BufferConverter<T> converter) {
+        restoreSingle(key, field, (byte[] bytes) -> StandardBufferConverters.fromBytes(bytes, converter));
+    }
+
+    /**
+     * @return the restored value, {@code defaultValue} if there is none
+     */
+    default <T> T restoreBuffered(String key, BufferConverter<T> converter, T defaultValue) {
+        final List<T> value = new ArrayList<>(1);
+        restoreBuffered(key, (T restored) -> value.add(restored), converter);
+        return value.isEmpty() ? defaultValue : value.get(0);
+    }
+
+    /**
+     * Restores the values of all keys of {@code schema} at once, to be read by
+     * slot afterwards. Backends override this to resolve the keys in a single
+     * pass over their data.
+     */
+    default <K extends Enum<K>> SlotValues<K> restoreSlots(KeySchema<K> schema) {
+        final SlotValues<K> values = new SlotValues<>(schema);
+        for (int slot = 0; slot < schema.size(); slot++) {
+            final int target = slot;
+            restoreSingle(schema.key(slot), (byte[] bytes) -> values.set(target, ByteBuffer.wrap(bytes)), Function.identity());
+        }
+        return values;
+    }
+
     Stream<LoadVisitor> restoreNested(String key);
 
 }
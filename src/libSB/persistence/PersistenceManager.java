@@ -33,4 +33,16 @@ public interface PersistenceManager {
 
     void save(Saveable peristable);
 
+    /**
+     * Like {@link #save(Saveable)}, but tells whether the values reached the
+     * backend's storage. Backends that log and swallow their errors override
+     * this, the default can only report success.
+     *
+     * @return {@code false} if the save failed
+     */
+    default boolean trySave(Saveable peristable) {
+        save(peristable);
+        return true;
+    }
+
 }
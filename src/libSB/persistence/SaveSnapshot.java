@@ -0,0 +1,154 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * The converted output of a {@link Saveable}, recorded once and replayable
+ * into any number of {@link SaveVisitor}s. Suppliers and converters are only
+ * called while recording.
+ *
+ * @author Simon Berndt
+ */
+public final class SaveSnapshot implements Saveable {
+
+    private final List<Entry> entries;
+
+    private SaveSnapshot(List<Entry> entries) {
+	this.entries = Collections.unmodifiableList(entries);
+    }
+
+    public static SaveSnapshot of(Saveable saveable) {
+	final Recorder recorder = new Recorder();
+	saveable.accept(recorder);
+	return new SaveSnapshot(recorder.entries);
+    }
+
+    /**
+     * Combines snapshots taken one after another into one. Of all entries
+     * with the same key only the last one is kept, at the position its key
+     * first appeared.
+     */
+    public static SaveSnapshot merge(List<SaveSnapshot> snapshots) {
+	final Map<String, Entry> merged = new LinkedHashMap<>();
+	for (final SaveSnapshot snapshot : snapshots) {
+	    for (final Entry entry : snapshot.entries) {
+		merged.put(entry.key, entry);
+	    }
+	}
+	return new SaveSnapshot(new ArrayList<>(merged.values()));
+    }
+
+    public List<Entry> entries() {
+	return this.entries;
+    }
+
+    @Override
+    public void accept(SaveVisitor visitor) {
+	for (final Entry entry : this.entries) {
+	    entry.accept(visitor);
+	}
+    }
+
+    public static final class Entry implements Saveable {
+
+	private final String key;
+	private final byte[] value;
+	private final List<SaveSnapshot> items;
+
+	private Entry(String key, byte[] value, List<SaveSnapshot> items) {
+	    this.key = key;
+	    this.value = value;
+	    this.items = items;
+	}
+
+	public String getKey() {
+	    return this.key;
+	}
+
+	public boolean isNested() {
+	    return this.items != null;
+	}
+
+	/**
+	 * @return the converted value, {@code null} for nested entries and
+	 * for values the converter mapped to {@code null}
+	 */
+	public byte[] getValue() {
+	    return this.value;
+	}
+
+	/**
+	 * @return the recorded items of a nested entry, {@code null} otherwise
+	 */
+	public List<SaveSnapshot> getItems() {
+	    return this.items;
+	}
+
+	@Override
+	public void accept(SaveVisitor visitor) {
+	    if (this.items != null) {
+		visitor.persistNested(this.key, this.items.stream().map((SaveSnapshot item) -> (Consumer<SaveVisitor>) item::accept));
+	    } else {
+		visitor.persistSingle(this.key, () -> this.value, Function.<byte[]>identity());
+	    }
+	}
+
+    }
+
+    private static final class Recorder implements SaveVisitor {
+
+	private final List<Entry> entries = new ArrayList<>();
+
+	@Override
+	public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	    Objects.requireNonNull(typeConverter);
+	    this.entries.add(new Entry(key, typeConverter.apply(value.get()), null));
+	}
+
+	@Override
+	public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	    Objects.requireNonNull(values);
+	    final List<SaveSnapshot> items = new ArrayList<>();
+	    values.forEachOrdered((Consumer<? super SaveVisitor> consumer) -> {
+		final Recorder itemRecorder = new Recorder();
+		consumer.accept(itemRecorder);
+		items.add(new SaveSnapshot(itemRecorder.entries));
+	    });
+	    this.entries.add(new Entry(key, null, Collections.unmodifiableList(items)));
+	}
+
+    }
+
+}
@@ -23,10 +23,17 @@
  */
 package libSB.persistence;
 
+import java.nio.ByteBuffer;
 import java.util.function.Consumer;
+import java.util.function.DoubleSupplier;
 import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.byteTools.StandardBufferConverters;
+import libSB.byteTools.StandardByteConverters;
 
 /**
  *
@@ -40,6 +47,78 @@ public interface SaveVisitor {
         persistSingle(key.name(), value, typeConverter);
     }
 
+    /**
+     * Persists the value in the layout of {@link StandardByteConverters#intToBytes(Integer)}.
+     * Backends override this to avoid boxing the value.
+     */
+    default void persistInt(String key, int value) {
+        persistSingle(key, () -> value, StandardByteConverters::intToBytes);
+    }
+
+    default void persistInt(String key, IntSupplier value) {
+        persistInt(key, value.getAsInt());
+    }
+
+    default void persistInt(Enum<?> key, IntSupplier value) {
+        persistInt(key.name(), value.getAsInt());
+    }
+
+    /**
+     * Persists the value in the layout of {@link StandardByteConverters#longToBytes(Long)}.
+     * Backends override this to avoid boxing the value.
+     */
+    default void persistLong(String key, long value) {
+        persistSingle(key, () -> value, StandardByteConverters::longToBytes);
+    }
+
+    default void persistLong(String key, LongSupplier value) {
+        persistLong(key, value.getAsLong());
+    }
+
+    default void persistLong(Enum<?> key, LongSupplier value) {
+        persistLong(key.name(), value.getAsLong());
+    }
+
+    /**
+     * Persists the value in the layout of {@link StandardByteConverters#doubleToBytes(Double)}.
+     * Backends override this to avoid boxing the value.
+     */
+    default void persistDouble(String key, double value) {
+        persistSingle(key, () -> value, StandardByteConverters::doubleToBytes);
+    }
+
+    default void persistDouble(String key, DoubleSupplier value) {
+        persistDouble(key, value.getAsDouble());
+    }
+
+    default void persistDouble(Enum<?> key, DoubleSupplier value) {
+        persistDouble(key.name(), value.getAsDouble());
+    }
+
+    /**
+     * Persists the value in the layout of {@code converter}. Backends writing
+     * into a buffer of their own override this to convert in place.
+     */
+    default <T> void persistBuffered(String key, T value, BufferConverter<T> converter) {
+        persistSingle(key, () -> value, (T plain) -> StandardBufferConverters.toBytes(plain, converter));
+    }
+
+    /**
+     * Persists the set slots of {@code values} in slot order, each under the
+     * key of its slot.
+     */
+    default <K extends Enum<K>> void persistSlots(SlotValues<K> values) {
+        final KeySchema<K> schema = values.schema();
+        for (int slot = 0; slot < schema.size(); slot++) {
+            final ByteBuffer value = values.get(slot);
+            if (value != null) {
+                final byte[] bytes = new byte[value.remaining()];
+                value.get(bytes);
+                persistSingle(schema.key(slot), () -> bytes, Function.identity());
+            }
+        }
+    }
+
     void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values);
 
 }
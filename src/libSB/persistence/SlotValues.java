@@ -0,0 +1,177 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import libSB.byteTools.BufferConverter;
+import libSB.byteTools.StandardBufferConverters;
+
+/**
+ * The values of a {@link KeySchema}, held in an array by slot. Restores
+ * resolve all keys of the schema in one go with
+ * {@link LoadVisitor#restoreSlots(KeySchema)}, saves fill the slots and write
+ * them with {@link SaveVisitor#persistSlots(SlotValues)}. Each value is kept in
+ * its converted layout, as a buffer from position to limit.
+ *
+ * @author Simon Berndt
+ * @param <K> the enum holding the keys
+ */
+public final class SlotValues<K extends Enum<K>> {
+
+    private final KeySchema<K> schema;
+    private final ByteBuffer[] values;
+
+    public SlotValues(KeySchema<K> schema) {
+	this.schema = schema;
+	this.values = new ByteBuffer[schema.size()];
+    }
+
+    public KeySchema<K> schema() {
+	return this.schema;
+    }
+
+    public boolean contains(K key) {
+	return this.values[key.ordinal()] != null;
+    }
+
+    /**
+     * @return the value of {@code slot}, {@code null} if there is none
+     */
+    public ByteBuffer get(int slot) {
+	final ByteBuffer value = this.values[slot];
+	return value != null ? value.duplicate() : null;
+    }
+
+    /**
+     * Sets the value of {@code slot} to the remaining bytes of {@code value},
+     * which must not be modified afterwards.
+     */
+    public void set(int slot, ByteBuffer value) {
+	this.values[slot] = value != null ? value.asReadOnlyBuffer() : null;
+    }
+
+    public void putInt(K key, int value) {
+	set(key.ordinal(), ByteBuffer.allocate(Integer.BYTES).putInt(0, value));
+    }
+
+    public void putLong(K key, long value) {
+	set(key.ordinal(), ByteBuffer.allocate(Long.BYTES).putLong(0, value));
+    }
+
+    public void putDouble(K key, double value) {
+	set(key.ordinal(), ByteBuffer.allocate(Double.BYTES).putDouble(0, value));
+    }
+
+    public <T> void put(K key, T value, BufferConverter<T> converter) {
+	set(key.ordinal(), ByteBuffer.wrap(StandardBufferConverters.toBytes(value, converter)));
+    }
+
+    public <T> void putSingle(K key, T value, Function<T, byte[]> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[] bytes = typeConverter.apply(value);
+	set(key.ordinal(), bytes != null ? ByteBuffer.wrap(bytes) : null);
+    }
+
+    public <T> void restoreSingle(K key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	final ByteBuffer value = this.values[key.ordinal()];
+	if (value != null) {
+	    final byte[] data = new byte[value.remaining()];
+	    value.duplicate().get(data);
+	    field.accept(typeConverter.apply(data));
+	}
+    }
+
+    public void restoreInt(K key, IntConsumer field) {
+	final ByteBuffer value = fixed(key, Integer.BYTES);
+	if (value != null) {
+	    field.accept(value.getInt(value.position()));
+	}
+    }
+
+    public int getInt(K key, int defaultValue) {
+	final ByteBuffer value = fixed(key, Integer.BYTES);
+	return value != null ? value.getInt(value.position()) : defaultValue;
+    }
+
+    public void restoreLong(K key, LongConsumer field) {
+	final ByteBuffer value = fixed(key, Long.BYTES);
+	if (value != null) {
+	    field.accept(value.getLong(value.position()));
+	}
+    }
+
+    public long getLong(K key, long defaultValue) {
+	final ByteBuffer value = fixed(key, Long.BYTES);
+	return value != null ? value.getLong(value.position()) : defaultValue;
+    }
+
+    public void restoreDouble(K key, DoubleConsumer field) {
+	final ByteBuffer value = fixed(key, Double.BYTES);
+	if (value != null) {
+	    field.accept(value.getDouble(value.position()));
+	}
+    }
+
+    public double getDouble(K key, double defaultValue) {
+	final ByteBuffer value = fixed(key, Double.BYTES);
+	return value != null ? value.getDouble(value.position()) : defaultValue;
+    }
+
+    /**
+     * @return the value converted by {@code converter}, {@code defaultValue}
+     * if there is none
+     */
+    public <T> T get(K key, BufferConverter<T> converter, T defaultValue) {
+	final ByteBuffer value = get(key.ordinal());
+	if (value == null) {
+	    return defaultValue;
+	}
+	final T converted;
+	try {
+	    converted = converter.read(value);
+	} catch (final BufferUnderflowException ex) {
+	    throw new IllegalArgumentException(ex);
+	}
+	if (value.hasRemaining()) {
+	    throw new IllegalArgumentException();
+	}
+	return converted != null ? converted : defaultValue;
+    }
+
+    private ByteBuffer fixed(K key, int length) {
+	final ByteBuffer value = this.values[key.ordinal()];
+	if (value != null && value.remaining() != length) {
+	    throw new IllegalArgumentException();
+	}
+	return value;
+    }
+
+}
@@ -0,0 +1,60 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field to be saved and restored by the code the
+ * {@link libSB.persistence.annotation.processing.PersistedProcessor}
+ * generates for its class. For a class {@code Foo} the generated class
+ * {@code Foo_Persistence} in the same package provides
+ * {@code save(Foo, SaveVisitor)} and {@code restore(Foo, LoadVisitor)}, to be
+ * called from the {@code accept} methods of {@code Foo}.
+ * <p>
+ * The field must not be private, static or final. Supported are the
+ * primitive types, their wrappers, {@link String}, arrays of the
+ * primitive number types and {@link java.util.List}s
+ * of {@link libSB.persistence.Persistable}s with a no-argument constructor.
+ * {@code int}, {@code long} and {@code double} use the typed visitor methods,
+ * the other values the layout of
+ * {@link libSB.byteTools.StandardBufferConverters}.
+ *
+ * @author Simon Berndt
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface Persisted {
+
+    /**
+     * @return the key to persist the field under, the field name if empty
+     */
+    String key() default "";
+
+}
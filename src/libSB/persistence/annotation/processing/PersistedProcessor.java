@@ -0,0 +1,286 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.annotation.processing;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import libSB.persistence.annotation.Persisted;
+
+/**
+ * Generates the {@code _Persistence} classes for the fields annotated with
+ * {@link Persisted}. The generated code calls the visitor once per field with
+ * the field's value and a shared converter, without capturing lambdas, so
+ * every call site stays monomorphic.
+ *
+ * @author Simon Berndt
+ */
+@SupportedAnnotationTypes("libSB.persistence.annotation.Persisted")
+public class PersistedProcessor extends AbstractProcessor {
+
+    static final String SUFFIX = "_Persistence";
+
+    private static final String CONVERTERS = "libSB.byteTools.StandardBufferConverters";
+    private static final String PERSISTABLE = "libSB.persistence.Persistable";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+	return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+	final Set<TypeElement> types = new LinkedHashSet<>();
+	for (final Element element : roundEnv.getElementsAnnotatedWith(Persisted.class)) {
+	    types.add((TypeElement) element.getEnclosingElement());
+	}
+	for (final TypeElement type : types) {
+	    generate(type);
+	}
+	return true;
+    }
+
+    private void generate(TypeElement type) {
+	if (type.getNestingKind() != NestingKind.TOP_LEVEL && !type.getModifiers().contains(Modifier.STATIC)
+		|| type.getModifiers().contains(Modifier.PRIVATE)) {
+	    error(type, "@Persisted fields are only supported in top-level, static nested and non-private classes");
+	    return;
+	}
+	final List<String> saves = new ArrayList<>();
+	final List<String> restores = new ArrayList<>();
+	final Set<String> keys = new HashSet<>();
+	boolean valid = true;
+	for (final VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+	    final Persisted persisted = field.getAnnotation(Persisted.class);
+	    if (persisted == null) {
+		continue;
+	    }
+	    final String key = persisted.key().isEmpty() ? field.getSimpleName().toString() : persisted.key();
+	    if (!keys.add(key)) {
+		error(field, "Duplicate key \"" + key + "\"");
+		valid = false;
+	    } else if (field.getModifiers().contains(Modifier.PRIVATE)
+		    || field.getModifiers().contains(Modifier.STATIC)
+		    || field.getModifiers().contains(Modifier.FINAL)) {
+		error(field, "@Persisted fields must not be private, static or final");
+		valid = false;
+	    } else {
+		valid &= addField(field, literal(key), "persistable." + field.getSimpleName(), saves, restores);
+	    }
+	}
+	if (valid) {
+	    write(type, saves, restores);
+	}
+    }
+
+    private boolean addField(VariableElement field, String key, String access, List<String> saves, List<String> restores) {
+	final TypeMirror type = field.asType();
+	switch (type.getKind()) {
+	    case INT:
+		saves.add("visitor.persistInt(" + key + ", " + access + ");");
+		restores.add(access + " = visitor.restoreInt(" + key + ", " + access + ");");
+		return true;
+	    case LONG:
+		saves.add("visitor.persistLong(" + key + ", " + access + ");");
+		restores.add(access + " = visitor.restoreLong(" + key + ", " + access + ");");
+		return true;
+	    case DOUBLE:
+		saves.add("visitor.persistDouble(" + key + ", " + access + ");");
+		restores.add(access + " = visitor.restoreDouble(" + key + ", " + access + ");");
+		return true;
+	    case BOOLEAN:
+	    case BYTE:
+	    case SHORT:
+	    case CHAR:
+	    case FLOAT:
+		addBuffered(CONVERTERS + "." + type.getKind().name(), false, key, access, saves, restores);
+		return true;
+	    case ARRAY:
+		final String component = type.toString().replace("[]", "");
+		if (!type.toString().endsWith("[][]") && (component.equals("byte") || component.equals("short") || component.equals("int")
+			|| component.equals("long") || component.equals("float") || component.equals("double"))) {
+		    addBuffered(CONVERTERS + "." + component.toUpperCase() + "_ARRAY", true, key, access, saves, restores);
+		    return true;
+		}
+		break;
+	    case DECLARED:
+		final String converter = boxedConverter(type);
+		if (converter != null) {
+		    addBuffered(CONVERTERS + "." + converter, true, key, access, saves, restores);
+		    return true;
+		}
+		if (addNested((DeclaredType) type, key, access, saves, restores)) {
+		    return true;
+		}
+		break;
+	    default:
+		break;
+	}
+	error(field, "Unsupported type " + type + " for @Persisted");
+	return false;
+    }
+
+    private static String boxedConverter(TypeMirror type) {
+	switch (type.toString()) {
+	    case "java.lang.Boolean":
+		return "BOOLEAN";
+	    case "java.lang.Byte":
+		return "BYTE";
+	    case "java.lang.Short":
+		return "SHORT";
+	    case "java.lang.Character":
+		return "CHAR";
+	    case "java.lang.Integer":
+		return "INT";
+	    case "java.lang.Long":
+		return "LONG";
+	    case "java.lang.Float":
+		return "FLOAT";
+	    case "java.lang.Double":
+		return "DOUBLE";
+	    case "java.lang.String":
+		return "STRING";
+	    default:
+		return null;
+	}
+    }
+
+    private static void addBuffered(String converter, boolean nullable, String key, String access, List<String> saves, List<String> restores) {
+	final String save = "visitor.persistBuffered(" + key + ", " + access + ", " + converter + ");";
+	saves.add(nullable ? "if (" + access + " != null) {\n\t    " + save + "\n\t}" : save);
+	restores.add(access + " = visitor.restoreBuffered(" + key + ", " + converter + ", " + access + ");");
+    }
+
+    /**
+     * Lists of persistables are saved as nested values, one item per element.
+     * A missing key restores no items, which cannot be told apart from an empty
+     * list, so the field keeps its current value unless items were restored.
+     */
+    private boolean addNested(DeclaredType type, String key, String access, List<String> saves, List<String> restores) {
+	final TypeElement list = processingEnv.getElementUtils().getTypeElement("java.util.List");
+	final TypeElement persistable = processingEnv.getElementUtils().getTypeElement(PERSISTABLE);
+	if (list == null || persistable == null
+		|| !processingEnv.getTypeUtils().isSameType(processingEnv.getTypeUtils().erasure(type), processingEnv.getTypeUtils().erasure(list.asType()))
+		|| type.getTypeArguments().size() != 1) {
+	    return false;
+	}
+	final TypeMirror element = type.getTypeArguments().get(0);
+	if (element.getKind() != TypeKind.DECLARED || !processingEnv.getTypeUtils().isAssignable(element, persistable.asType())
+		|| !hasNoArgumentConstructor((TypeElement) ((DeclaredType) element).asElement())) {
+	    return false;
+	}
+	saves.add("if (" + access + " != null) {\n"
+		+ "\t    visitor.persistNested(" + key + ", " + access + ".stream().map((" + element + " item) -> (java.util.function.Consumer<libSB.persistence.SaveVisitor>) item::accept));\n"
+		+ "\t}");
+	restores.add("{\n"
+		+ "\t    final java.util.List<" + element + "> restored = visitor.restoreNested(" + key + ").map((libSB.persistence.LoadVisitor itemVisitor) -> {\n"
+		+ "\t\tfinal " + element + " item = new " + element + "();\n"
+		+ "\t\titem.accept(itemVisitor);\n"
+		+ "\t\treturn item;\n"
+		+ "\t    }).collect(java.util.stream.Collectors.toList());\n"
+		+ "\t    if (!restored.isEmpty()) {\n"
+		+ "\t\t" + access + " = restored;\n"
+		+ "\t    }\n"
+		+ "\t}");
+	return true;
+    }
+
+    private static boolean hasNoArgumentConstructor(TypeElement type) {
+	if (type.getModifiers().contains(Modifier.ABSTRACT) || type.getKind() != ElementKind.CLASS) {
+	    return false;
+	}
+	for (final ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+	    if (constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private void write(TypeElement type, List<String> saves, List<String> restores) {
+	final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+	final String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+	final String typeName = type.getQualifiedName().toString();
+	final String simpleName = (packageName.isEmpty() ? typeName : typeName.substring(packageName.length() + 1)).replace('.', '_') + SUFFIX;
+	final StringBuilder source = new StringBuilder();
+	if (!packageName.isEmpty()) {
+	    source.append("package ").append(packageName).append(";\n\n");
+	}
+	source.append("/**\n * Generated from the @Persisted fields of {@link ").append(typeName).append("}.\n */\n");
+	source.append("final class ").append(simpleName).append(" {\n\n");
+	source.append("    private ").append(simpleName).append("() {\n    }\n\n");
+	source.append("    static void save(").append(typeName).append(" persistable, libSB.persistence.SaveVisitor visitor) {\n");
+	saves.forEach(line -> source.append("\t").append(line).append('\n'));
+	source.append("    }\n\n");
+	source.append("    static void restore(").append(typeName).append(" persistable, libSB.persistence.LoadVisitor visitor) {\n");
+	restores.forEach(line -> source.append("\t").append(line).append('\n'));
+	source.append("    }\n\n}\n");
+	try (Writer writer = processingEnv.getFiler().createSourceFile(packageName.isEmpty() ? simpleName : packageName + "." + simpleName, type).openWriter()) {
+	    writer.write(source.toString());
+	} catch (final IOException ex) {
+	    error(type, "Could not write " + simpleName + ": " + ex.getMessage());
+	}
+    }
+
+    private void error(Element element, String message) {
+	processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static String literal(String value) {
+	final StringBuilder literal = new StringBuilder("\"");
+	for (int i = 0; i < value.length(); i++) {
+	    final char c = value.charAt(i);
+	    if (c == '"' || c == '\\') {
+		literal.append('\\').append(c);
+	    } else if (c < 0x20 || c > 0x7E) {
+		literal.append(String.format("\\u%04x", (int) c));
+	    } else {
+		literal.append(c);
+	    }
+	}
+	return literal.append('"').toString();
+    }
+
+}
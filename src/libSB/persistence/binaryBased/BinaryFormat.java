@@ -0,0 +1,48 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.binaryBased;
+
+/**
+ * Layout of the binary record files.
+ * <p>
+ * A file starts with {@link #MAGIC} and {@link #VERSION}, followed by a block
+ * of records. Each record is a type byte, the length-prefixed UTF-8 key and the
+ * length-prefixed payload. The payload of a {@link #NESTED} record is the item
+ * count followed by one length-prefixed record block per item.
+ *
+ * @author Simon Berndt
+ */
+final class BinaryFormat {
+
+    static final int MAGIC = 0x4C534250;
+    static final byte VERSION = 1;
+    static final int HEADER_BYTES = Integer.BYTES + Byte.BYTES;
+
+    static final byte SINGLE = 1;
+    static final byte NESTED = 2;
+
+    private BinaryFormat() {
+    }
+
+}
@@ -0,0 +1,362 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.binaryBased;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.KeySchema;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SlotValues;
+
+/**
+ * Reads a block of binary records in place. The key index of the block is
+ * built on first access by hopping over the record headers, payloads are only
+ * touched for the keys that are actually restored.
+ *
+ * @author Simon Berndt
+ */
+class BinaryLoadVisitor implements LoadVisitor {
+
+    private static final Logger LOG = Logger.getLogger(BinaryLoadVisitor.class.getName());
+
+    private final ByteBuffer block;
+    private Map<String, Record> index;
+
+    BinaryLoadVisitor(ByteBuffer block) {
+	this.block = block;
+    }
+
+    @Override
+    public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final Record record = lookup(key, BinaryFormat.SINGLE);
+	if (record != null) {
+	    final byte[] data = new byte[record.length];
+	    slice(record.offset, record.length).get(data);
+	    final T value = typeConverter.apply(data);
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    @Override
+    public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	Objects.requireNonNull(viewConverter);
+	final Record record = lookup(key, BinaryFormat.SINGLE);
+	if (record != null) {
+	    final T value = viewConverter.apply(slice(record.offset, record.length).asReadOnlyBuffer());
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    /**
+     * Only the record index is consulted here, the payload is copied out of
+     * the mapped block when the handle is first read.
+     */
+    @Override
+    public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final Record record = lookup(key, BinaryFormat.SINGLE);
+	if (record != null) {
+	    final ByteBuffer data = slice(record.offset, record.length);
+	    field.accept(Lazy.of(() -> {
+		final byte[] bytes = new byte[data.remaining()];
+		data.duplicate().get(bytes);
+		return typeConverter.apply(bytes);
+	    }));
+	}
+    }
+
+    @Override
+    public void restoreInt(String key, IntConsumer field) {
+	final Record record = lookupFixed(key, Integer.BYTES);
+	if (record != null) {
+	    field.accept(this.block.getInt(record.offset));
+	}
+    }
+
+    @Override
+    public int restoreInt(String key, int defaultValue) {
+	final Record record = lookupFixed(key, Integer.BYTES);
+	return record != null ? this.block.getInt(record.offset) : defaultValue;
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	final Record record = lookupFixed(key, Long.BYTES);
+	if (record != null) {
+	    field.accept(this.block.getLong(record.offset));
+	}
+    }
+
+    @Override
+    public long restoreLong(String key, long defaultValue) {
+	final Record record = lookupFixed(key, Long.BYTES);
+	return record != null ? this.block.getLong(record.offset) : defaultValue;
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	final Record record = lookupFixed(key, Double.BYTES);
+	if (record != null) {
+	    field.accept(this.block.getDouble(record.offset));
+	}
+    }
+
+    @Override
+    public double restoreDouble(String key, double defaultValue) {
+	final Record record = lookupFixed(key, Double.BYTES);
+	return record != null ? this.block.getDouble(record.offset) : defaultValue;
+    }
+
+    /**
+     * Reads the value straight from the record block, without copying it to
+     * a byte array first.
+     */
+    @Override
+    public <T> void restoreBuffered(String key, Consumer<? super T> field, BufferConverter<T> converter) {
+	final T value = restoreBuffered(key, converter, null);
+	if (value != null) {
+	    field.accept(value);
+	}
+    }
+
+    @Override
+    public <T> T restoreBuffered(String key, BufferConverter<T> converter, T defaultValue) {
+	final Record record = lookup(key, BinaryFormat.SINGLE);
+	if (record == null) {
+	    return defaultValue;
+	}
+	final ByteBuffer data = slice(record.offset, record.length);
+	final T value;
+	try {
+	    value = converter.read(data);
+	} catch (final BufferUnderflowException ex) {
+	    throw new IllegalArgumentException(ex);
+	}
+	if (data.hasRemaining()) {
+	    throw new IllegalArgumentException(data.remaining() + " bytes of \"" + key + "\" left unread");
+	}
+	return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Resolves the slots in one pass over the record headers, without building
+     * the key index. Records saved through the same schema come in slot order,
+     * so their keys are compared as bytes against the expected slot first and
+     * only decoded and hashed when that does not match.
+     */
+    @Override
+    public <K extends Enum<K>> SlotValues<K> restoreSlots(KeySchema<K> schema) {
+	final SlotValues<K> values = new SlotValues<>(schema);
+	if (this.index != null) {
+	    for (int slot = 0; slot < schema.size(); slot++) {
+		final Record record = lookup(schema.key(slot), BinaryFormat.SINGLE);
+		if (record != null) {
+		    values.set(slot, slice(record.offset, record.length));
+		}
+	    }
+	    return values;
+	}
+	final ByteBuffer cursor = this.block.duplicate();
+	int expected = 0;
+	while (cursor.hasRemaining()) {
+	    if (cursor.remaining() < Byte.BYTES + Integer.BYTES) {
+		LOG.log(Level.SEVERE, "Truncated record header at offset {0}", cursor.position());
+		break;
+	    }
+	    final byte type = cursor.get();
+	    final int keyLength = cursor.getInt();
+	    if (keyLength < 0 || cursor.remaining() - Integer.BYTES < keyLength) {
+		LOG.log(Level.SEVERE, "Corrupt record key at offset {0}", cursor.position());
+		break;
+	    }
+	    final int keyOffset = cursor.position();
+	    cursor.position(keyOffset + keyLength);
+	    final int length = cursor.getInt();
+	    if (length < 0 || cursor.remaining() < length) {
+		LOG.log(Level.SEVERE, "Corrupt record payload at offset {0}", cursor.position());
+		break;
+	    }
+	    final int slot;
+	    if (expected < schema.size() && keyEquals(keyOffset, keyLength, schema.keyBytes(expected))) {
+		slot = expected;
+	    } else {
+		final byte[] keyBytes = new byte[keyLength];
+		slice(keyOffset, keyLength).get(keyBytes);
+		slot = schema.slot(new String(keyBytes, StandardCharsets.UTF_8));
+	    }
+	    if (slot >= 0) {
+		// the last record of a key wins, as with the key index
+		values.set(slot, type == BinaryFormat.SINGLE ? slice(cursor.position(), length) : null);
+		expected = slot + 1;
+	    }
+	    cursor.position(cursor.position() + length);
+	}
+	return values;
+    }
+
+    @Override
+    public Stream<LoadVisitor> restoreNested(String key) {
+	final Record record = lookup(key, BinaryFormat.NESTED);
+	if (record == null || record.length < Integer.BYTES) {
+	    return Stream.empty();
+	}
+	final ByteBuffer payload = slice(record.offset, record.length);
+	final int count = payload.getInt();
+	return StreamSupport.stream(new ItemSpliterator(payload, count), false);
+    }
+
+    private Record lookup(String key, byte type) {
+	if (key == null) {
+	    return null;
+	}
+	if (this.index == null) {
+	    this.index = buildIndex();
+	}
+	final Record record = this.index.get(key);
+	return record != null && record.type == type ? record : null;
+    }
+
+    private Record lookupFixed(String key, int length) {
+	final Record record = lookup(key, BinaryFormat.SINGLE);
+	if (record != null && record.length != length) {
+	    throw new IllegalArgumentException("\"" + key + "\" holds " + record.length + " bytes, expected " + length);
+	}
+	return record;
+    }
+
+    private Map<String, Record> buildIndex() {
+	final Map<String, Record> records = new HashMap<>();
+	final ByteBuffer cursor = this.block.duplicate();
+	while (cursor.hasRemaining()) {
+	    if (cursor.remaining() < Byte.BYTES + Integer.BYTES) {
+		LOG.log(Level.SEVERE, "Truncated record header at offset {0}", cursor.position());
+		break;
+	    }
+	    final byte type = cursor.get();
+	    final int keyLength = cursor.getInt();
+	    if (keyLength < 0 || cursor.remaining() - Integer.BYTES < keyLength) {
+		LOG.log(Level.SEVERE, "Corrupt record key at offset {0}", cursor.position());
+		break;
+	    }
+	    final byte[] keyBytes = new byte[keyLength];
+	    cursor.get(keyBytes);
+	    final int length = cursor.getInt();
+	    if (length < 0 || cursor.remaining() < length) {
+		LOG.log(Level.SEVERE, "Corrupt record payload at offset {0}", cursor.position());
+		break;
+	    }
+	    records.put(new String(keyBytes, StandardCharsets.UTF_8), new Record(type, cursor.position(), length));
+	    cursor.position(cursor.position() + length);
+	}
+	return records;
+    }
+
+    private boolean keyEquals(int offset, int length, byte[] keyBytes) {
+	if (length != keyBytes.length) {
+	    return false;
+	}
+	for (int i = 0; i < length; i++) {
+	    if (this.block.get(offset + i) != keyBytes[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+	final ByteBuffer duplicate = this.block.duplicate();
+	duplicate.position(offset);
+	duplicate.limit(offset + length);
+	return duplicate.slice();
+    }
+
+    private static final class Record {
+
+	private final byte type;
+	private final int offset;
+	private final int length;
+
+	Record(byte type, int offset, int length) {
+	    this.type = type;
+	    this.offset = offset;
+	    this.length = length;
+	}
+
+    }
+
+    private static final class ItemSpliterator extends Spliterators.AbstractSpliterator<LoadVisitor> {
+
+	private final ByteBuffer payload;
+	private int remaining;
+
+	ItemSpliterator(ByteBuffer payload, int count) {
+	    super(count, Spliterator.ORDERED | Spliterator.NONNULL);
+	    this.payload = payload;
+	    this.remaining = count;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super LoadVisitor> action) {
+	    if (this.remaining <= 0 || this.payload.remaining() < Integer.BYTES) {
+		return false;
+	    }
+	    final int length = this.payload.getInt();
+	    if (length < 0 || this.payload.remaining() < length) {
+		LOG.log(Level.SEVERE, "Corrupt nested item at offset {0}", this.payload.position());
+		this.remaining = 0;
+		return false;
+	    }
+	    final ByteBuffer item = this.payload.slice();
+	    item.limit(length);
+	    this.payload.position(this.payload.position() + length);
+	    this.remaining--;
+	    action.accept(new BinaryLoadVisitor(item));
+	    return true;
+	}
+
+    }
+
+}
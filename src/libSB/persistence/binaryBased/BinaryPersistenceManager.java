@@ -0,0 +1,127 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.binaryBased;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+
+/**
+ * Stores the raw converter output in a length-prefixed binary record file,
+ * without any text encoding. Restores read the file through a
+ * {@link MappedByteBuffer}.
+ *
+ * @author Simon Berndt
+ */
+public class BinaryPersistenceManager implements PersistenceManager {
+
+    private static final Logger LOG = Logger.getLogger(BinaryPersistenceManager.class.getName());
+
+    public static final Path DEFAULT_CONFIG_PATH = Paths.get("persistedValues.bin");
+
+    private final Path configFileLocation;
+
+    public BinaryPersistenceManager() {
+	this(DEFAULT_CONFIG_PATH);
+    }
+
+    public BinaryPersistenceManager(Path configFileLocation) {
+	this.configFileLocation = configFileLocation.toAbsolutePath();
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	if (Files.exists(this.configFileLocation)) {
+	    try {
+		final ByteBuffer records = mapRecords();
+		if (records != null) {
+		    final LoadVisitor loadVisitor = new BinaryLoadVisitor(records);
+		    peristable.accept(loadVisitor);
+		}
+	    } catch (final IOException ex) {
+		LOG.log(Level.SEVERE, null, ex);
+	    }
+	}
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	final RecordOutput output = new RecordOutput();
+	output.putInt(BinaryFormat.MAGIC);
+	output.putByte(BinaryFormat.VERSION);
+	final SaveVisitor saveVisitor = new BinarySaveVisitor(output);
+	peristable.accept(saveVisitor);
+	try {
+	    Files.createDirectories(this.configFileLocation.getParent());
+	    // write aside and move over, a file mapped by an earlier restore must never be truncated
+	    final Path tempFile = Files.createTempFile(this.configFileLocation.getParent(), this.configFileLocation.getFileName().toString(), ".tmp");
+	    try {
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+		    output.writeTo(channel);
+		    channel.force(false);
+		}
+		Files.move(tempFile, this.configFileLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	    } finally {
+		Files.deleteIfExists(tempFile);
+	    }
+	    return true;
+	} catch (final IOException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	    return false;
+	}
+    }
+
+    private ByteBuffer mapRecords() throws IOException {
+	final MappedByteBuffer mapped;
+	try (FileChannel channel = FileChannel.open(this.configFileLocation, StandardOpenOption.READ)) {
+	    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	}
+	if (mapped.remaining() < BinaryFormat.HEADER_BYTES
+		|| mapped.getInt() != BinaryFormat.MAGIC
+		|| mapped.get() != BinaryFormat.VERSION) {
+	    LOG.log(Level.SEVERE, "{0} is not a binary record file", this.configFileLocation);
+	    return null;
+	}
+	return mapped.slice();
+    }
+
+}
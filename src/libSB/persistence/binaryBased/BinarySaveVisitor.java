@@ -0,0 +1,146 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.binaryBased;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.KeySchema;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.SlotValues;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+class BinarySaveVisitor implements SaveVisitor {
+
+    private final RecordOutput output;
+
+    BinarySaveVisitor(RecordOutput output) {
+	this.output = output;
+    }
+
+    @Override
+    public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[] bytes = typeConverter.apply(value.get());
+	if (bytes != null) {
+	    writeRecordHeader(BinaryFormat.SINGLE, key);
+	    this.output.putInt(bytes.length);
+	    this.output.putBytes(bytes);
+	}
+    }
+
+    @Override
+    public void persistInt(String key, int value) {
+	writeRecordHeader(BinaryFormat.SINGLE, key);
+	this.output.putInt(Integer.BYTES);
+	this.output.putInt(value);
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	writeRecordHeader(BinaryFormat.SINGLE, key);
+	this.output.putInt(Long.BYTES);
+	this.output.putLong(value);
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	writeRecordHeader(BinaryFormat.SINGLE, key);
+	this.output.putInt(Double.BYTES);
+	this.output.putLong(Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public <T> void persistBuffered(String key, T value, BufferConverter<T> converter) {
+	final int size = converter.sizeOf(value);
+	writeRecordHeader(BinaryFormat.SINGLE, key);
+	this.output.putInt(size);
+	this.output.put(value, converter, size);
+    }
+
+    /**
+     * Writes the shared key bytes of the schema instead of encoding each key.
+     */
+    @Override
+    public <K extends Enum<K>> void persistSlots(SlotValues<K> values) {
+	final KeySchema<K> schema = values.schema();
+	for (int slot = 0; slot < schema.size(); slot++) {
+	    final ByteBuffer value = values.get(slot);
+	    if (value != null) {
+		final byte[] keyBytes = schema.keyBytes(slot);
+		this.output.putByte(BinaryFormat.SINGLE);
+		this.output.putInt(keyBytes.length);
+		this.output.putBytes(keyBytes);
+		this.output.putInt(value.remaining());
+		this.output.putBuffer(value);
+	    }
+	}
+    }
+
+    @Override
+    public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	Objects.requireNonNull(values);
+	writeRecordHeader(BinaryFormat.NESTED, key);
+	final int payloadLengthPosition = reserveInt();
+	final int countPosition = reserveInt();
+	final int[] count = new int[1];
+	values.forEachOrdered((Consumer<? super SaveVisitor> consumer) -> {
+	    final int itemLengthPosition = reserveInt();
+	    consumer.accept(new BinarySaveVisitor(this.output));
+	    patchLength(itemLengthPosition);
+	    count[0]++;
+	});
+	this.output.patchInt(countPosition, count[0]);
+	patchLength(payloadLengthPosition);
+    }
+
+    private void writeRecordHeader(byte type, String key) {
+	if (key == null) {
+	    throw new IllegalArgumentException("Null key");
+	}
+	final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+	this.output.putByte(type);
+	this.output.putInt(keyBytes.length);
+	this.output.putBytes(keyBytes);
+    }
+
+    private int reserveInt() {
+	final int position = this.output.position();
+	this.output.putInt(0);
+	return position;
+    }
+
+    private void patchLength(int lengthPosition) {
+	this.output.patchInt(lengthPosition, this.output.position() - lengthPosition - Integer.BYTES);
+    }
+
+}
@@ -0,0 +1,110 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.binaryBased;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import libSB.byteTools.BufferConverter;
+
+/**
+ * Growable heap buffer the {@link BinarySaveVisitor} writes its records to.
+ *
+ * @author Simon Berndt
+ */
+final class RecordOutput {
+
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private ByteBuffer buffer;
+
+    RecordOutput() {
+	this.buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    }
+
+    int position() {
+	return this.buffer.position();
+    }
+
+    void putByte(byte b) {
+	ensureRemaining(Byte.BYTES);
+	this.buffer.put(b);
+    }
+
+    void putInt(int i) {
+	ensureRemaining(Integer.BYTES);
+	this.buffer.putInt(i);
+    }
+
+    void putLong(long l) {
+	ensureRemaining(Long.BYTES);
+	this.buffer.putLong(l);
+    }
+
+    void putBytes(byte[] bytes) {
+	ensureRemaining(bytes.length);
+	this.buffer.put(bytes);
+    }
+
+    void putBuffer(ByteBuffer bytes) {
+	ensureRemaining(bytes.remaining());
+	this.buffer.put(bytes);
+    }
+
+    <T> void put(T value, BufferConverter<T> converter, int size) {
+	ensureRemaining(size);
+	final int start = this.buffer.position();
+	converter.write(value, this.buffer);
+	if (this.buffer.position() - start != size) {
+	    throw new IllegalStateException("Converter wrote " + (this.buffer.position() - start) + " bytes instead of " + size);
+	}
+    }
+
+    void patchInt(int position, int i) {
+	this.buffer.putInt(position, i);
+    }
+
+    void writeTo(WritableByteChannel channel) throws IOException {
+	final ByteBuffer content = this.buffer.duplicate();
+	content.flip();
+	while (content.hasRemaining()) {
+	    channel.write(content);
+	}
+    }
+
+    private void ensureRemaining(int bytes) {
+	if (this.buffer.remaining() < bytes) {
+	    final long required = (long) this.buffer.position() + bytes;
+	    if (required > Integer.MAX_VALUE) {
+		throw new IllegalStateException("Binary record file exceeds 2 GiB");
+	    }
+	    final int newCapacity = (int) Math.min(Integer.MAX_VALUE, Math.max(required, 2L * this.buffer.capacity()));
+	    final ByteBuffer grown = ByteBuffer.allocate(newCapacity);
+	    this.buffer.flip();
+	    grown.put(this.buffer);
+	    this.buffer = grown;
+	}
+    }
+
+}
@@ -0,0 +1,86 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.caching;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public final class CacheStatistics {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long loadCount;
+    private final int size;
+    private final long weight;
+
+    CacheStatistics(long hitCount, long missCount, long evictionCount, long loadCount, int size, long weight) {
+	this.hitCount = hitCount;
+	this.missCount = missCount;
+	this.evictionCount = evictionCount;
+	this.loadCount = loadCount;
+	this.size = size;
+	this.weight = weight;
+    }
+
+    public long getHitCount() {
+	return this.hitCount;
+    }
+
+    public long getMissCount() {
+	return this.missCount;
+    }
+
+    public double getHitRate() {
+	final long requests = this.hitCount + this.missCount;
+	return requests == 0 ? 1.0 : (double) this.hitCount / requests;
+    }
+
+    public long getEvictionCount() {
+	return this.evictionCount;
+    }
+
+    /**
+     * @return the number of restores that had to reach the delegate
+     */
+    public long getLoadCount() {
+	return this.loadCount;
+    }
+
+    public int getSize() {
+	return this.size;
+    }
+
+    public long getWeight() {
+	return this.weight;
+    }
+
+    @Override
+    public String toString() {
+	return "CacheStatistics{hits=" + this.hitCount + ", misses=" + this.missCount + ", evictions=" + this.evictionCount
+		+ ", loads=" + this.loadCount + ", size=" + this.size + ", weight=" + this.weight + '}';
+    }
+
+}
@@ -0,0 +1,197 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.caching;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.KeySchema;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SlotValues;
+import libSB.persistence.mapBased.FlatKeys;
+
+/**
+ * Serves values from the cache and reads the misses from the delegate with
+ * {@link LoadVisitor#restoreSingle}. Views, buffered converters and slots
+ * are handed read-only views of the cached bytes instead of copies.
+ *
+ * @author Simon Berndt
+ */
+class CachingLoadVisitor implements LoadVisitor {
+
+    static final LoadVisitor EMPTY = new LoadVisitor() {
+	@Override
+	public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	}
+
+	@Override
+	public Stream<LoadVisitor> restoreNested(String key) {
+	    return Stream.empty();
+	}
+    };
+
+    private final CachingPersistenceManager cache;
+    private final String prefix;
+    private final Supplier<LoadVisitor> source;
+    private final long generation;
+
+    CachingLoadVisitor(CachingPersistenceManager cache, String prefix, Supplier<LoadVisitor> source, long generation) {
+	this.cache = cache;
+	this.prefix = prefix;
+	this.source = source;
+	this.generation = generation;
+    }
+
+    @Override
+    public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[] bytes = lookup(key);
+	if (bytes != null) {
+	    final T value = typeConverter.apply(bytes.clone());
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    @Override
+    public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	Objects.requireNonNull(viewConverter);
+	final byte[] bytes = lookup(key);
+	if (bytes != null) {
+	    final T value = viewConverter.apply(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    @Override
+    public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[] bytes = lookup(key);
+	if (bytes != null) {
+	    field.accept(Lazy.of(() -> typeConverter.apply(bytes.clone())));
+	}
+    }
+
+    @Override
+    public <T> void restoreBuffered(String key, Consumer<? super T> field, BufferConverter<T> converter) {
+	Objects.requireNonNull(converter);
+	final byte[] bytes = lookup(key);
+	if (bytes != null) {
+	    final T value = converter.read(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    @Override
+    public <K extends Enum<K>> SlotValues<K> restoreSlots(KeySchema<K> schema) {
+	final SlotValues<K> values = new SlotValues<>(schema);
+	for (int slot = 0; slot < schema.size(); slot++) {
+	    final byte[] bytes = lookup(schema.key(slot));
+	    if (bytes != null) {
+		values.set(slot, ByteBuffer.wrap(bytes));
+	    }
+	}
+	return values;
+    }
+
+    @Override
+    public Stream<LoadVisitor> restoreNested(String key) {
+	if (key == null) {
+	    return Stream.empty();
+	}
+	final String nestedPrefix = FlatKeys.nested(this.prefix, key);
+	final String countPath = FlatKeys.count(nestedPrefix);
+	final DelegateItems items = new DelegateItems(key);
+	final byte[] cachedCount = this.cache.lookup(countPath);
+	final int count;
+	if (cachedCount != null) {
+	    count = cachedCount.length == Integer.BYTES ? ByteBuffer.wrap(cachedCount).getInt() : 0;
+	} else {
+	    count = items.get().size();
+	    this.cache.store(countPath, ByteBuffer.allocate(Integer.BYTES).putInt(0, count).array(), this.generation);
+	}
+	return IntStream.range(0, count).mapToObj((int index)
+		-> new CachingLoadVisitor(this.cache, FlatKeys.item(nestedPrefix, index), () -> items.item(index), this.generation));
+    }
+
+    /**
+     * @return the cached bytes of {@code key}, read from the delegate on a
+     * miss, {@code null} if there is no value. The array is shared with the
+     * cache and must not be modified.
+     */
+    private byte[] lookup(String key) {
+	if (key == null) {
+	    return null;
+	}
+	final String path = FlatKeys.value(this.prefix, key);
+	byte[] bytes = this.cache.lookup(path);
+	if (bytes == null) {
+	    final byte[][] fetched = new byte[1][];
+	    this.source.get().restoreSingle(key, (byte[] value) -> fetched[0] = value, Function.<byte[]>identity());
+	    bytes = fetched[0] != null ? fetched[0] : CachingPersistenceManager.ABSENT;
+	    this.cache.store(path, bytes, this.generation);
+	}
+	return bytes != CachingPersistenceManager.ABSENT ? bytes : null;
+    }
+
+    /**
+     * Reads the items of a nested value from the delegate on first use.
+     */
+    private final class DelegateItems {
+
+	private final String key;
+	private List<LoadVisitor> items;
+
+	DelegateItems(String key) {
+	    this.key = key;
+	}
+
+	synchronized List<LoadVisitor> get() {
+	    if (this.items == null) {
+		this.items = CachingLoadVisitor.this.source.get().restoreNested(this.key).collect(Collectors.toList());
+	    }
+	    return this.items;
+	}
+
+	LoadVisitor item(int index) {
+	    final List<LoadVisitor> delegateItems = get();
+	    return index < delegateItems.size() ? delegateItems.get(index) : EMPTY;
+	}
+
+    }
+
+}
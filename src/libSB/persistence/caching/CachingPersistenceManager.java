@@ -0,0 +1,354 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.caching;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+
+/**
+ * Keeps the decoded bytes of restored and saved values in a least recently
+ * used cache bounded by weight, so repeated restores of the same keys are
+ * served from memory. Keys known to be absent are cached as well. Values are
+ * cached under their path in the layout of
+ * {@link libSB.persistence.mapBased.FlatKeys}.
+ * <p>
+ * A restore that finds all its keys cached does not touch the delegate. At
+ * the first key that is not cached the delegate is restored on a thread of
+ * its own, which hands its visitor over and stays inside the delegate's
+ * restore until the cached restore returns. This way visitors that are only
+ * valid during the delegate's restore, like those of the streaming XML
+ * backend, can be read as well. Delegates whose visitors stay readable
+ * after their restore returned, like the DOM, binary, properties and log
+ * based ones, can be restored on the calling thread instead, see
+ * {@link #CachingPersistenceManager(PersistenceManager, long, boolean, boolean)}.
+ * <p>
+ * Saves write through. Once the delegate wrote them, the cache holds the
+ * saved values and all other entries are dropped, since most backends rewrite
+ * their whole storage on save. A failed save clears the cache. For delegates
+ * that merge saves into their existing storage the other entries can be kept,
+ * see
+ * {@link #CachingPersistenceManager(PersistenceManager, long, boolean)}.
+ *
+ * @author Simon Berndt
+ */
+public class CachingPersistenceManager implements PersistenceManager {
+
+    private static final Logger LOG = Logger.getLogger(CachingPersistenceManager.class.getName());
+
+    static final byte[] ABSENT = new byte[0];
+
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final PersistenceManager delegate;
+    private final long maximumWeight;
+    private final boolean mergingDelegate;
+    private final boolean detachedVisitors;
+    private final LinkedHashMap<String, byte[]> entries;
+    private long weight;
+    private long generation;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    public CachingPersistenceManager(PersistenceManager delegate, long maximumWeight) {
+	this(delegate, maximumWeight, false);
+    }
+
+    /**
+     * @param maximumWeight   upper bound of the cached bytes, including an
+     *                        estimate of the per entry overhead
+     * @param mergingDelegate whether the delegate keeps values that are not
+     *                        part of a save
+     */
+    public CachingPersistenceManager(PersistenceManager delegate, long maximumWeight, boolean mergingDelegate) {
+	this(delegate, maximumWeight, mergingDelegate, false);
+    }
+
+    /**
+     * @param maximumWeight    upper bound of the cached bytes, including an
+     *                         estimate of the per entry overhead
+     * @param mergingDelegate  whether the delegate keeps values that are not
+     *                         part of a save
+     * @param detachedVisitors whether the delegate's visitors can still be
+     *                         read after its restore returned, so it is
+     *                         restored on the calling thread
+     */
+    public CachingPersistenceManager(PersistenceManager delegate, long maximumWeight, boolean mergingDelegate, boolean detachedVisitors) {
+	if (maximumWeight < 0) {
+	    throw new IllegalArgumentException("maximumWeight must not be negative");
+	}
+	this.delegate = Objects.requireNonNull(delegate);
+	this.maximumWeight = maximumWeight;
+	this.mergingDelegate = mergingDelegate;
+	this.detachedVisitors = detachedVisitors;
+	this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	final long restoreGeneration;
+	synchronized (this.entries) {
+	    restoreGeneration = this.generation;
+	}
+	final DelegateRestore source = new DelegateRestore();
+	try {
+	    peristable.accept(new CachingLoadVisitor(this, "", source::visitor, restoreGeneration));
+	} finally {
+	    source.close();
+	}
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    /**
+     * The cache is only updated if the delegate wrote the values. Otherwise
+     * it is cleared, as the delegate may have written part of them.
+     */
+    @Override
+    public boolean trySave(Saveable peristable) {
+	final Map<String, byte[]> written = Collections.synchronizedMap(new HashMap<>());
+	final List<String> nestedPrefixes = Collections.synchronizedList(new ArrayList<>());
+	final boolean saved = this.delegate.trySave((SaveVisitor visitor) -> peristable.accept(new CachingSaveVisitor(visitor, "", written, nestedPrefixes)));
+	if (!saved) {
+	    invalidateAll();
+	    return false;
+	}
+	synchronized (this.entries) {
+	    this.generation++;
+	    if (this.mergingDelegate) {
+		for (final String nestedPrefix : nestedPrefixes) {
+		    removeIf(nestedPrefix);
+		}
+	    } else {
+		this.entries.clear();
+		this.weight = 0;
+	    }
+	    written.forEach((String path, byte[] bytes) -> {
+		if (bytes != null) {
+		    put(path, bytes);
+		} else {
+		    remove(path);
+		}
+	    });
+	}
+	return true;
+    }
+
+    public void invalidateAll() {
+	synchronized (this.entries) {
+	    this.generation++;
+	    this.entries.clear();
+	    this.weight = 0;
+	}
+    }
+
+    public CacheStatistics getStatistics() {
+	synchronized (this.entries) {
+	    return new CacheStatistics(this.hits.sum(), this.misses.sum(), this.evictions.sum(), this.loads.sum(), this.entries.size(), this.weight);
+	}
+    }
+
+    byte[] lookup(String path) {
+	final byte[] bytes;
+	synchronized (this.entries) {
+	    bytes = this.entries.get(path);
+	}
+	if (bytes != null) {
+	    this.hits.increment();
+	} else {
+	    this.misses.increment();
+	}
+	return bytes;
+    }
+
+    /**
+     * Caches a value read from the delegate, unless a save happened since the
+     * read started.
+     */
+    void store(String path, byte[] bytes, long readGeneration) {
+	synchronized (this.entries) {
+	    if (readGeneration == this.generation) {
+		put(path, bytes);
+	    }
+	}
+    }
+
+    private void put(String path, byte[] bytes) {
+	final long entryWeight = weigh(path, bytes);
+	remove(path);
+	if (entryWeight > this.maximumWeight) {
+	    return;
+	}
+	this.entries.put(path, bytes);
+	this.weight += entryWeight;
+	final Iterator<Map.Entry<String, byte[]>> eldest = this.entries.entrySet().iterator();
+	while (this.weight > this.maximumWeight && eldest.hasNext()) {
+	    final Map.Entry<String, byte[]> entry = eldest.next();
+	    this.weight -= weigh(entry.getKey(), entry.getValue());
+	    eldest.remove();
+	    this.evictions.increment();
+	}
+    }
+
+    private void remove(String path) {
+	final byte[] previous = this.entries.remove(path);
+	if (previous != null) {
+	    this.weight -= weigh(path, previous);
+	}
+    }
+
+    private void removeIf(String prefix) {
+	final Iterator<Map.Entry<String, byte[]>> iterator = this.entries.entrySet().iterator();
+	while (iterator.hasNext()) {
+	    final Map.Entry<String, byte[]> entry = iterator.next();
+	    if (entry.getKey().startsWith(prefix)) {
+		this.weight -= weigh(entry.getKey(), entry.getValue());
+		iterator.remove();
+	    }
+	}
+    }
+
+    private static long weigh(String path, byte[] bytes) {
+	return ENTRY_OVERHEAD + 2L * path.length() + bytes.length;
+    }
+
+    /**
+     * Restores the delegate on first use and hands out its visitor, counting
+     * the load. Unless the delegate's visitors are detached, its restore runs
+     * on a thread of its own that waits inside the restore until
+     * {@link #close()}.
+     */
+    private final class DelegateRestore {
+
+	private final CountDownLatch released = new CountDownLatch(1);
+	private LoadVisitor visitor;
+	private Thread restoreThread;
+
+	synchronized LoadVisitor visitor() {
+	    if (this.visitor == null) {
+		CachingPersistenceManager.this.loads.increment();
+		if (CachingPersistenceManager.this.detachedVisitors) {
+		    CachingPersistenceManager.this.delegate.restore((LoadVisitor delegateVisitor) -> this.visitor = delegateVisitor);
+		} else {
+		    this.visitor = restoreScoped();
+		}
+		if (this.visitor == null) {
+		    this.visitor = CachingLoadVisitor.EMPTY;
+		}
+	    }
+	    return this.visitor;
+	}
+
+	private LoadVisitor restoreScoped() {
+	    final CompletableFuture<LoadVisitor> handedOver = new CompletableFuture<>();
+	    this.restoreThread = new Thread(() -> {
+		try {
+		    CachingPersistenceManager.this.delegate.restore((LoadVisitor delegateVisitor) -> {
+			handedOver.complete(delegateVisitor);
+			awaitRelease();
+		    });
+		    handedOver.complete(null);
+		} catch (final RuntimeException | Error ex) {
+		    if (!handedOver.completeExceptionally(ex)) {
+			LOG.log(Level.SEVERE, null, ex);
+		    }
+		}
+	    }, "caching restore");
+	    this.restoreThread.setDaemon(true);
+	    this.restoreThread.start();
+	    try {
+		return handedOver.join();
+	    } catch (final CompletionException ex) {
+		if (ex.getCause() instanceof Error) {
+		    throw (Error) ex.getCause();
+		}
+		throw (RuntimeException) ex.getCause();
+	    }
+	}
+
+	private void awaitRelease() {
+	    boolean interrupted = false;
+	    while (true) {
+		try {
+		    this.released.await();
+		    break;
+		} catch (final InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+
+	/**
+	 * Lets the delegate's restore return and waits for it, so it is done
+	 * with its storage when the cached restore returns.
+	 */
+	void close() {
+	    this.released.countDown();
+	    final Thread thread;
+	    synchronized (this) {
+		thread = this.restoreThread;
+	    }
+	    if (thread != null) {
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+		    try {
+			thread.join();
+		    } catch (final InterruptedException ex) {
+			interrupted = true;
+		    }
+		}
+		if (interrupted) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}
+
+    }
+
+}
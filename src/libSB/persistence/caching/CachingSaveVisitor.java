@@ -0,0 +1,154 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.caching;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.KeySchema;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.SlotValues;
+import libSB.persistence.mapBased.FlatKeys;
+
+/**
+ * Passes everything on to the delegate and records the converted values by
+ * path.
+ *
+ * @author Simon Berndt
+ */
+class CachingSaveVisitor implements SaveVisitor {
+
+    private final SaveVisitor visitor;
+    private final String prefix;
+    private final Map<String, byte[]> written;
+    private final List<String> nestedPrefixes;
+
+    CachingSaveVisitor(SaveVisitor visitor, String prefix, Map<String, byte[]> written, List<String> nestedPrefixes) {
+	this.visitor = visitor;
+	this.prefix = prefix;
+	this.written = written;
+	this.nestedPrefixes = nestedPrefixes;
+    }
+
+    @Override
+    public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	this.visitor.persistSingle(key, value, (T plain) -> {
+	    final byte[] bytes = typeConverter.apply(plain);
+	    if (key != null) {
+		this.written.put(FlatKeys.value(this.prefix, key), bytes != null ? bytes.clone() : null);
+	    }
+	    return bytes;
+	});
+    }
+
+    @Override
+    public void persistInt(String key, int value) {
+	this.visitor.persistInt(key, value);
+	record(key, ByteBuffer.allocate(Integer.BYTES).putInt(0, value).array());
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	this.visitor.persistLong(key, value);
+	record(key, ByteBuffer.allocate(Long.BYTES).putLong(0, value).array());
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	this.visitor.persistDouble(key, value);
+	record(key, ByteBuffer.allocate(Double.BYTES).putDouble(0, value).array());
+    }
+
+    @Override
+    public <T> void persistBuffered(String key, T value, BufferConverter<T> converter) {
+	Objects.requireNonNull(converter);
+	this.visitor.persistBuffered(key, value, new BufferConverter<T>() {
+
+	    @Override
+	    public int sizeOf(T plain) {
+		return converter.sizeOf(plain);
+	    }
+
+	    @Override
+	    public void write(T plain, ByteBuffer target) {
+		final int position = target.position();
+		converter.write(plain, target);
+		final ByteBuffer written = target.duplicate();
+		written.limit(target.position());
+		written.position(position);
+		final byte[] bytes = new byte[written.remaining()];
+		written.get(bytes);
+		record(key, bytes);
+	    }
+
+	    @Override
+	    public T read(ByteBuffer source) {
+		return converter.read(source);
+	    }
+
+	});
+    }
+
+    @Override
+    public <K extends Enum<K>> void persistSlots(SlotValues<K> values) {
+	this.visitor.persistSlots(values);
+	final KeySchema<K> schema = values.schema();
+	for (int slot = 0; slot < schema.size(); slot++) {
+	    final ByteBuffer value = values.get(slot);
+	    if (value != null) {
+		final byte[] bytes = new byte[value.remaining()];
+		value.get(bytes);
+		record(schema.key(slot), bytes);
+	    }
+	}
+    }
+
+    @Override
+    public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	Objects.requireNonNull(values);
+	final String nestedPrefix = FlatKeys.nested(this.prefix, key);
+	this.nestedPrefixes.add(nestedPrefix);
+	final int[] count = new int[1];
+	this.visitor.persistNested(key, values.map((Consumer<? super SaveVisitor> item) -> {
+	    final String itemPrefix = FlatKeys.item(nestedPrefix, count[0]++);
+	    return (Consumer<SaveVisitor>) (SaveVisitor itemVisitor)
+		    -> item.accept(new CachingSaveVisitor(itemVisitor, itemPrefix, this.written, this.nestedPrefixes));
+	}));
+	this.written.put(FlatKeys.count(nestedPrefix), ByteBuffer.allocate(Integer.BYTES).putInt(0, count[0]).array());
+    }
+
+    private void record(String key, byte[] bytes) {
+	if (key != null) {
+	    this.written.put(FlatKeys.value(this.prefix, key), bytes);
+	}
+    }
+
+}
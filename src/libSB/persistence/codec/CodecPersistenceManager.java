@@ -0,0 +1,132 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.codec;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import libSB.byteTools.codec.CodecChain;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+
+/**
+ * Runs every value through a {@link CodecChain} between its type converter
+ * and the delegate, for backends without an encoding hook of their own.
+ * Primitive values take the converter path as well, so they are encoded like
+ * all others.
+ * <p>
+ * The delegate only ever holds encoded bytes, so the buffered, view and slot
+ * methods of the visitors cannot be passed on. They fall back to the
+ * converter path of {@link SaveVisitor} and {@link LoadVisitor}, which
+ * encodes and decodes the value as a whole. Lazy restores are passed on with
+ * the decoding deferred together with the converter.
+ *
+ * @author Simon Berndt
+ */
+public class CodecPersistenceManager implements PersistenceManager {
+
+    private final PersistenceManager delegate;
+    private final CodecChain codecs;
+
+    public CodecPersistenceManager(PersistenceManager delegate, CodecChain codecs) {
+	this.delegate = Objects.requireNonNull(delegate);
+	this.codecs = Objects.requireNonNull(codecs);
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	this.delegate.restore((LoadVisitor visitor) -> peristable.accept(new DecodingLoadVisitor(visitor, this.codecs)));
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	return this.delegate.trySave((SaveVisitor visitor) -> peristable.accept(new EncodingSaveVisitor(visitor, this.codecs)));
+    }
+
+    private static final class EncodingSaveVisitor implements SaveVisitor {
+
+	private final SaveVisitor visitor;
+	private final CodecChain codecs;
+
+	EncodingSaveVisitor(SaveVisitor visitor, CodecChain codecs) {
+	    this.visitor = visitor;
+	    this.codecs = codecs;
+	}
+
+	@Override
+	public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	    Objects.requireNonNull(typeConverter);
+	    this.visitor.persistSingle(key, value, typeConverter.andThen(this.codecs::encode));
+	}
+
+	@Override
+	public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	    Objects.requireNonNull(values);
+	    this.visitor.persistNested(key, values.map((Consumer<? super SaveVisitor> item) -> (Consumer<SaveVisitor>) (SaveVisitor itemVisitor)
+		    -> item.accept(new EncodingSaveVisitor(itemVisitor, this.codecs))));
+	}
+
+    }
+
+    private static final class DecodingLoadVisitor implements LoadVisitor {
+
+	private final LoadVisitor visitor;
+	private final CodecChain codecs;
+
+	DecodingLoadVisitor(LoadVisitor visitor, CodecChain codecs) {
+	    this.visitor = visitor;
+	    this.codecs = codecs;
+	}
+
+	@Override
+	public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	    Objects.requireNonNull(typeConverter);
+	    this.visitor.restoreSingle(key, field, ((Function<byte[], byte[]>) this.codecs::decode).andThen(typeConverter));
+	}
+
+	@Override
+	public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	    Objects.requireNonNull(typeConverter);
+	    this.visitor.restoreLazy(key, field, ((Function<byte[], byte[]>) this.codecs::decode).andThen(typeConverter));
+	}
+
+	@Override
+	public Stream<LoadVisitor> restoreNested(String key) {
+	    return this.visitor.restoreNested(key).map((LoadVisitor itemVisitor) -> new DecodingLoadVisitor(itemVisitor, this.codecs));
+	}
+
+    }
+
+}
@@ -0,0 +1,150 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.concurrent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveSnapshot;
+import libSB.persistence.Saveable;
+import libSB.persistence.mapBased.FlatKeys;
+import libSB.persistence.mapBased.MapLoadVisitor;
+import libSB.persistence.mapBased.MapSaveVisitor;
+
+/**
+ * Safe for any number of threads saving and restoring at once. The state is
+ * an immutable sorted map in the layout of {@link FlatKeys}, published through
+ * a volatile field. Restores read the map current at their start without any
+ * locking, so they always see the complete result of some save.
+ * <p>
+ * Saves are recorded as a {@link SaveSnapshot} before the lock is taken, so
+ * suppliers and converters run concurrently. Applying the snapshot is
+ * serialized: it is replayed into a copy of the current map, which then
+ * replaces it. Keys the save does not touch keep their values, nested values
+ * are replaced as a whole. With a file, it is rewritten as Properties XML
+ * before the lock is released, and the new map is only published once the
+ * file was written. A failed write leaves the state as it was.
+ *
+ * @author Simon Berndt
+ */
+public class SnapshotPersistenceManager implements PersistenceManager {
+
+    private static final Logger LOG = Logger.getLogger(SnapshotPersistenceManager.class.getName());
+
+    private final Path configFileLocation;
+    private final Object saveLock = new Object();
+    private volatile NavigableMap<String, byte[]> state;
+
+    /**
+     * Keeps the state in memory only.
+     */
+    public SnapshotPersistenceManager() {
+	this.configFileLocation = null;
+	this.state = Collections.unmodifiableNavigableMap(new TreeMap<>());
+    }
+
+    public SnapshotPersistenceManager(Path configFileLocation) {
+	this.configFileLocation = configFileLocation.toAbsolutePath();
+	this.state = Collections.unmodifiableNavigableMap(read());
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	peristable.accept(new MapLoadVisitor(this.state));
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	final SaveSnapshot snapshot = SaveSnapshot.of(peristable);
+	synchronized (this.saveLock) {
+	    final NavigableMap<String, byte[]> updated = new TreeMap<>(this.state);
+	    snapshot.accept(new MapSaveVisitor(updated));
+	    if (this.configFileLocation != null && !write(updated)) {
+		return false;
+	    }
+	    this.state = Collections.unmodifiableNavigableMap(updated);
+	    return true;
+	}
+    }
+
+    private NavigableMap<String, byte[]> read() {
+	final NavigableMap<String, byte[]> entries = new TreeMap<>();
+	if (Files.exists(this.configFileLocation)) {
+	    final Properties properties = new Properties();
+	    try (InputStream inputStream = Files.newInputStream(this.configFileLocation)) {
+		properties.loadFromXML(inputStream);
+	    } catch (final IOException ex) {
+		LOG.log(Level.SEVERE, null, ex);
+	    }
+	    for (final String name : properties.stringPropertyNames()) {
+		try {
+		    entries.put(name, Base64.getDecoder().decode(properties.getProperty(name)));
+		} catch (final IllegalArgumentException ex) {
+		    LOG.log(Level.SEVERE, "Skipping corrupt value of " + name, ex);
+		}
+	    }
+	}
+	return entries;
+    }
+
+    private boolean write(NavigableMap<String, byte[]> entries) {
+	final Properties properties = new Properties();
+	entries.forEach((String flatKey, byte[] value) -> properties.setProperty(flatKey, Base64.getEncoder().encodeToString(value)));
+	try {
+	    Files.createDirectories(this.configFileLocation.getParent());
+	    final Path tempFile = Files.createTempFile(this.configFileLocation.getParent(), this.configFileLocation.getFileName().toString(), ".tmp");
+	    try {
+		try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+		    properties.storeToXML(outputStream, null, StandardCharsets.UTF_8.name());
+		}
+		Files.move(tempFile, this.configFileLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	    } finally {
+		Files.deleteIfExists(tempFile);
+	    }
+	    return true;
+	} catch (final IOException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	    return false;
+	}
+    }
+
+}
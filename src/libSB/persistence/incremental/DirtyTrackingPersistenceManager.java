@@ -0,0 +1,228 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.incremental;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.byteTools.StandardByteConverters;
+import libSB.persistence.KeySchema;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveSnapshot;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import libSB.persistence.SlotValues;
+
+/**
+ * Passes on only the top-level keys whose bytes changed since they were last
+ * saved or restored through this manager. A save without changes does not
+ * reach the delegate at all.
+ * <p>
+ * Keys skipped this way have to keep their previous value in the delegate, so
+ * this is only meant for backends that merge saves into their existing state,
+ * such as the DOM, preferences and log based ones. Backends that rewrite
+ * their whole file on every save lose the skipped keys.
+ * <p>
+ * Fingerprints are only taken over once {@link PersistenceManager#trySave(Saveable)}
+ * of the delegate reports success, so a failed save is repeated in full by
+ * the next one. Decorators and backends between this manager and the storage
+ * have to report failed writes there as well. Values restored through
+ * {@link LoadVisitor#restoreLazy} are not fingerprinted, as they may be read
+ * only after a later save.
+ *
+ * @author Simon Berndt
+ */
+public class DirtyTrackingPersistenceManager implements PersistenceManager {
+
+    private final PersistenceManager delegate;
+    private final Map<String, Fingerprint> persisted;
+
+    public DirtyTrackingPersistenceManager(PersistenceManager delegate) {
+	this.delegate = Objects.requireNonNull(delegate);
+	this.persisted = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	this.delegate.restore((LoadVisitor visitor) -> peristable.accept(new FingerprintingLoadVisitor(visitor)));
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	final SaveSnapshot snapshot = SaveSnapshot.of(peristable);
+	final List<SaveSnapshot.Entry> changed = new ArrayList<>();
+	final List<Fingerprint> fingerprints = new ArrayList<>();
+	for (final SaveSnapshot.Entry entry : snapshot.entries()) {
+	    final Fingerprint fingerprint = Fingerprint.of(entry);
+	    if (!fingerprint.equals(this.persisted.get(entry.getKey()))) {
+		changed.add(entry);
+		fingerprints.add(fingerprint);
+	    }
+	}
+	if (changed.isEmpty()) {
+	    return true;
+	}
+	final boolean saved = this.delegate.trySave((SaveVisitor visitor) -> changed.forEach((SaveSnapshot.Entry entry) -> entry.accept(visitor)));
+	for (int i = 0; i < changed.size(); i++) {
+	    if (saved) {
+		this.persisted.put(changed.get(i).getKey(), fingerprints.get(i));
+	    } else {
+		this.persisted.remove(changed.get(i).getKey());
+	    }
+	}
+	return saved;
+    }
+
+    /**
+     * Forgets all fingerprints, so the next save passes on every key. Needed
+     * when the delegate's storage was changed by someone else.
+     */
+    public void invalidate() {
+	this.persisted.clear();
+    }
+
+    private final class FingerprintingLoadVisitor implements LoadVisitor {
+
+	private final LoadVisitor visitor;
+
+	FingerprintingLoadVisitor(LoadVisitor visitor) {
+	    this.visitor = visitor;
+	}
+
+	@Override
+	public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	    this.visitor.restoreSingle(key, field, (byte[] bytes) -> {
+		record(key, Fingerprint.of(bytes));
+		return typeConverter.apply(bytes);
+	    });
+	}
+
+	@Override
+	public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	    this.visitor.restoreView(key, field, (ByteBuffer view) -> {
+		record(key, Fingerprint.of(view));
+		return viewConverter.apply(view);
+	    });
+	}
+
+	@Override
+	public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	    DirtyTrackingPersistenceManager.this.persisted.remove(key);
+	    this.visitor.restoreLazy(key, field, typeConverter);
+	}
+
+	@Override
+	public void restoreInt(String key, IntConsumer field) {
+	    this.visitor.restoreInt(key, (int value) -> {
+		record(key, Fingerprint.of(StandardByteConverters.intToBytes(value)));
+		field.accept(value);
+	    });
+	}
+
+	@Override
+	public void restoreLong(String key, LongConsumer field) {
+	    this.visitor.restoreLong(key, (long value) -> {
+		record(key, Fingerprint.of(StandardByteConverters.longToBytes(value)));
+		field.accept(value);
+	    });
+	}
+
+	@Override
+	public void restoreDouble(String key, DoubleConsumer field) {
+	    this.visitor.restoreDouble(key, (double value) -> {
+		record(key, Fingerprint.of(StandardByteConverters.doubleToBytes(value)));
+		field.accept(value);
+	    });
+	}
+
+	@Override
+	public <T> void restoreBuffered(String key, Consumer<? super T> field, BufferConverter<T> converter) {
+	    this.visitor.restoreBuffered(key, field, new BufferConverter<T>() {
+
+		@Override
+		public int sizeOf(T value) {
+		    return converter.sizeOf(value);
+		}
+
+		@Override
+		public void write(T value, ByteBuffer target) {
+		    converter.write(value, target);
+		}
+
+		@Override
+		public T read(ByteBuffer source) {
+		    final int start = source.position();
+		    final T value = converter.read(source);
+		    final ByteBuffer consumed = source.duplicate();
+		    consumed.position(start);
+		    consumed.limit(source.position());
+		    record(key, Fingerprint.of(consumed));
+		    return value;
+		}
+
+	    });
+	}
+
+	@Override
+	public <K extends Enum<K>> SlotValues<K> restoreSlots(KeySchema<K> schema) {
+	    final SlotValues<K> values = this.visitor.restoreSlots(schema);
+	    for (int slot = 0; slot < schema.size(); slot++) {
+		final ByteBuffer value = values.get(slot);
+		if (value != null) {
+		    record(schema.key(slot), Fingerprint.of(value));
+		}
+	    }
+	    return values;
+	}
+
+	@Override
+	public Stream<LoadVisitor> restoreNested(String key) {
+	    return this.visitor.restoreNested(key);
+	}
+
+	private void record(String key, Fingerprint fingerprint) {
+	    DirtyTrackingPersistenceManager.this.persisted.put(key, fingerprint);
+	}
+
+    }
+
+}
@@ -0,0 +1,148 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.incremental;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import libSB.persistence.SaveSnapshot;
+
+/**
+ * Length and 64 bit FNV-1a hash of the bytes a key was last persisted with.
+ * Nested entries are hashed over their keys, item boundaries and values.
+ *
+ * @author Simon Berndt
+ */
+final class Fingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte VALUE = 1;
+    private static final byte NESTED = 2;
+    private static final byte ITEM = 3;
+
+    private final long length;
+    private final long hash;
+
+    private Fingerprint(long length, long hash) {
+	this.length = length;
+	this.hash = hash;
+    }
+
+    static Fingerprint of(SaveSnapshot.Entry entry) {
+	final Hasher hasher = new Hasher();
+	hasher.add(entry);
+	return new Fingerprint(hasher.length, hasher.hash);
+    }
+
+    static Fingerprint of(byte[] value) {
+	return of(ByteBuffer.wrap(value));
+    }
+
+    /**
+     * @param value the bytes from position to limit are hashed, the position
+     *              is left unchanged
+     */
+    static Fingerprint of(ByteBuffer value) {
+	final Hasher hasher = new Hasher();
+	hasher.addValue(value);
+	return new Fingerprint(hasher.length, hasher.hash);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (!(obj instanceof Fingerprint)) {
+	    return false;
+	}
+	final Fingerprint other = (Fingerprint) obj;
+	return this.length == other.length && this.hash == other.hash;
+    }
+
+    @Override
+    public int hashCode() {
+	return Long.hashCode(this.hash);
+    }
+
+    private static final class Hasher {
+
+	private long length;
+	private long hash = FNV_OFFSET_BASIS;
+
+	void add(SaveSnapshot.Entry entry) {
+	    if (entry.isNested()) {
+		addByte(NESTED);
+		final List<SaveSnapshot> items = entry.getItems();
+		addInt(items.size());
+		for (final SaveSnapshot item : items) {
+		    addByte(ITEM);
+		    addInt(item.entries().size());
+		    for (final SaveSnapshot.Entry itemEntry : item.entries()) {
+			addKey(itemEntry.getKey());
+			add(itemEntry);
+		    }
+		}
+	    } else {
+		final byte[] value = entry.getValue();
+		addValue(value != null ? ByteBuffer.wrap(value) : null);
+	    }
+	}
+
+	void addValue(ByteBuffer value) {
+	    if (value == null) {
+		addByte(NULL_VALUE);
+	    } else {
+		addByte(VALUE);
+		addInt(value.remaining());
+		for (int i = value.position(); i < value.limit(); i++) {
+		    addByte(value.get(i));
+		}
+		this.length += value.remaining();
+	    }
+	}
+
+	private void addKey(String key) {
+	    addInt(key.length());
+	    for (int i = 0; i < key.length(); i++) {
+		final char c = key.charAt(i);
+		addByte((byte) (c >>> 8));
+		addByte((byte) c);
+	    }
+	}
+
+	private void addInt(int i) {
+	    addByte((byte) (i >>> 24));
+	    addByte((byte) (i >>> 16));
+	    addByte((byte) (i >>> 8));
+	    addByte((byte) i);
+	}
+
+	private void addByte(byte b) {
+	    this.hash ^= b & 0xff;
+	    this.hash *= FNV_PRIME;
+	}
+
+    }
+
+}
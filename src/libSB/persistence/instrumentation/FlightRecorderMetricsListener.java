@@ -0,0 +1,62 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.instrumentation;
+
+/**
+ * Emits the measurements as JDK Flight Recorder events, named
+ * {@code libSB.persistence.Value} and {@code libSB.persistence.Operation}.
+ * Value events are disabled by default because of their volume, enable them
+ * in the recording settings when looking for expensive keys.
+ * <p>
+ * Requires a runtime providing the {@code jdk.jfr} module.
+ *
+ * @author Simon Berndt
+ */
+public class FlightRecorderMetricsListener implements PersistenceMetricsListener {
+
+    @Override
+    public void valueConverted(Operation operation, String path, int nestingLevel, int encodedBytes, long converterNanos) {
+	final ValueEvent event = new ValueEvent();
+	if (event.isEnabled()) {
+	    event.operation = operation.name();
+	    event.path = path;
+	    event.nestingLevel = nestingLevel;
+	    event.encodedBytes = encodedBytes;
+	    event.converterTime = converterNanos;
+	    event.commit();
+	}
+    }
+
+    @Override
+    public void operationCompleted(Operation operation, long totalNanos, long backendNanos) {
+	final OperationEvent event = new OperationEvent();
+	if (event.isEnabled()) {
+	    event.operation = operation.name();
+	    event.totalTime = totalNanos;
+	    event.backendTime = backendNanos;
+	    event.commit();
+	}
+    }
+
+}
@@ -0,0 +1,153 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.instrumentation;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.KeySchema;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SlotValues;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+class InstrumentedLoadVisitor implements LoadVisitor {
+
+    private final LoadVisitor visitor;
+    private final String pathPrefix;
+    private final int nestingLevel;
+    private final PersistenceMetricsListener listener;
+
+    InstrumentedLoadVisitor(LoadVisitor visitor, String pathPrefix, int nestingLevel, PersistenceMetricsListener listener) {
+	this.visitor = visitor;
+	this.pathPrefix = pathPrefix;
+	this.nestingLevel = nestingLevel;
+	this.listener = listener;
+    }
+
+    @Override
+    public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	this.visitor.restoreSingle(key, field, (byte[] bytes) -> {
+	    final long start = System.nanoTime();
+	    final T value = typeConverter.apply(bytes);
+	    final long converterNanos = System.nanoTime() - start;
+	    this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + key, this.nestingLevel, bytes.length, converterNanos);
+	    return value;
+	});
+    }
+
+    @Override
+    public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	Objects.requireNonNull(viewConverter);
+	this.visitor.restoreView(key, field, (ByteBuffer view) -> {
+	    final int encodedBytes = view.remaining();
+	    final long start = System.nanoTime();
+	    final T value = viewConverter.apply(view);
+	    final long converterNanos = System.nanoTime() - start;
+	    this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + key, this.nestingLevel, encodedBytes, converterNanos);
+	    return value;
+	});
+    }
+
+    /**
+     * Times the converter when the handle is first read, which may be after
+     * the restore completed.
+     */
+    @Override
+    public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	this.visitor.restoreLazy(key, field, (byte[] bytes) -> {
+	    final long start = System.nanoTime();
+	    final T value = typeConverter.apply(bytes);
+	    final long converterNanos = System.nanoTime() - start;
+	    this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + key, this.nestingLevel, bytes.length, converterNanos);
+	    return value;
+	});
+    }
+
+    @Override
+    public void restoreInt(String key, IntConsumer field) {
+	this.visitor.restoreInt(key, (int value) -> {
+	    this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + key, this.nestingLevel, Integer.BYTES, 0);
+	    field.accept(value);
+	});
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	this.visitor.restoreLong(key, (long value) -> {
+	    this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + key, this.nestingLevel, Long.BYTES, 0);
+	    field.accept(value);
+	});
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	this.visitor.restoreDouble(key, (double value) -> {
+	    this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + key, this.nestingLevel, Double.BYTES, 0);
+	    field.accept(value);
+	});
+    }
+
+    @Override
+    public <T> void restoreBuffered(String key, Consumer<? super T> field, BufferConverter<T> converter) {
+	Objects.requireNonNull(converter);
+	this.visitor.restoreBuffered(key, field, new MeasuredBufferConverter<>(converter, (int encodedBytes, long converterNanos)
+		-> this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + key, this.nestingLevel, encodedBytes, converterNanos)));
+    }
+
+    /**
+     * Reports the size of every restored slot, the values are converted only
+     * when read from the slots.
+     */
+    @Override
+    public <K extends Enum<K>> SlotValues<K> restoreSlots(KeySchema<K> schema) {
+	final SlotValues<K> values = this.visitor.restoreSlots(schema);
+	for (int slot = 0; slot < schema.size(); slot++) {
+	    final ByteBuffer value = values.get(slot);
+	    if (value != null) {
+		this.listener.valueConverted(Operation.RESTORE, this.pathPrefix + schema.key(slot), this.nestingLevel, value.remaining(), 0);
+	    }
+	}
+	return values;
+    }
+
+    @Override
+    public Stream<LoadVisitor> restoreNested(String key) {
+	final String itemPrefix = this.pathPrefix + key + '/';
+	return this.visitor.restoreNested(key)
+		.map((LoadVisitor itemVisitor) -> new InstrumentedLoadVisitor(itemVisitor, itemPrefix, this.nestingLevel + 1, this.listener));
+    }
+
+}
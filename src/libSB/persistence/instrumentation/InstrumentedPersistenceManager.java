@@ -0,0 +1,92 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.instrumentation;
+
+import java.util.Objects;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+
+/**
+ * Measures every save and restore of the delegate and reports to a
+ * {@link PersistenceMetricsListener}: size and converter time per value, and
+ * per operation the total time and the part of it the backend spends outside
+ * of the visit.
+ * <p>
+ * Backends that write while being visited, like the streaming XML one, report
+ * that writing as part of the visit rather than as backend time.
+ *
+ * @author Simon Berndt
+ */
+public class InstrumentedPersistenceManager implements PersistenceManager {
+
+    private final PersistenceManager delegate;
+    private final PersistenceMetricsListener listener;
+
+    public InstrumentedPersistenceManager(PersistenceManager delegate, PersistenceMetricsListener listener) {
+	this.delegate = Objects.requireNonNull(delegate);
+	this.listener = Objects.requireNonNull(listener);
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	final long[] visitNanos = new long[1];
+	final long start = System.nanoTime();
+	this.delegate.restore((LoadVisitor visitor) -> {
+	    final long visitStart = System.nanoTime();
+	    try {
+		peristable.accept(new InstrumentedLoadVisitor(visitor, "", 0, this.listener));
+	    } finally {
+		visitNanos[0] += System.nanoTime() - visitStart;
+	    }
+	});
+	final long totalNanos = System.nanoTime() - start;
+	this.listener.operationCompleted(Operation.RESTORE, totalNanos, totalNanos - visitNanos[0]);
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	final long[] visitNanos = new long[1];
+	final long start = System.nanoTime();
+	final boolean saved = this.delegate.trySave((SaveVisitor visitor) -> {
+	    final long visitStart = System.nanoTime();
+	    try {
+		peristable.accept(new InstrumentedSaveVisitor(visitor, "", 0, this.listener));
+	    } finally {
+		visitNanos[0] += System.nanoTime() - visitStart;
+	    }
+	});
+	final long totalNanos = System.nanoTime() - start;
+	this.listener.operationCompleted(Operation.SAVE, totalNanos, totalNanos - visitNanos[0]);
+	return saved;
+    }
+
+}
@@ -0,0 +1,114 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.instrumentation;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.KeySchema;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.SlotValues;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+class InstrumentedSaveVisitor implements SaveVisitor {
+
+    private final SaveVisitor visitor;
+    private final String pathPrefix;
+    private final int nestingLevel;
+    private final PersistenceMetricsListener listener;
+
+    InstrumentedSaveVisitor(SaveVisitor visitor, String pathPrefix, int nestingLevel, PersistenceMetricsListener listener) {
+	this.visitor = visitor;
+	this.pathPrefix = pathPrefix;
+	this.nestingLevel = nestingLevel;
+	this.listener = listener;
+    }
+
+    @Override
+    public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	this.visitor.persistSingle(key, value, (T plain) -> {
+	    final long start = System.nanoTime();
+	    final byte[] bytes = typeConverter.apply(plain);
+	    final long converterNanos = System.nanoTime() - start;
+	    if (bytes != null) {
+		this.listener.valueConverted(Operation.SAVE, this.pathPrefix + key, this.nestingLevel, bytes.length, converterNanos);
+	    }
+	    return bytes;
+	});
+    }
+
+    @Override
+    public void persistInt(String key, int value) {
+	this.visitor.persistInt(key, value);
+	this.listener.valueConverted(Operation.SAVE, this.pathPrefix + key, this.nestingLevel, Integer.BYTES, 0);
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	this.visitor.persistLong(key, value);
+	this.listener.valueConverted(Operation.SAVE, this.pathPrefix + key, this.nestingLevel, Long.BYTES, 0);
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	this.visitor.persistDouble(key, value);
+	this.listener.valueConverted(Operation.SAVE, this.pathPrefix + key, this.nestingLevel, Double.BYTES, 0);
+    }
+
+    @Override
+    public <T> void persistBuffered(String key, T value, BufferConverter<T> converter) {
+	Objects.requireNonNull(converter);
+	this.visitor.persistBuffered(key, value, new MeasuredBufferConverter<>(converter, (int encodedBytes, long converterNanos)
+		-> this.listener.valueConverted(Operation.SAVE, this.pathPrefix + key, this.nestingLevel, encodedBytes, converterNanos)));
+    }
+
+    @Override
+    public <K extends Enum<K>> void persistSlots(SlotValues<K> values) {
+	this.visitor.persistSlots(values);
+	final KeySchema<K> schema = values.schema();
+	for (int slot = 0; slot < schema.size(); slot++) {
+	    final ByteBuffer value = values.get(slot);
+	    if (value != null) {
+		this.listener.valueConverted(Operation.SAVE, this.pathPrefix + schema.key(slot), this.nestingLevel, value.remaining(), 0);
+	    }
+	}
+    }
+
+    @Override
+    public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	Objects.requireNonNull(values);
+	final String itemPrefix = this.pathPrefix + key + '/';
+	this.visitor.persistNested(key, values.map((Consumer<? super SaveVisitor> item) -> (Consumer<SaveVisitor>) (SaveVisitor itemVisitor)
+		-> item.accept(new InstrumentedSaveVisitor(itemVisitor, itemPrefix, this.nestingLevel + 1, this.listener))));
+    }
+
+}
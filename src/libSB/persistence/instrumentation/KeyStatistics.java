@@ -0,0 +1,204 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.instrumentation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Aggregates the measurements of an {@link InstrumentedPersistenceManager} per
+ * path and per nesting level, to find the most expensive keys of a running
+ * application.
+ *
+ * @author Simon Berndt
+ */
+public class KeyStatistics implements PersistenceMetricsListener {
+
+    private final Map<Operation, ConcurrentMap<String, ValueCounters>> paths;
+    private final Map<Operation, ConcurrentMap<Integer, ValueCounters>> levels;
+    private final Map<Operation, OperationCounters> operations;
+
+    public KeyStatistics() {
+	this.paths = new EnumMap<>(Operation.class);
+	this.levels = new EnumMap<>(Operation.class);
+	this.operations = new EnumMap<>(Operation.class);
+	for (final Operation operation : Operation.values()) {
+	    this.paths.put(operation, new ConcurrentHashMap<>());
+	    this.levels.put(operation, new ConcurrentHashMap<>());
+	    this.operations.put(operation, new OperationCounters());
+	}
+    }
+
+    @Override
+    public void valueConverted(Operation operation, String path, int nestingLevel, int encodedBytes, long converterNanos) {
+	this.paths.get(operation).computeIfAbsent(path, (String key) -> new ValueCounters()).add(encodedBytes, converterNanos);
+	this.levels.get(operation).computeIfAbsent(nestingLevel, (Integer level) -> new ValueCounters()).add(encodedBytes, converterNanos);
+    }
+
+    @Override
+    public void operationCompleted(Operation operation, long totalNanos, long backendNanos) {
+	this.operations.get(operation).add(totalNanos, backendNanos);
+    }
+
+    /**
+     * The {@code limit} paths with the most encoded bytes in total.
+     */
+    public List<Summary> topByEncodedBytes(Operation operation, int limit) {
+	return top(operation, limit, Comparator.comparingLong(Summary::getEncodedBytes));
+    }
+
+    /**
+     * The {@code limit} paths with the most converter time in total.
+     */
+    public List<Summary> topByConverterTime(Operation operation, int limit) {
+	return top(operation, limit, Comparator.comparingLong(Summary::getConverterNanos));
+    }
+
+    public List<Summary> byNestingLevel(Operation operation) {
+	return this.levels.get(operation).entrySet().stream()
+		.sorted(Map.Entry.comparingByKey())
+		.map((Map.Entry<Integer, ValueCounters> entry) -> entry.getValue().summarize(String.valueOf(entry.getKey())))
+		.collect(Collectors.toList());
+    }
+
+    public long getOperationCount(Operation operation) {
+	return this.operations.get(operation).count.sum();
+    }
+
+    public long getTotalNanos(Operation operation) {
+	return this.operations.get(operation).totalNanos.sum();
+    }
+
+    public long getBackendNanos(Operation operation) {
+	return this.operations.get(operation).backendNanos.sum();
+    }
+
+    public void reset() {
+	for (final Operation operation : Operation.values()) {
+	    this.paths.get(operation).clear();
+	    this.levels.get(operation).clear();
+	    this.operations.get(operation).reset();
+	}
+    }
+
+    private List<Summary> top(Operation operation, int limit, Comparator<Summary> comparator) {
+	final List<Summary> summaries = new ArrayList<>();
+	this.paths.get(operation).forEach((String path, ValueCounters counters) -> summaries.add(counters.summarize(path)));
+	Collections.sort(summaries, comparator.reversed());
+	return summaries.size() > limit ? new ArrayList<>(summaries.subList(0, limit)) : summaries;
+    }
+
+    /**
+     * Totals of one path or nesting level.
+     */
+    public static final class Summary {
+
+	private final String name;
+	private final long count;
+	private final long encodedBytes;
+	private final long converterNanos;
+
+	Summary(String name, long count, long encodedBytes, long converterNanos) {
+	    this.name = name;
+	    this.count = count;
+	    this.encodedBytes = encodedBytes;
+	    this.converterNanos = converterNanos;
+	}
+
+	public String getName() {
+	    return this.name;
+	}
+
+	public long getCount() {
+	    return this.count;
+	}
+
+	public long getEncodedBytes() {
+	    return this.encodedBytes;
+	}
+
+	public long getConverterNanos() {
+	    return this.converterNanos;
+	}
+
+	@Override
+	public String toString() {
+	    return this.name + ": " + this.count + " values, " + this.encodedBytes + " bytes, " + this.converterNanos + " ns converting";
+	}
+
+    }
+
+    /**
+     * Totals of the values converted at one path or nesting level.
+     */
+    private static final class ValueCounters {
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder encodedBytes = new LongAdder();
+	private final LongAdder converterNanos = new LongAdder();
+
+	void add(long encodedBytes, long converterNanos) {
+	    this.count.increment();
+	    this.encodedBytes.add(encodedBytes);
+	    this.converterNanos.add(converterNanos);
+	}
+
+	Summary summarize(String name) {
+	    return new Summary(name, this.count.sum(), this.encodedBytes.sum(), this.converterNanos.sum());
+	}
+
+    }
+
+    /**
+     * Totals of the completed saves or restores.
+     */
+    private static final class OperationCounters {
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAdder backendNanos = new LongAdder();
+
+	void add(long totalNanos, long backendNanos) {
+	    this.count.increment();
+	    this.totalNanos.add(totalNanos);
+	    this.backendNanos.add(backendNanos);
+	}
+
+	void reset() {
+	    this.count.reset();
+	    this.totalNanos.reset();
+	    this.backendNanos.reset();
+	}
+
+    }
+
+}
@@ -0,0 +1,76 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.instrumentation;
+
+import java.nio.ByteBuffer;
+import libSB.byteTools.BufferConverter;
+
+/**
+ * Times the reads and writes of a {@link BufferConverter} and measures the
+ * bytes they consume or produce.
+ *
+ * @author Simon Berndt
+ */
+final class MeasuredBufferConverter<T> implements BufferConverter<T> {
+
+    private final BufferConverter<T> converter;
+    private final Measurement measurement;
+
+    MeasuredBufferConverter(BufferConverter<T> converter, Measurement measurement) {
+	this.converter = converter;
+	this.measurement = measurement;
+    }
+
+    @Override
+    public int sizeOf(T value) {
+	return this.converter.sizeOf(value);
+    }
+
+    @Override
+    public void write(T value, ByteBuffer target) {
+	final int position = target.position();
+	final long start = System.nanoTime();
+	this.converter.write(value, target);
+	final long converterNanos = System.nanoTime() - start;
+	this.measurement.converted(target.position() - position, converterNanos);
+    }
+
+    @Override
+    public T read(ByteBuffer source) {
+	final int position = source.position();
+	final long start = System.nanoTime();
+	final T value = this.converter.read(source);
+	final long converterNanos = System.nanoTime() - start;
+	this.measurement.converted(source.position() - position, converterNanos);
+	return value;
+    }
+
+    @FunctionalInterface
+    interface Measurement {
+
+	void converted(int encodedBytes, long converterNanos);
+
+    }
+
+}
@@ -0,0 +1,81 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.instrumentation;
+
+import java.util.Objects;
+
+/**
+ * Receives the measurements of an {@link InstrumentedPersistenceManager}.
+ * <p>
+ * Values are identified by their path: the key itself on the top level, the
+ * keys of the enclosing nested values and the key joined by {@code '/'} below,
+ * so all items of a nested value share the paths of their values. Calls may
+ * come from any thread that saves or restores.
+ *
+ * @author Simon Berndt
+ */
+public interface PersistenceMetricsListener {
+
+    /**
+     * Called for every value that was converted, after the conversion.
+     *
+     * @param operation      save or restore
+     * @param path           path of the value
+     * @param nestingLevel   0 for top-level values, +1 per enclosing nested
+     *                       value
+     * @param encodedBytes   size of the converted bytes
+     * @param converterNanos time spent in the type converter
+     */
+    void valueConverted(Operation operation, String path, int nestingLevel, int encodedBytes, long converterNanos);
+
+    /**
+     * Called once per save or restore of the manager.
+     *
+     * @param operation    save or restore
+     * @param totalNanos   time spent in the delegate's save or restore
+     * @param backendNanos part of {@code totalNanos} spent outside of the visit
+     *                     of the persistable, i.e. reading, writing and
+     *                     building the backend's storage
+     */
+    void operationCompleted(Operation operation, long totalNanos, long backendNanos);
+
+    default PersistenceMetricsListener andThen(PersistenceMetricsListener after) {
+	Objects.requireNonNull(after);
+	final PersistenceMetricsListener before = this;
+	return new PersistenceMetricsListener() {
+	    @Override
+	    public void valueConverted(Operation operation, String path, int nestingLevel, int encodedBytes, long converterNanos) {
+		before.valueConverted(operation, path, nestingLevel, encodedBytes, converterNanos);
+		after.valueConverted(operation, path, nestingLevel, encodedBytes, converterNanos);
+	    }
+
+	    @Override
+	    public void operationCompleted(Operation operation, long totalNanos, long backendNanos) {
+		before.operationCompleted(operation, totalNanos, backendNanos);
+		after.operationCompleted(operation, totalNanos, backendNanos);
+	    }
+	};
+    }
+
+}
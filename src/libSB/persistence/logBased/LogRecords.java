@@ -0,0 +1,138 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.logBased;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Record layout of the log segments: type byte, length-prefixed UTF-8 key,
+ * length-prefixed value and a CRC32 over all of these.
+ *
+ * @author Simon Berndt
+ */
+final class LogRecords {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    /**
+     * Discards everything replayed so far, starts every compacted segment.
+     */
+    static final byte RESET = 3;
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private LogRecords() {
+    }
+
+    static void write(ByteArrayOutputStream output, byte type, String key, byte[] value) {
+	final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+	final byte[] valueBytes = value != null ? value : NO_BYTES;
+	final ByteBuffer record = ByteBuffer.allocate(Byte.BYTES + 2 * Integer.BYTES + keyBytes.length + valueBytes.length);
+	record.put(type);
+	record.putInt(keyBytes.length);
+	record.put(keyBytes);
+	record.putInt(valueBytes.length);
+	record.put(valueBytes);
+	final CRC32 crc = new CRC32();
+	crc.update(record.array());
+	output.write(record.array(), 0, record.capacity());
+	output.write((int) (crc.getValue() >>> 24));
+	output.write((int) (crc.getValue() >>> 16));
+	output.write((int) (crc.getValue() >>> 8));
+	output.write((int) crc.getValue());
+    }
+
+    /**
+     * @return the size of the record, counting the key in chars
+     */
+    static long approximateSize(String key, byte[] value) {
+	return Byte.BYTES + 3 * Integer.BYTES + key.length() + (value != null ? value.length : 0);
+    }
+
+    /**
+     * Applies the records of one segment to {@code state}.
+     *
+     * @return the number of bytes of intact records, replay stops at the first
+     * truncated or damaged record
+     */
+    static long replay(DataInputStream input, long segmentSize, Map<String, byte[]> state) throws IOException {
+	long intactBytes = 0;
+	final CRC32 crc = new CRC32();
+	while (true) {
+	    final int type = input.read();
+	    if (type < 0) {
+		return intactBytes;
+	    }
+	    try {
+		final int keyLength = input.readInt();
+		if (keyLength < 0 || keyLength > segmentSize - intactBytes) {
+		    return intactBytes;
+		}
+		final byte[] keyBytes = new byte[keyLength];
+		input.readFully(keyBytes);
+		final int valueLength = input.readInt();
+		if (valueLength < 0 || valueLength > segmentSize - intactBytes - keyLength) {
+		    return intactBytes;
+		}
+		final byte[] valueBytes = new byte[valueLength];
+		input.readFully(valueBytes);
+		final int storedCrc = input.readInt();
+		crc.reset();
+		crc.update(type);
+		crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, keyLength).array());
+		crc.update(keyBytes);
+		crc.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, valueLength).array());
+		crc.update(valueBytes);
+		if ((int) crc.getValue() != storedCrc) {
+		    return intactBytes;
+		}
+		final String key = new String(keyBytes, StandardCharsets.UTF_8);
+		switch (type) {
+		    case PUT:
+			state.put(key, valueBytes);
+			break;
+		    case DELETE:
+			state.remove(key);
+			break;
+		    case RESET:
+			state.clear();
+			break;
+		    default:
+			return intactBytes;
+		}
+		intactBytes += Byte.BYTES + 3 * Integer.BYTES + keyLength + valueLength;
+	    } catch (final EOFException ex) {
+		return intactBytes;
+	    }
+	}
+    }
+
+}
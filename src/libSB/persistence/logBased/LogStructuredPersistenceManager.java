@@ -0,0 +1,360 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.logBased;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.Saveable;
+import libSB.persistence.mapBased.MapLoadVisitor;
+import libSB.persistence.mapBased.MapSaveVisitor;
+
+/**
+ * Append-only store in a directory of log segments.
+ * <p>
+ * The complete state is kept in memory in the layout of
+ * {@link libSB.persistence.mapBased.FlatKeys}. A save appends one checksummed
+ * record for every key whose bytes changed or that was removed and forces
+ * the segment to disk before returning. Keys not written by a save keep their
+ * value. On open all segments are replayed, a record torn by a crash is
+ * dropped from the end of the last segment. A failed append is truncated
+ * away again, if even that fails the segment is sealed and the next save
+ * starts a new one.
+ * <p>
+ * Once the log has grown past the compaction threshold and holds more than
+ * twice the live data, the current segment is sealed and a background thread
+ * rewrites the state into a compacted segment replacing all sealed ones.
+ *
+ * @author Simon Berndt
+ */
+public class LogStructuredPersistenceManager implements PersistenceManager, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(LogStructuredPersistenceManager.class.getName());
+
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 4L * 1024 * 1024;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{16})\\.log");
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final SegmentOpener segmentOpener;
+    private final long compactionThreshold;
+    private final ExecutorService compactor;
+    private final Object writeLock;
+
+    private volatile NavigableMap<String, byte[]> state;
+    private FileChannel activeSegment;
+    private long activeSegmentNumber;
+    private boolean activeSegmentDamaged;
+    private long logBytes;
+    private long liveBytes;
+    private boolean compacting;
+
+    public LogStructuredPersistenceManager(Path directory) throws IOException {
+	this(directory, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public LogStructuredPersistenceManager(Path directory, long compactionThreshold) throws IOException {
+	this(directory, compactionThreshold, (Path segment) -> FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    LogStructuredPersistenceManager(Path directory, long compactionThreshold, SegmentOpener segmentOpener) throws IOException {
+	this.directory = directory.toAbsolutePath();
+	this.segmentOpener = segmentOpener;
+	this.compactionThreshold = compactionThreshold;
+	this.writeLock = new Object();
+	this.compactor = Executors.newSingleThreadExecutor((Runnable runnable) -> {
+	    final Thread thread = new Thread(runnable, "log-compaction " + this.directory.getFileName());
+	    thread.setDaemon(true);
+	    return thread;
+	});
+	open();
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	peristable.accept(new MapLoadVisitor(this.state));
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	synchronized (this.writeLock) {
+	    final NavigableMap<String, byte[]> current = this.state;
+	    final NavigableMap<String, byte[]> next = new TreeMap<>(current);
+	    peristable.accept(new MapSaveVisitor(next));
+	    final ByteArrayOutputStream records = new ByteArrayOutputStream();
+	    long liveDelta = 0;
+	    for (final Map.Entry<String, byte[]> entry : next.entrySet()) {
+		final byte[] previous = current.get(entry.getKey());
+		if (previous != entry.getValue() && !Arrays.equals(previous, entry.getValue())) {
+		    LogRecords.write(records, LogRecords.PUT, entry.getKey(), entry.getValue());
+		    liveDelta += LogRecords.approximateSize(entry.getKey(), entry.getValue());
+		    if (previous != null) {
+			liveDelta -= LogRecords.approximateSize(entry.getKey(), previous);
+		    }
+		}
+	    }
+	    for (final Map.Entry<String, byte[]> entry : current.entrySet()) {
+		if (!next.containsKey(entry.getKey())) {
+		    LogRecords.write(records, LogRecords.DELETE, entry.getKey(), null);
+		    liveDelta -= LogRecords.approximateSize(entry.getKey(), entry.getValue());
+		}
+	    }
+	    if (records.size() > 0) {
+		try {
+		    append(records.toByteArray());
+		} catch (final IOException ex) {
+		    LOG.log(Level.SEVERE, null, ex);
+		    return false;
+		}
+		this.logBytes += records.size();
+		this.liveBytes += liveDelta;
+	    }
+	    this.state = Collections.unmodifiableNavigableMap(next);
+	    if (!this.compacting && this.logBytes > this.compactionThreshold && this.logBytes > 2 * this.liveBytes) {
+		startCompaction();
+	    }
+	    return true;
+	}
+    }
+
+    /**
+     * Starts a background compaction unless one is already running.
+     */
+    public void compact() {
+	synchronized (this.writeLock) {
+	    if (!this.compacting) {
+		startCompaction();
+	    }
+	}
+    }
+
+    /**
+     * Waits for a running compaction and closes the active segment.
+     */
+    @Override
+    public void close() throws IOException {
+	this.compactor.shutdown();
+	try {
+	    this.compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	} catch (final InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	}
+	synchronized (this.writeLock) {
+	    this.activeSegment.close();
+	}
+    }
+
+    private void open() throws IOException {
+	Files.createDirectories(this.directory);
+	final TreeMap<Long, Path> segments = new TreeMap<>();
+	try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+	    for (final Path entry : entries) {
+		final String name = entry.getFileName().toString();
+		final Matcher matcher = SEGMENT_NAME.matcher(name);
+		if (matcher.matches()) {
+		    segments.put(Long.parseLong(matcher.group(1)), entry);
+		} else if (name.endsWith(COMPACTING_SUFFIX)) {
+		    Files.delete(entry);
+		}
+	    }
+	}
+	final TreeMap<String, byte[]> replayed = new TreeMap<>();
+	for (final Map.Entry<Long, Path> segment : segments.entrySet()) {
+	    final long segmentSize = Files.size(segment.getValue());
+	    final long intactBytes;
+	    try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.getValue(), StandardOpenOption.READ)))) {
+		intactBytes = LogRecords.replay(input, segmentSize, replayed);
+	    }
+	    if (intactBytes < segmentSize) {
+		LOG.log(Level.WARNING, "Dropping {0} damaged bytes at the end of {1}", new Object[]{segmentSize - intactBytes, segment.getValue()});
+		if (segment.getKey().equals(segments.lastKey())) {
+		    try (FileChannel channel = FileChannel.open(segment.getValue(), StandardOpenOption.WRITE)) {
+			channel.truncate(intactBytes);
+		    }
+		}
+	    }
+	    this.logBytes += intactBytes;
+	}
+	for (final Map.Entry<String, byte[]> entry : replayed.entrySet()) {
+	    this.liveBytes += LogRecords.approximateSize(entry.getKey(), entry.getValue());
+	}
+	this.state = Collections.unmodifiableNavigableMap(replayed);
+	this.activeSegmentNumber = segments.isEmpty() ? 1 : segments.lastKey();
+	this.activeSegment = openSegment(this.activeSegmentNumber);
+    }
+
+    /**
+     * Appends {@code records} to the active segment, on failure the segment is
+     * truncated back to its previous size so no partial record stays in front
+     * of later appends.
+     */
+    private void append(byte[] records) throws IOException {
+	if (this.activeSegmentDamaged) {
+	    rollSegment();
+	}
+	final long intactSize = this.activeSegment.size();
+	try {
+	    writeFully(this.activeSegment, ByteBuffer.wrap(records));
+	    this.activeSegment.force(false);
+	} catch (final IOException ex) {
+	    try {
+		this.activeSegment.truncate(intactSize);
+		this.activeSegment.force(false);
+	    } catch (final IOException truncateEx) {
+		ex.addSuppressed(truncateEx);
+		this.activeSegmentDamaged = true;
+	    }
+	    throw ex;
+	}
+    }
+
+    /**
+     * Seals the active segment and continues in the next one.
+     */
+    private void rollSegment() throws IOException {
+	final FileChannel nextSegment = openSegment(this.activeSegmentNumber + 1);
+	try {
+	    this.activeSegment.close();
+	} catch (final IOException ex) {
+	    LOG.log(Level.WARNING, null, ex);
+	}
+	this.activeSegment = nextSegment;
+	this.activeSegmentNumber++;
+	this.activeSegmentDamaged = false;
+    }
+
+    private void startCompaction() {
+	final long sealedSegmentNumber = this.activeSegmentNumber;
+	final long sealedBytes = this.logBytes;
+	try {
+	    rollSegment();
+	} catch (final IOException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	    return;
+	}
+	final NavigableMap<String, byte[]> snapshot = this.state;
+	this.compacting = true;
+	this.compactor.execute(() -> compact(sealedSegmentNumber, sealedBytes, snapshot));
+    }
+
+    private void compact(long sealedSegmentNumber, long sealedBytes, NavigableMap<String, byte[]> snapshot) {
+	final Path sealedSegment = segmentPath(sealedSegmentNumber);
+	final Path compactedSegment = sealedSegment.resolveSibling(sealedSegment.getFileName() + COMPACTING_SUFFIX);
+	long compactedBytes = -1;
+	try {
+	    try (FileChannel channel = FileChannel.open(compactedSegment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+		final ByteArrayOutputStream records = new ByteArrayOutputStream(WRITE_CHUNK_SIZE);
+		LogRecords.write(records, LogRecords.RESET, "", null);
+		long written = 0;
+		for (final Map.Entry<String, byte[]> entry : snapshot.entrySet()) {
+		    LogRecords.write(records, LogRecords.PUT, entry.getKey(), entry.getValue());
+		    if (records.size() >= WRITE_CHUNK_SIZE) {
+			written += records.size();
+			writeFully(channel, ByteBuffer.wrap(records.toByteArray()));
+			records.reset();
+		    }
+		}
+		written += records.size();
+		writeFully(channel, ByteBuffer.wrap(records.toByteArray()));
+		channel.force(true);
+		compactedBytes = written;
+	    }
+	    Files.move(compactedSegment, sealedSegment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	    try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+		for (final Path entry : entries) {
+		    final Matcher matcher = SEGMENT_NAME.matcher(entry.getFileName().toString());
+		    if (matcher.matches() && Long.parseLong(matcher.group(1)) < sealedSegmentNumber) {
+			Files.delete(entry);
+		    }
+		}
+	    }
+	} catch (final IOException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	    compactedBytes = -1;
+	    try {
+		Files.deleteIfExists(compactedSegment);
+	    } catch (final IOException deleteEx) {
+		LOG.log(Level.WARNING, null, deleteEx);
+	    }
+	} finally {
+	    synchronized (this.writeLock) {
+		this.compacting = false;
+		if (compactedBytes >= 0) {
+		    this.logBytes += compactedBytes - sealedBytes;
+		}
+	    }
+	}
+    }
+
+    private FileChannel openSegment(long segmentNumber) throws IOException {
+	return this.segmentOpener.open(segmentPath(segmentNumber));
+    }
+
+    private Path segmentPath(long segmentNumber) {
+	return this.directory.resolve(String.format("segment-%016d.log", segmentNumber));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+    }
+
+    @FunctionalInterface
+    interface SegmentOpener {
+
+	FileChannel open(Path segment) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,117 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.mapBased;
+
+import java.util.NavigableMap;
+
+/**
+ * Maps nested keys onto a flat, sorted key space.
+ * <p>
+ * A value {@code key} below {@code prefix} lives at {@code prefix + key}. A
+ * nested value {@code key} stores its item count at {@code prefix + key + ".#"}
+ * and item {@code i} below the prefix {@code prefix + key + "." + i + "."}, so
+ * every nested level is one contiguous range of the sorted key space. Dots and
+ * backslashes within keys are escaped with a backslash.
+ *
+ * @author Simon Berndt
+ */
+public final class FlatKeys {
+
+    public static final char SEPARATOR = '.';
+    public static final char ESCAPE = '\\';
+    public static final String COUNT = "#";
+
+    private FlatKeys() {
+    }
+
+    public static String escape(String key) {
+	if (key.indexOf(SEPARATOR) < 0 && key.indexOf(ESCAPE) < 0) {
+	    return key;
+	}
+	final StringBuilder escaped = new StringBuilder(key.length() + 4);
+	for (int i = 0; i < key.length(); i++) {
+	    final char c = key.charAt(i);
+	    if (c == SEPARATOR || c == ESCAPE) {
+		escaped.append(ESCAPE);
+	    }
+	    escaped.append(c);
+	}
+	return escaped.toString();
+    }
+
+    public static String value(String prefix, String key) {
+	return prefix + escape(key);
+    }
+
+    public static String nested(String prefix, String key) {
+	return prefix + escape(key) + SEPARATOR;
+    }
+
+    public static String item(String nestedPrefix, int index) {
+	return nestedPrefix + index + SEPARATOR;
+    }
+
+    public static String count(String nestedPrefix) {
+	return nestedPrefix + COUNT;
+    }
+
+    /**
+     * @return the escaped top-level key a flat key belongs to
+     */
+    public static String topLevel(String flatKey) {
+	for (int i = 0; i < flatKey.length(); i++) {
+	    final char c = flatKey.charAt(i);
+	    if (c == ESCAPE) {
+		i++;
+	    } else if (c == SEPARATOR) {
+		return flatKey.substring(0, i);
+	    }
+	}
+	return flatKey;
+    }
+
+    /**
+     * @return the first key of the part of the key space that starts with
+     * {@code prefix}
+     */
+    public static String rangeEnd(String prefix) {
+	if (prefix.isEmpty()) {
+	    throw new IllegalArgumentException();
+	}
+	final int last = prefix.length() - 1;
+	return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+    /**
+     * @return a view of all entries of {@code map} whose key starts with
+     * {@code prefix}
+     */
+    public static <V> NavigableMap<String, V> range(NavigableMap<String, V> map, String prefix) {
+	if (prefix.isEmpty()) {
+	    return map;
+	}
+	return map.subMap(prefix, true, rangeEnd(prefix), false);
+    }
+
+}
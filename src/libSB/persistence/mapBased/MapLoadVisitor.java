@@ -0,0 +1,169 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.mapBased;
+
+import java.nio.ByteBuffer;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+
+/**
+ * Reads from a sorted map in the layout of {@link FlatKeys}. Nested items are
+ * handed out as visitors over the range view of their item.
+ *
+ * @author Simon Berndt
+ */
+public class MapLoadVisitor implements LoadVisitor {
+
+    private final NavigableMap<String, byte[]> source;
+    private final String prefix;
+
+    public MapLoadVisitor(NavigableMap<String, byte[]> source) {
+	this(source, "");
+    }
+
+    public MapLoadVisitor(NavigableMap<String, byte[]> source, String prefix) {
+	this.source = source;
+	this.prefix = prefix;
+    }
+
+    @Override
+    public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[] stored = lookup(key);
+	if (stored != null) {
+	    final T value = typeConverter.apply(stored.clone());
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    @Override
+    public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	Objects.requireNonNull(viewConverter);
+	final byte[] stored = lookup(key);
+	if (stored != null) {
+	    final T value = viewConverter.apply(ByteBuffer.wrap(stored).asReadOnlyBuffer());
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    @Override
+    public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[] stored = lookup(key);
+	if (stored != null) {
+	    field.accept(Lazy.of(() -> typeConverter.apply(stored.clone())));
+	}
+    }
+
+    @Override
+    public void restoreInt(String key, IntConsumer field) {
+	final ByteBuffer stored = lookupFixed(key, Integer.BYTES);
+	if (stored != null) {
+	    field.accept(stored.getInt(0));
+	}
+    }
+
+    @Override
+    public int restoreInt(String key, int defaultValue) {
+	final ByteBuffer stored = lookupFixed(key, Integer.BYTES);
+	return stored != null ? stored.getInt(0) : defaultValue;
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	final ByteBuffer stored = lookupFixed(key, Long.BYTES);
+	if (stored != null) {
+	    field.accept(stored.getLong(0));
+	}
+    }
+
+    @Override
+    public long restoreLong(String key, long defaultValue) {
+	final ByteBuffer stored = lookupFixed(key, Long.BYTES);
+	return stored != null ? stored.getLong(0) : defaultValue;
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	final ByteBuffer stored = lookupFixed(key, Double.BYTES);
+	if (stored != null) {
+	    field.accept(stored.getDouble(0));
+	}
+    }
+
+    @Override
+    public double restoreDouble(String key, double defaultValue) {
+	final ByteBuffer stored = lookupFixed(key, Double.BYTES);
+	return stored != null ? stored.getDouble(0) : defaultValue;
+    }
+
+    @Override
+    public Stream<LoadVisitor> restoreNested(String key) {
+	if (key == null) {
+	    return Stream.empty();
+	}
+	final String nestedPrefix = FlatKeys.nested(this.prefix, key);
+	final NavigableMap<String, byte[]> nested = FlatKeys.range(this.source, nestedPrefix);
+	final byte[] count = nested.get(FlatKeys.count(nestedPrefix));
+	if (count == null || count.length != Integer.BYTES) {
+	    return Stream.empty();
+	}
+	return IntStream.range(0, ByteBuffer.wrap(count).getInt()).mapToObj((int index) -> {
+	    final String itemPrefix = FlatKeys.item(nestedPrefix, index);
+	    return new MapLoadVisitor(FlatKeys.range(nested, itemPrefix), itemPrefix);
+	});
+    }
+
+    private byte[] lookup(String key) {
+	if (key == null) {
+	    return null;
+	}
+	return this.source.get(FlatKeys.value(this.prefix, key));
+    }
+
+    private ByteBuffer lookupFixed(String key, int length) {
+	final byte[] stored = lookup(key);
+	if (stored == null) {
+	    return null;
+	}
+	if (stored.length != length) {
+	    throw new IllegalArgumentException();
+	}
+	return ByteBuffer.wrap(stored);
+    }
+
+}
@@ -0,0 +1,102 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.mapBased;
+
+import java.nio.ByteBuffer;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import libSB.persistence.SaveVisitor;
+
+/**
+ * Writes into a sorted map in the layout of {@link FlatKeys}. Saving a nested
+ * value replaces its whole range, so items left over from a longer list are
+ * removed.
+ *
+ * @author Simon Berndt
+ */
+public class MapSaveVisitor implements SaveVisitor {
+
+    private final NavigableMap<String, byte[]> target;
+    private final String prefix;
+
+    public MapSaveVisitor(NavigableMap<String, byte[]> target) {
+	this(target, "");
+    }
+
+    public MapSaveVisitor(NavigableMap<String, byte[]> target, String prefix) {
+	this.target = target;
+	this.prefix = prefix;
+    }
+
+    @Override
+    public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[] bytes = typeConverter.apply(value.get());
+	if (bytes != null) {
+	    this.target.put(FlatKeys.value(this.prefix, requireKey(key)), bytes);
+	} else {
+	    this.target.remove(FlatKeys.value(this.prefix, requireKey(key)));
+	}
+    }
+
+    @Override
+    public void persistInt(String key, int value) {
+	this.target.put(FlatKeys.value(this.prefix, requireKey(key)), ByteBuffer.allocate(Integer.BYTES).putInt(0, value).array());
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	this.target.put(FlatKeys.value(this.prefix, requireKey(key)), ByteBuffer.allocate(Long.BYTES).putLong(0, value).array());
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	this.target.put(FlatKeys.value(this.prefix, requireKey(key)), ByteBuffer.allocate(Double.BYTES).putDouble(0, value).array());
+    }
+
+    @Override
+    public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	Objects.requireNonNull(values);
+	final String nestedPrefix = FlatKeys.nested(this.prefix, requireKey(key));
+	FlatKeys.range(this.target, nestedPrefix).clear();
+	final int[] count = new int[1];
+	values.forEachOrdered((Consumer<? super SaveVisitor> consumer) -> {
+	    final SaveVisitor subVisitor = new MapSaveVisitor(this.target, FlatKeys.item(nestedPrefix, count[0]++));
+	    consumer.accept(subVisitor);
+	});
+	this.target.put(FlatKeys.count(nestedPrefix), ByteBuffer.allocate(Integer.BYTES).putInt(0, count[0]).array());
+    }
+
+    private static String requireKey(String key) {
+	if (key == null) {
+	    throw new IllegalArgumentException();
+	}
+	return key;
+    }
+
+}
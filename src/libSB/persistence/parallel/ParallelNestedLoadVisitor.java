@@ -0,0 +1,143 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.parallel;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.KeySchema;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SlotValues;
+
+/**
+ * Reads from the delegate under a lock shared by all visitors of one restore,
+ * and converts outside of it. Only used on a thread of the manager's pool,
+ * so the parallel streams of large nested values fan out on that pool.
+ * <p>
+ * Views and buffered converters are only valid during the delegate's call and
+ * run under the lock, as do lazy handles when they are first read.
+ *
+ * @author Simon Berndt
+ */
+class ParallelNestedLoadVisitor implements LoadVisitor {
+
+    private final LoadVisitor visitor;
+    private final Object lock;
+    private final int threshold;
+
+    ParallelNestedLoadVisitor(LoadVisitor visitor, Object lock, int threshold) {
+	this.visitor = visitor;
+	this.lock = lock;
+	this.threshold = threshold;
+    }
+
+    @Override
+    public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final byte[][] bytes = new byte[1][];
+	synchronized (this.lock) {
+	    this.visitor.restoreSingle(key, (byte[] value) -> bytes[0] = value, Function.<byte[]>identity());
+	}
+	if (bytes[0] != null) {
+	    final T value = typeConverter.apply(bytes[0]);
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    @Override
+    public void restoreInt(String key, IntConsumer field) {
+	synchronized (this.lock) {
+	    this.visitor.restoreInt(key, field);
+	}
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	synchronized (this.lock) {
+	    this.visitor.restoreLong(key, field);
+	}
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	synchronized (this.lock) {
+	    this.visitor.restoreDouble(key, field);
+	}
+    }
+
+    @Override
+    public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	synchronized (this.lock) {
+	    this.visitor.restoreView(key, field, viewConverter);
+	}
+    }
+
+    @Override
+    public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	synchronized (this.lock) {
+	    this.visitor.restoreLazy(key, (Lazy<T> lazy) -> field.accept(Lazy.of(() -> {
+		synchronized (this.lock) {
+		    return lazy.get();
+		}
+	    })), typeConverter);
+	}
+    }
+
+    @Override
+    public <T> void restoreBuffered(String key, Consumer<? super T> field, BufferConverter<T> converter) {
+	synchronized (this.lock) {
+	    this.visitor.restoreBuffered(key, field, converter);
+	}
+    }
+
+    @Override
+    public <K extends Enum<K>> SlotValues<K> restoreSlots(KeySchema<K> schema) {
+	synchronized (this.lock) {
+	    return this.visitor.restoreSlots(schema);
+	}
+    }
+
+    @Override
+    public Stream<LoadVisitor> restoreNested(String key) {
+	final List<LoadVisitor> items;
+	synchronized (this.lock) {
+	    items = this.visitor.restoreNested(key)
+		    .map((LoadVisitor itemVisitor) -> new ParallelNestedLoadVisitor(itemVisitor, this.lock, this.threshold))
+		    .collect(Collectors.toList());
+	}
+	return items.size() < this.threshold ? items.stream() : items.parallelStream();
+    }
+
+}
@@ -0,0 +1,101 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.parallel;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+
+/**
+ * Processes the items of large nested values in parallel.
+ * <p>
+ * On save, the items of a nested value with at least {@code threshold} items
+ * are converted concurrently on the pool, each into its own
+ * {@link libSB.persistence.SaveSnapshot}, and handed to the delegate in their
+ * original order afterwards. The items have to be independent of each other.
+ * <p>
+ * Restores are passed on unchanged unless parallel restores were enabled.
+ * Then the restore runs on the pool and {@code restoreNested} returns a
+ * parallel stream for nested values of at least {@code threshold} items, so
+ * its terminal operation fans out on the pool as well. Accesses to the
+ * delegate are serialized, the conversions of the values run concurrently.
+ * Callers enabling this have to consume the streams with an
+ * order-preserving, thread-safe terminal operation such as {@code collect}
+ * or {@code forEachOrdered}.
+ *
+ * @author Simon Berndt
+ */
+public class ParallelNestedPersistenceManager implements PersistenceManager {
+
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    private final PersistenceManager delegate;
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final boolean parallelRestore;
+
+    public ParallelNestedPersistenceManager(PersistenceManager delegate) {
+	this(delegate, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    public ParallelNestedPersistenceManager(PersistenceManager delegate, ForkJoinPool pool, int threshold) {
+	this(delegate, pool, threshold, false);
+    }
+
+    public ParallelNestedPersistenceManager(PersistenceManager delegate, ForkJoinPool pool, int threshold, boolean parallelRestore) {
+	if (threshold < 1) {
+	    throw new IllegalArgumentException("threshold must be positive");
+	}
+	this.delegate = Objects.requireNonNull(delegate);
+	this.pool = Objects.requireNonNull(pool);
+	this.threshold = threshold;
+	this.parallelRestore = parallelRestore;
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	if (!this.parallelRestore) {
+	    this.delegate.restore(peristable);
+	    return;
+	}
+	final Object lock = new Object();
+	// parallel streams run their terminal operation on the pool of the calling worker
+	this.pool.submit(() -> this.delegate.restore((LoadVisitor visitor) -> peristable.accept(new ParallelNestedLoadVisitor(visitor, lock, this.threshold)))).join();
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	return this.delegate.trySave((SaveVisitor visitor) -> peristable.accept(new ParallelNestedSaveVisitor(visitor, this.pool, this.threshold)));
+    }
+
+}
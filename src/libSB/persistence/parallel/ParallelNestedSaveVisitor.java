@@ -0,0 +1,100 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.parallel;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import libSB.byteTools.BufferConverter;
+import libSB.persistence.SaveSnapshot;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.SlotValues;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+class ParallelNestedSaveVisitor implements SaveVisitor {
+
+    private final SaveVisitor visitor;
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    ParallelNestedSaveVisitor(SaveVisitor visitor, ForkJoinPool pool, int threshold) {
+	this.visitor = visitor;
+	this.pool = pool;
+	this.threshold = threshold;
+    }
+
+    @Override
+    public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	this.visitor.persistSingle(key, value, typeConverter);
+    }
+
+    @Override
+    public void persistInt(String key, int value) {
+	this.visitor.persistInt(key, value);
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	this.visitor.persistLong(key, value);
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	this.visitor.persistDouble(key, value);
+    }
+
+    @Override
+    public <T> void persistBuffered(String key, T value, BufferConverter<T> converter) {
+	this.visitor.persistBuffered(key, value, converter);
+    }
+
+    @Override
+    public <K extends Enum<K>> void persistSlots(SlotValues<K> values) {
+	this.visitor.persistSlots(values);
+    }
+
+    @Override
+    public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	Objects.requireNonNull(values);
+	final List<? extends Consumer<? super SaveVisitor>> items = values.collect(Collectors.toList());
+	if (items.size() < this.threshold) {
+	    this.visitor.persistNested(key, items.stream().map((Consumer<? super SaveVisitor> item) -> (Consumer<SaveVisitor>) (SaveVisitor itemVisitor)
+		    -> item.accept(new ParallelNestedSaveVisitor(itemVisitor, this.pool, this.threshold))));
+	} else {
+	    final List<SaveSnapshot> snapshots = this.pool.submit(() -> items.parallelStream()
+		    .map((Consumer<? super SaveVisitor> item) -> SaveSnapshot.of(item::accept))
+		    .collect(Collectors.toList())).join();
+	    this.visitor.persistNested(key, snapshots.stream().map((SaveSnapshot snapshot) -> (Consumer<SaveVisitor>) snapshot::accept));
+	}
+    }
+
+}
@@ -24,40 +24,64 @@
 package libSB.persistence.preferenceBased;
 
 import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 import libSB.persistence.LoadVisitor;
 import libSB.persistence.Loadable;
 import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveSnapshot;
 import libSB.persistence.SaveVisitor;
 import libSB.persistence.Saveable;
 
 /**
+ * Persists to the user preferences. In batched mode a save is recorded as a
+ * {@link SaveSnapshot} first and then applied to the preferences in one go,
+ * followed by a single {@link Preferences#flush()}. Batched saves through the
+ * same manager do not interleave, but other writers to the node are not held
+ * off, as the lock of the node itself is not accessible. Batched saves also
+ * remove the item nodes of nested lists that shrank, see
+ * {@link PreferenceSaveVisitor}.
  *
  * @author Simon Berndt
  */
 public class PreferenceBasedPersistanceManager implements PersistenceManager {
 
+    private static final Logger LOG = Logger.getLogger(PreferenceBasedPersistanceManager.class.getName());
+
     private static final char NODE_SEPERATOR = '/';
     
     private final Preferences preferences;
 
     private final SaveVisitor saveVisitor;
     private final LoadVisitor loadVisitor;
+    private final boolean batched;
 
     public PreferenceBasedPersistanceManager(String applicationName) {
+	this(applicationName, false);
+    }
+
+    public PreferenceBasedPersistanceManager(String applicationName, boolean batched) {
         Objects.requireNonNull(applicationName);
 	final Preferences appLocal = Preferences.userRoot();
 	this.preferences = appLocal.node(applicationName);
-	this.saveVisitor = new PreferenceSaveVisitor(this.preferences);
+	this.batched = batched;
+	this.saveVisitor = new PreferenceSaveVisitor(this.preferences, batched);
 	this.loadVisitor = new PreferenceLoadVisitor(this.preferences);
     }
 
     public PreferenceBasedPersistanceManager(String applicationName, String subModule) {
+	this(applicationName, subModule, false);
+    }
+
+    public PreferenceBasedPersistanceManager(String applicationName, String subModule, boolean batched) {
         Objects.requireNonNull(applicationName);
         Objects.requireNonNull(subModule);
 	final Preferences appLocal = Preferences.userRoot();
 	this.preferences = appLocal.node(applicationName + NODE_SEPERATOR + subModule);
-	this.saveVisitor = new PreferenceSaveVisitor(this.preferences);
+	this.batched = batched;
+	this.saveVisitor = new PreferenceSaveVisitor(this.preferences, batched);
 	this.loadVisitor = new PreferenceLoadVisitor(this.preferences);
     }
 
@@ -68,7 +92,27 @@ public class PreferenceBasedPersistanceManager implements PersistenceManager {
 
     @Override
     public void save(Saveable peristable) {
-	peristable.accept(this.saveVisitor);
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	if (!this.batched) {
+	    peristable.accept(this.saveVisitor);
+	    return true;
+	}
+	// run all suppliers and converters before the first change is staged
+	final SaveSnapshot snapshot = SaveSnapshot.of(peristable);
+	synchronized (this.preferences) {
+	    snapshot.accept(this.saveVisitor);
+	    try {
+		this.preferences.flush();
+		return true;
+	    } catch (final BackingStoreException ex) {
+		LOG.log(Level.SEVERE, null, ex);
+		return false;
+	    }
+	}
     }
 
 }
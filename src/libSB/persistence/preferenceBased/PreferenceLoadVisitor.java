@@ -23,10 +23,15 @@
  */
 package libSB.persistence.preferenceBased;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Objects;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.BackingStoreException;
@@ -59,6 +64,44 @@ class PreferenceLoadVisitor implements LoadVisitor {
 	}
     }
 
+    @Override
+    public void restoreInt(String key, IntConsumer field) {
+	final ByteBuffer stored = restoreFixed(key, Integer.BYTES);
+	if (stored != null) {
+	    field.accept(stored.getInt(0));
+	}
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	final ByteBuffer stored = restoreFixed(key, Long.BYTES);
+	if (stored != null) {
+	    field.accept(stored.getLong(0));
+	}
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	final ByteBuffer stored = restoreFixed(key, Double.BYTES);
+	if (stored != null) {
+	    field.accept(stored.getDouble(0));
+	}
+    }
+
+    private ByteBuffer restoreFixed(String key, int length) {
+	if (key == null) {
+	    return null;
+	}
+	final byte[] stored = this.preferences.getByteArray(key, null);
+	if (stored == null) {
+	    return null;
+	}
+	if (stored.length != length) {
+	    throw new IllegalArgumentException();
+	}
+	return ByteBuffer.wrap(stored);
+    }
+
     @Override
     public Stream<LoadVisitor> restoreNested(String key) throws RuntimeException {
 	try {
@@ -67,9 +110,8 @@ class PreferenceLoadVisitor implements LoadVisitor {
 	    }
 	    if (this.preferences.nodeExists(key)) {
 		final Preferences multiSubNode = this.preferences.node(key);
-		return Arrays.stream(multiSubNode.childrenNames()).filter((String singleSubNodeName) -> {
-		    return singleSubNodeName.startsWith(key + '_');
-		}).map(multiSubNode::node).map(PreferenceLoadVisitor::new);
+		final String[] itemNames = itemNames(multiSubNode.childrenNames(), key + '_');
+		return Arrays.stream(itemNames).map(multiSubNode::node).map(PreferenceLoadVisitor::new);
 	    }
 	} catch (BackingStoreException ex) {
 	    LOG.log(Level.WARNING, null, ex);
@@ -77,4 +119,28 @@ class PreferenceLoadVisitor implements LoadVisitor {
 	return Stream.empty();
     }
 
+    /**
+     * The names of the item nodes, {@code prefix} followed by the index,
+     * ordered by index. Item nodes are only opened once the stream reaches
+     * them.
+     */
+    private static String[] itemNames(String[] childrenNames, String prefix) {
+	return Arrays.stream(childrenNames)
+		.filter((String name) -> itemIndex(name, prefix) >= 0)
+		.sorted(Comparator.comparingInt((String name) -> itemIndex(name, prefix)))
+		.toArray(String[]::new);
+    }
+
+    static int itemIndex(String name, String prefix) {
+	if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 9) {
+	    return -1;
+	}
+	for (int i = prefix.length(); i < name.length(); i++) {
+	    if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+		return -1;
+	    }
+	}
+	return Integer.parseInt(name.substring(prefix.length()));
+    }
+
 }
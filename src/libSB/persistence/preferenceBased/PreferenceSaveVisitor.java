@@ -23,25 +23,55 @@
  */
 package libSB.persistence.preferenceBased;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
 import java.util.stream.Stream;
 import libSB.persistence.SaveVisitor;
 
 /**
+ * Writes straight to the preferences node. In batched mode unchanged values
+ * are not written again, and every nested list removes the item nodes beyond
+ * its new count. The item nodes are owned by their list, so keys and child
+ * nodes an item no longer writes are removed as well. A nested key that is a
+ * path keeps the first node of that path.
  *
  * @author Simon Berndt
  */
 class PreferenceSaveVisitor implements SaveVisitor {
 
+    private static final Logger LOG = Logger.getLogger(PreferenceSaveVisitor.class.getName());
+
     private final Preferences preferences;
+    private final boolean batched;
+    /**
+     * The keys and child nodes written to a batched item node, {@code null}
+     * for the root node, whose other keys are left alone.
+     */
+    private final Set<String> written;
 
     PreferenceSaveVisitor(Preferences preferences) {
+	this(preferences, false);
+    }
+
+    PreferenceSaveVisitor(Preferences preferences, boolean batched) {
+	this(preferences, batched, null);
+    }
+
+    private PreferenceSaveVisitor(Preferences preferences, boolean batched, Set<String> written) {
 	this.preferences = preferences;
+	this.batched = batched;
+	this.written = written;
     }
 
     @Override
@@ -50,13 +80,34 @@ class PreferenceSaveVisitor implements SaveVisitor {
 	if (key != null) {
 	    final byte[] bytes = typeConverter.apply(value.get());
 	    if (bytes != null) {
-		    this.preferences.putByteArray(key, bytes);
+		put(key, bytes);
 	    } else {
-		    this.preferences.remove(key);
+		this.preferences.remove(key);
 	    }
 	}
     }
 
+    @Override
+    public void persistInt(String key, int value) {
+	if (key != null) {
+	    put(key, ByteBuffer.allocate(Integer.BYTES).putInt(0, value).array());
+	}
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	if (key != null) {
+	    put(key, ByteBuffer.allocate(Long.BYTES).putLong(0, value).array());
+	}
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	if (key != null) {
+	    put(key, ByteBuffer.allocate(Double.BYTES).putDouble(0, value).array());
+	}
+    }
+
     @Override
     public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
         Objects.requireNonNull(values);
@@ -68,9 +119,63 @@ class PreferenceSaveVisitor implements SaveVisitor {
 	values.forEach((Consumer<? super SaveVisitor> consumer) -> {
 	    final String singleSubNodeName = String.format("%s_%d", key, childs.getAndIncrement());
 	    final Preferences individualSubNode = multiSubNode.node(singleSubNodeName);
-	    final SaveVisitor subVisitor = new PreferenceSaveVisitor(individualSubNode);
-	    consumer.accept(subVisitor);
+	    if (this.batched) {
+		final PreferenceSaveVisitor subVisitor = new PreferenceSaveVisitor(individualSubNode, true, new HashSet<>());
+		consumer.accept(subVisitor);
+		subVisitor.removeUnwritten();
+	    } else {
+		consumer.accept(new PreferenceSaveVisitor(individualSubNode));
+	    }
 	});
+	if (this.batched) {
+	    if (this.written != null) {
+		// childrenNames() only lists the first node of a path
+		final int separator = key.indexOf('/');
+		this.written.add(separator < 0 ? key : key.substring(0, separator));
+	    }
+	    removeItemsFrom(multiSubNode, key + '_', childs.get());
+	}
+    }
+
+    private void put(String key, byte[] bytes) {
+	if (this.written != null) {
+	    this.written.add(key);
+	}
+	if (this.batched) {
+	    if (Arrays.equals(this.preferences.getByteArray(key, null), bytes)) {
+		return;
+	    }
+	}
+	this.preferences.putByteArray(key, bytes);
+    }
+
+    private void removeUnwritten() {
+	try {
+	    for (final String key : this.preferences.keys()) {
+		if (!this.written.contains(key)) {
+		    this.preferences.remove(key);
+		}
+	    }
+	    for (final String child : this.preferences.childrenNames()) {
+		if (!this.written.contains(child)) {
+		    this.preferences.node(child).removeNode();
+		}
+	    }
+	} catch (final BackingStoreException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	}
+    }
+
+    private static void removeItemsFrom(Preferences multiSubNode, String prefix, int count) {
+	try {
+	    for (final String child : multiSubNode.childrenNames()) {
+		if (PreferenceLoadVisitor.itemIndex(child, prefix) >= count) {
+		    multiSubNode.node(child).removeNode();
+		}
+	    }
+	} catch (final BackingStoreException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	}
     }
 
 }
@@ -23,32 +23,57 @@
  */
 package libSB.persistence.propertiesBased;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
 import java.util.Properties;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import libSB.persistence.Lazy;
 import libSB.persistence.LoadVisitor;
+import libSB.persistence.mapBased.FlatKeys;
 
 /**
+ * Restores from Base64 encoded properties. Views handed out by
+ * {@link #restoreView(String, Consumer, Function)} are decoded into a buffer
+ * shared by a visitor and its nested visitors, unless codecs are applied. A
+ * view is only valid until the next view is restored on the same thread.
  *
  * @author Simon Berndt
  */
 class PropertiesBase64_LoadVisitor implements LoadVisitor {
 
     private final Properties properties;
-    private final Function<byte[], byte[]> decoder;
+    private final Function<byte[], byte[]> codecDecoder;
+    private final String prefix;
+    private final DecodeBuffer decodeBuffer;
 
-    PropertiesBase64_LoadVisitor(Properties properties, Function<byte[], byte[]> decoder) {
+    /**
+     * @param codecDecoder applied after the Base64 decoding, {@code null} if
+     * the values are not encoded any further
+     */
+    PropertiesBase64_LoadVisitor(Properties properties, Function<byte[], byte[]> codecDecoder) {
+	this(properties, codecDecoder, "", new DecodeBuffer());
+    }
+
+    private PropertiesBase64_LoadVisitor(Properties properties, Function<byte[], byte[]> codecDecoder, String prefix, DecodeBuffer decodeBuffer) {
 	this.properties = properties;
-	this.decoder = decoder;
+	this.codecDecoder = codecDecoder;
+	this.prefix = prefix;
+	this.decodeBuffer = decodeBuffer;
     }
 
     @Override
     public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
-	final String property = this.properties.getProperty(key);
-	if (property != null) {
-	    final byte[] decodedBytes = this.decoder.apply(property.getBytes(StandardCharsets.UTF_8));
+	final byte[] decodedBytes = restoreBytes(key);
+	if (decodedBytes != null) {
 	    final T value = typeConverter.apply(decodedBytes);
 	    if (value != null) {
 		field.accept(value);
@@ -56,8 +81,167 @@ class PropertiesBase64_LoadVisitor implements LoadVisitor {
 	}
     }
 
+    @Override
+    public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	final ByteBuffer view;
+	if (this.codecDecoder != null) {
+	    final byte[] decodedBytes = restoreBytes(key);
+	    view = decodedBytes != null ? ByteBuffer.wrap(decodedBytes).asReadOnlyBuffer() : null;
+	} else {
+	    final String property = this.properties.getProperty(propertyName(key));
+	    view = property != null ? this.decodeBuffer.decode(property) : null;
+	}
+	if (view != null) {
+	    final T value = viewConverter.apply(view);
+	    if (value != null) {
+		field.accept(value);
+	    }
+	}
+    }
+
+    /**
+     * The Base64 and codec decoding is deferred along with the conversion.
+     */
+    @Override
+    public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	Objects.requireNonNull(typeConverter);
+	final String property = this.properties.getProperty(propertyName(key));
+	if (property != null) {
+	    field.accept(Lazy.of(() -> typeConverter.apply(decode(property))));
+	}
+    }
+
+    @Override
+    public void restoreInt(String key, IntConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Integer.BYTES);
+	if (data != null) {
+	    field.accept(data.getInt(0));
+	}
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Long.BYTES);
+	if (data != null) {
+	    field.accept(data.getLong(0));
+	}
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Double.BYTES);
+	if (data != null) {
+	    field.accept(data.getDouble(0));
+	}
+    }
+
+    /**
+     * Item values are looked up by their full flat key, so restoring a nested
+     * value never scans the other properties.
+     */
     @Override
     public Stream<LoadVisitor> restoreNested(String key) {
-	throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+	final String nestedPrefix = FlatKeys.nested(this.prefix, key);
+	final byte[] count = decodeProperty(FlatKeys.count(nestedPrefix));
+	if (count == null || count.length != Integer.BYTES) {
+	    return Stream.empty();
+	}
+	return IntStream.range(0, ByteBuffer.wrap(count).getInt()).mapToObj((int index)
+		-> new PropertiesBase64_LoadVisitor(this.properties, this.codecDecoder, FlatKeys.item(nestedPrefix, index), this.decodeBuffer));
     }
+
+    private byte[] restoreBytes(String key) {
+	return decodeProperty(propertyName(key));
+    }
+
+    private String propertyName(String key) {
+	final String name = FlatKeys.value(this.prefix, key);
+	// files written before nesting was supported hold top-level keys unescaped
+	if (this.prefix.isEmpty() && !name.equals(key) && !this.properties.containsKey(name)) {
+	    return key;
+	}
+	return name;
+    }
+
+    private byte[] decodeProperty(String name) {
+	final String property = this.properties.getProperty(name);
+	return property != null ? decode(property) : null;
+    }
+
+    private byte[] decode(String property) {
+	final byte[] decodedBytes = Base64.getDecoder().decode(property.getBytes(StandardCharsets.UTF_8));
+	return this.codecDecoder != null ? this.codecDecoder.apply(decodedBytes) : decodedBytes;
+    }
+
+    private ByteBuffer restoreFixed(String key, int length) {
+	final byte[] decodedBytes = restoreBytes(key);
+	if (decodedBytes == null) {
+	    return null;
+	}
+	if (decodedBytes.length != length) {
+	    throw new IllegalArgumentException();
+	}
+	return ByteBuffer.wrap(decodedBytes);
+    }
+
+    /**
+     * Reused target of the Base64 decoding, grown to the largest value seen.
+     * The characters are decoded straight from the property. Only the thread
+     * that restores reuses the buffer, other threads, such as those of a
+     * parallel nested stream, decode into a buffer of their own.
+     */
+    private static final class DecodeBuffer {
+
+	private static final int[] VALUES = new int[128];
+
+	static {
+	    Arrays.fill(VALUES, -1);
+	    final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+	    for (int i = 0; i < alphabet.length(); i++) {
+		VALUES[alphabet.charAt(i)] = i;
+	    }
+	}
+
+	private final Thread owner = Thread.currentThread();
+	private byte[] buffer = new byte[0];
+
+	ByteBuffer decode(String property) {
+	    int end = property.length();
+	    while (end > 0 && property.length() - end < 2 && property.charAt(end - 1) == '=') {
+		end--;
+	    }
+	    if (end % 4 == 1 || (end < property.length() && (property.length() % 4 != 0 || end % 4 == 0))) {
+		throw new IllegalArgumentException("Invalid Base64 length " + property.length());
+	    }
+	    final int length = end / 4 * 3 + Math.max(end % 4 - 1, 0);
+	    final byte[] target;
+	    if (Thread.currentThread() != this.owner) {
+		target = new byte[length];
+	    } else {
+		if (this.buffer.length < length) {
+		    this.buffer = new byte[Math.max(length, 2 * this.buffer.length)];
+		}
+		target = this.buffer;
+	    }
+	    int bits = 0;
+	    int bitCount = 0;
+	    int position = 0;
+	    for (int i = 0; i < end; i++) {
+		final char c = property.charAt(i);
+		final int value = c < VALUES.length ? VALUES[c] : -1;
+		if (value < 0) {
+		    throw new IllegalArgumentException("Illegal Base64 character " + (int) c);
+		}
+		bits = (bits << 6) | value;
+		bitCount += 6;
+		if (bitCount >= 8) {
+		    bitCount -= 8;
+		    target[position++] = (byte) (bits >> bitCount);
+		}
+	    }
+	    return ByteBuffer.wrap(target, 0, length).slice().asReadOnlyBuffer();
+	}
+
+    }
+
 }
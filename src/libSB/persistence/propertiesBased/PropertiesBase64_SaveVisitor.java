@@ -23,13 +23,16 @@
  */
 package libSB.persistence.propertiesBased;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 import libSB.persistence.SaveVisitor;
+import libSB.persistence.mapBased.FlatKeys;
 
 /**
  *
@@ -39,22 +42,61 @@ class PropertiesBase64_SaveVisitor implements SaveVisitor {
 
     private final Map<Object, Object> properties;
     private final Function<byte[], byte[]> encoder;
+    private final String prefix;
 
     PropertiesBase64_SaveVisitor(Map<Object, Object> properties, Function<byte[], byte[]> encoder) {
+	this(properties, encoder, "");
+    }
+
+    private PropertiesBase64_SaveVisitor(Map<Object, Object> properties, Function<byte[], byte[]> encoder, String prefix) {
 	this.properties = properties;
 	this.encoder = encoder;
+	this.prefix = prefix;
     }
 
     @Override
     public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
 	final byte[] bytes = typeConverter.apply(value.get());
-	final byte[] encodedBytes = this.encoder.apply(bytes);
-	final String property = new String(encodedBytes, StandardCharsets.UTF_8);
-        this.properties.put(key, property);
+	persistBytes(key, bytes);
+    }
+
+    @Override
+    public void persistInt(String key, int value) {
+	persistBytes(key, ByteBuffer.allocate(Integer.BYTES).putInt(0, value).array());
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	persistBytes(key, ByteBuffer.allocate(Long.BYTES).putLong(0, value).array());
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	persistBytes(key, ByteBuffer.allocate(Double.BYTES).putDouble(0, value).array());
     }
 
     @Override
     public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
-	throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+	Objects.requireNonNull(values);
+	final String nestedPrefix = FlatKeys.nested(this.prefix, key);
+	final String countKey = FlatKeys.count(nestedPrefix);
+	if (this.properties.containsKey(countKey)) {
+	    this.properties.keySet().removeIf((Object name) -> ((String) name).startsWith(nestedPrefix));
+	}
+	final int[] count = new int[1];
+	values.forEachOrdered((Consumer<? super SaveVisitor> consumer) -> {
+	    consumer.accept(new PropertiesBase64_SaveVisitor(this.properties, this.encoder, FlatKeys.item(nestedPrefix, count[0]++)));
+	});
+	putProperty(countKey, ByteBuffer.allocate(Integer.BYTES).putInt(0, count[0]).array());
+    }
+
+    private void persistBytes(String key, byte[] bytes) {
+	putProperty(FlatKeys.value(this.prefix, key), bytes);
+    }
+
+    private void putProperty(String name, byte[] bytes) {
+	final byte[] encodedBytes = this.encoder.apply(bytes);
+	final String property = new String(encodedBytes, StandardCharsets.UTF_8);
+	this.properties.put(name, property);
     }
 }
@@ -33,8 +33,10 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.Base64;
 import java.util.Properties;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import libSB.byteTools.codec.CodecChain;
 import libSB.persistence.LoadVisitor;
 import libSB.persistence.Loadable;
 import libSB.persistence.PersistenceManager;
@@ -52,6 +54,8 @@ public class PropertiesPersistenceManager implements PersistenceManager {
     public static final Path DEFAULT_CONFIG_PATH = Paths.get("persitedValues.xml");
 
     private final Path configFileLocation;
+    private final Function<byte[], byte[]> encoder;
+    private final Function<byte[], byte[]> codecDecoder;
 
     public PropertiesPersistenceManager() {
 	this(DEFAULT_CONFIG_PATH);
@@ -59,6 +63,17 @@ public class PropertiesPersistenceManager implements PersistenceManager {
 
     public PropertiesPersistenceManager(Path configFileLocation) {
 	this.configFileLocation = configFileLocation;
+	this.encoder = Base64.getEncoder()::encode;
+	this.codecDecoder = null;
+    }
+
+    /**
+     * Encodes every value with {@code codecs} before the Base64 encoding.
+     */
+    public PropertiesPersistenceManager(Path configFileLocation, CodecChain codecs) {
+	this.configFileLocation = configFileLocation;
+	this.encoder = ((Function<byte[], byte[]>) codecs::encode).andThen(Base64.getEncoder()::encode);
+	this.codecDecoder = codecs::decode;
     }
 
     @Override
@@ -67,7 +82,7 @@ public class PropertiesPersistenceManager implements PersistenceManager {
 	if (Files.exists(this.configFileLocation)) {
 	    try (InputStream inputStream = Files.newInputStream(this.configFileLocation, StandardOpenOption.READ)) {
 		properties.loadFromXML(inputStream);
-		final LoadVisitor loadVisitor = new PropertiesBase64_LoadVisitor(properties, Base64.getDecoder()::decode);
+		final LoadVisitor loadVisitor = new PropertiesBase64_LoadVisitor(properties, this.codecDecoder);
 		peristable.accept(loadVisitor);
 	    } catch (final IOException ex) {
 		LOG.log(Level.SEVERE, null, ex);
@@ -77,8 +92,13 @@ public class PropertiesPersistenceManager implements PersistenceManager {
 
     @Override
     public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
 	final Properties properties = new Properties();
-	final SaveVisitor saveVisitor = new PropertiesBase64_SaveVisitor(properties, Base64.getEncoder()::encode);
+	final SaveVisitor saveVisitor = new PropertiesBase64_SaveVisitor(properties, this.encoder);
 	peristable.accept(saveVisitor);
 	try {
 	    Files.createDirectories(this.configFileLocation.getParent());
@@ -86,10 +106,13 @@ public class PropertiesPersistenceManager implements PersistenceManager {
 		properties.storeToXML(outputStream, null, StandardCharsets.UTF_8.name());
 	    } catch (final IOException e) {
 		LOG.log(Level.SEVERE, null, e);
+		return false;
 	    }
 	} catch (final IOException ex) {
 	    LOG.log(Level.SEVERE, null, ex);
+	    return false;
 	}
+	return true;
     }
 
 }
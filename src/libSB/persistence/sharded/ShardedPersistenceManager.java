@@ -0,0 +1,292 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.sharded;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import libSB.persistence.Lazy;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.Saveable;
+import libSB.persistence.mapBased.FlatKeys;
+import libSB.persistence.mapBased.MapLoadVisitor;
+import libSB.persistence.mapBased.MapSaveVisitor;
+
+/**
+ * Spreads the top-level keys over a fixed number of Properties XML files by a
+ * stable hash of the key. Nested values stay in the shard of their top-level
+ * key, in the layout of {@link FlatKeys}.
+ * <p>
+ * All shards are loaded in parallel when the manager is created, restores are
+ * served from memory. Like the single file Properties backend, every save
+ * replaces the whole state, but only the shards whose content changed are
+ * written, each to a temporary file moved over the old one. A shard that
+ * could not be written keeps its previous content, also in memory, so
+ * restores always match the files. Shards written with a different shard
+ * count are redistributed on creation, the old files are only deleted once
+ * all shards were written.
+ *
+ * @author Simon Berndt
+ */
+public class ShardedPersistenceManager implements PersistenceManager {
+
+    private static final Logger LOG = Logger.getLogger(ShardedPersistenceManager.class.getName());
+
+    private static final Pattern SHARD_NAME = Pattern.compile("shard-(\\d+)-of-(\\d+)\\.xml");
+
+    private final Path directory;
+    private final int shardCount;
+    private volatile List<NavigableMap<String, byte[]>> shards;
+
+    public ShardedPersistenceManager(Path directory, int shardCount) throws IOException {
+	if (shardCount < 1) {
+	    throw new IllegalArgumentException("shardCount must be positive");
+	}
+	this.directory = directory.toAbsolutePath();
+	this.shardCount = shardCount;
+	Files.createDirectories(this.directory);
+	open();
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	peristable.accept(new ShardedLoadVisitor(this.shards));
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public synchronized boolean trySave(Saveable peristable) {
+	final NavigableMap<String, byte[]> saved = new TreeMap<>();
+	peristable.accept(new MapSaveVisitor(saved));
+	final List<NavigableMap<String, byte[]>> updated = partition(saved);
+	final List<NavigableMap<String, byte[]>> current = this.shards;
+	final boolean[] failed = new boolean[this.shardCount];
+	IntStream.range(0, this.shardCount).parallel()
+		.filter((int shard) -> !sameContent(current.get(shard), updated.get(shard)))
+		.forEach((int shard) -> failed[shard] = !writeShard(shard, updated.get(shard)));
+	final List<NavigableMap<String, byte[]>> published = new ArrayList<>(updated);
+	boolean written = true;
+	for (int shard = 0; shard < this.shardCount; shard++) {
+	    if (failed[shard]) {
+		published.set(shard, current.get(shard));
+		written = false;
+	    }
+	}
+	this.shards = Collections.unmodifiableList(published);
+	return written;
+    }
+
+    private void open() throws IOException {
+	final List<Path> files = new ArrayList<>();
+	try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory)) {
+	    for (final Path file : stream) {
+		if (SHARD_NAME.matcher(file.getFileName().toString()).matches()) {
+		    files.add(file);
+		}
+	    }
+	}
+	final List<Path> foreign = files.stream().filter((Path file) -> !isCurrentLayout(file)).collect(Collectors.toList());
+	// files of the current layout win over leftovers of an interrupted redistribution
+	files.sort((Path a, Path b) -> Boolean.compare(isCurrentLayout(a), isCurrentLayout(b)));
+	final List<Map<String, byte[]>> loaded = files.parallelStream().map(this::readShard).collect(Collectors.toList());
+	final NavigableMap<String, byte[]> all = new TreeMap<>();
+	loaded.forEach(all::putAll);
+	this.shards = partition(all);
+	if (!foreign.isEmpty()) {
+	    final long failed = IntStream.range(0, this.shardCount).parallel()
+		    .filter((int shard) -> !writeShard(shard, this.shards.get(shard)))
+		    .count();
+	    if (failed > 0) {
+		LOG.log(Level.WARNING, "Keeping the shards of the previous layout, {0} shards could not be redistributed", failed);
+		return;
+	    }
+	    for (final Path file : foreign) {
+		Files.deleteIfExists(file);
+	    }
+	}
+    }
+
+    private List<NavigableMap<String, byte[]>> partition(NavigableMap<String, byte[]> entries) {
+	final List<NavigableMap<String, byte[]>> partitioned = new ArrayList<>(this.shardCount);
+	for (int i = 0; i < this.shardCount; i++) {
+	    partitioned.add(new TreeMap<>());
+	}
+	entries.forEach((String flatKey, byte[] value) -> partitioned.get(shardOf(FlatKeys.topLevel(flatKey))).put(flatKey, value));
+	for (int i = 0; i < this.shardCount; i++) {
+	    partitioned.set(i, Collections.unmodifiableNavigableMap(partitioned.get(i)));
+	}
+	return Collections.unmodifiableList(partitioned);
+    }
+
+    private int shardOf(String escapedKey) {
+	return Math.floorMod(escapedKey.hashCode(), this.shardCount);
+    }
+
+    private boolean isCurrentLayout(Path file) {
+	final Matcher matcher = SHARD_NAME.matcher(file.getFileName().toString());
+	return matcher.matches()
+		&& Integer.parseInt(matcher.group(2)) == this.shardCount
+		&& Integer.parseInt(matcher.group(1)) < this.shardCount;
+    }
+
+    private Path shardPath(int shard) {
+	return this.directory.resolve(String.format("shard-%d-of-%d.xml", shard, this.shardCount));
+    }
+
+    private Map<String, byte[]> readShard(Path file) {
+	final Properties properties = new Properties();
+	try (InputStream inputStream = Files.newInputStream(file)) {
+	    properties.loadFromXML(inputStream);
+	} catch (final IOException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	}
+	final Map<String, byte[]> entries = new TreeMap<>();
+	for (final String name : properties.stringPropertyNames()) {
+	    entries.put(name, Base64.getDecoder().decode(properties.getProperty(name)));
+	}
+	return entries;
+    }
+
+    /**
+     * @return whether the shard file was replaced
+     */
+    private boolean writeShard(int shard, NavigableMap<String, byte[]> entries) {
+	final Properties properties = new Properties();
+	entries.forEach((String flatKey, byte[] value) -> properties.setProperty(flatKey, Base64.getEncoder().encodeToString(value)));
+	final Path shardFile = shardPath(shard);
+	try {
+	    final Path tempFile = Files.createTempFile(this.directory, shardFile.getFileName().toString(), ".tmp");
+	    try {
+		try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+		    properties.storeToXML(outputStream, null, StandardCharsets.UTF_8.name());
+		}
+		Files.move(tempFile, shardFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	    } finally {
+		Files.deleteIfExists(tempFile);
+	    }
+	    return true;
+	} catch (final IOException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	    return false;
+	}
+    }
+
+    private static boolean sameContent(NavigableMap<String, byte[]> a, NavigableMap<String, byte[]> b) {
+	if (a.size() != b.size()) {
+	    return false;
+	}
+	for (final Map.Entry<String, byte[]> entry : a.entrySet()) {
+	    if (!Arrays.equals(entry.getValue(), b.get(entry.getKey()))) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Hands every top-level key to the visitor of its shard.
+     */
+    private final class ShardedLoadVisitor implements LoadVisitor {
+
+	private final LoadVisitor[] shardVisitors;
+
+	ShardedLoadVisitor(List<NavigableMap<String, byte[]>> shards) {
+	    this.shardVisitors = shards.stream().map(MapLoadVisitor::new).toArray(LoadVisitor[]::new);
+	}
+
+	@Override
+	public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	    shard(key).restoreSingle(key, field, typeConverter);
+	}
+
+	@Override
+	public <T> void restoreView(String key, Consumer<? super T> field, Function<ByteBuffer, T> viewConverter) {
+	    shard(key).restoreView(key, field, viewConverter);
+	}
+
+	@Override
+	public <T> void restoreLazy(String key, Consumer<? super Lazy<T>> field, Function<byte[], T> typeConverter) {
+	    shard(key).restoreLazy(key, field, typeConverter);
+	}
+
+	@Override
+	public void restoreInt(String key, IntConsumer field) {
+	    shard(key).restoreInt(key, field);
+	}
+
+	@Override
+	public void restoreLong(String key, LongConsumer field) {
+	    shard(key).restoreLong(key, field);
+	}
+
+	@Override
+	public void restoreDouble(String key, DoubleConsumer field) {
+	    shard(key).restoreDouble(key, field);
+	}
+
+	@Override
+	public Stream<LoadVisitor> restoreNested(String key) {
+	    return shard(key).restoreNested(key);
+	}
+
+	private LoadVisitor shard(String key) {
+	    return key != null ? this.shardVisitors[shardOf(FlatKeys.escape(key))] : this.shardVisitors[0];
+	}
+
+    }
+
+}
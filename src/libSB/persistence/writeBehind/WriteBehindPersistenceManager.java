@@ -0,0 +1,209 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.writeBehind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveSnapshot;
+import libSB.persistence.Saveable;
+
+/**
+ * Takes the I/O of saves off the calling thread.
+ * <p>
+ * A save only records a {@link SaveSnapshot} on the caller's thread. The
+ * saves arriving within the coalescing window are handed to the delegate in a
+ * single save on a background thread. Most backends rewrite their whole
+ * storage on save, so by default only the last of these saves is passed on.
+ * For delegates that merge saves into their existing storage the snapshots are
+ * merged instead, the later value of a key winning, see
+ * {@link #WriteBehindPersistenceManager(PersistenceManager, long, TimeUnit, boolean)}.
+ * Restores flush the pending saves first, so they always see the latest state.
+ * <p>
+ * When the delegate reports a failed write through
+ * {@link PersistenceManager#trySave(Saveable)}, the saves stay pending ahead
+ * of any newer ones and are written again by the next flush or background
+ * write. {@link #flush()} and {@link #trySave(Saveable)} wait for the write
+ * and report whether it succeeded.
+ *
+ * @author Simon Berndt
+ */
+public class WriteBehindPersistenceManager implements PersistenceManager, AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(WriteBehindPersistenceManager.class.getName());
+
+    public static final long DEFAULT_WINDOW_MILLIS = 500;
+
+    private final PersistenceManager delegate;
+    private final long windowNanos;
+    private final boolean mergingDelegate;
+    private final ScheduledThreadPoolExecutor writer;
+    private final Object lock;
+
+    private List<SaveSnapshot> pending;
+    private boolean scheduled;
+
+    public WriteBehindPersistenceManager(PersistenceManager delegate) {
+	this(delegate, DEFAULT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public WriteBehindPersistenceManager(PersistenceManager delegate, long window, TimeUnit unit) {
+	this(delegate, window, unit, false);
+    }
+
+    /**
+     * @param mergingDelegate whether the delegate keeps values that are not
+     *                        part of a save, so coalesced saves are merged
+     *                        instead of only the last one being written
+     */
+    public WriteBehindPersistenceManager(PersistenceManager delegate, long window, TimeUnit unit, boolean mergingDelegate) {
+	this.delegate = Objects.requireNonNull(delegate);
+	this.windowNanos = unit.toNanos(window);
+	this.mergingDelegate = mergingDelegate;
+	this.writer = new ScheduledThreadPoolExecutor(1, (Runnable runnable) -> {
+	    final Thread thread = new Thread(runnable, "write-behind persistence");
+	    thread.setDaemon(true);
+	    return thread;
+	});
+	// close() writes what is left itself instead of waiting out the window
+	this.writer.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	this.lock = new Object();
+	this.pending = new ArrayList<>();
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	flush();
+	this.delegate.restore(peristable);
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	final SaveSnapshot snapshot = SaveSnapshot.of(peristable);
+	synchronized (this.lock) {
+	    if (this.writer.isShutdown()) {
+		throw new IllegalStateException("closed");
+	    }
+	    this.pending.add(snapshot);
+	    if (!this.scheduled) {
+		this.writer.schedule(this::writePending, this.windowNanos, TimeUnit.NANOSECONDS);
+		this.scheduled = true;
+	    }
+	}
+    }
+
+    /**
+     * Saves and waits for the write, see {@link #flush()}.
+     */
+    @Override
+    public boolean trySave(Saveable peristable) {
+	save(peristable);
+	return flush();
+    }
+
+    /**
+     * Blocks until every save issued before this call has been written by the
+     * delegate.
+     *
+     * @return whether the delegate wrote them, otherwise they stay pending
+     */
+    public boolean flush() {
+	try {
+	    return this.writer.submit(this::writePending).get();
+	} catch (final RejectedExecutionException ex) {
+	    return writePending();
+	} catch (final InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    return false;
+	} catch (final ExecutionException ex) {
+	    LOG.log(Level.SEVERE, null, ex.getCause());
+	    return false;
+	}
+    }
+
+    /**
+     * Flushes the pending saves and stops the background thread. Saves the
+     * delegate failed to write are logged and dropped.
+     */
+    @Override
+    public void close() {
+	flush();
+	synchronized (this.lock) {
+	    this.writer.shutdown();
+	}
+	try {
+	    this.writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	} catch (final InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	}
+	if (!writePending()) {
+	    final int lost;
+	    synchronized (this.lock) {
+		lost = this.pending.size();
+		this.pending = new ArrayList<>();
+	    }
+	    LOG.log(Level.SEVERE, "{0} saves could not be written before closing", lost);
+	}
+    }
+
+    /**
+     * @return whether all pending saves were written, failed saves are put
+     * back ahead of those that arrived meanwhile
+     */
+    private boolean writePending() {
+	final List<SaveSnapshot> snapshots;
+	synchronized (this.lock) {
+	    snapshots = this.pending;
+	    this.pending = new ArrayList<>();
+	    this.scheduled = false;
+	}
+	if (snapshots.isEmpty()) {
+	    return true;
+	}
+	final SaveSnapshot coalesced = this.mergingDelegate ? SaveSnapshot.merge(snapshots) : snapshots.get(snapshots.size() - 1);
+	boolean saved;
+	try {
+	    saved = this.delegate.trySave(coalesced);
+	} catch (final RuntimeException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	    saved = false;
+	}
+	if (!saved) {
+	    synchronized (this.lock) {
+		snapshots.addAll(this.pending);
+		this.pending = snapshots;
+	    }
+	}
+	return saved;
+    }
+
+}
@@ -0,0 +1,68 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.w3c.dom.Node;
+
+/**
+ * Name to element lookup for the children of a single node. The index is
+ * built on first use and kept up to date by {@link #append(Node)}, changes to
+ * the node made elsewhere are not picked up.
+ *
+ * @author Simon Berndt
+ */
+final class ChildIndex {
+
+    private final Node parent;
+    private Map<String, Node> children;
+
+    ChildIndex(Node parent) {
+	this.parent = parent;
+    }
+
+    Node get(String name) {
+	return index().get(name);
+    }
+
+    Node append(Node child) {
+	this.parent.appendChild(child);
+	index().putIfAbsent(child.getNodeName(), child);
+	return child;
+    }
+
+    private Map<String, Node> index() {
+	if (this.children == null) {
+	    this.children = new HashMap<>();
+	    for (Node child = this.parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+		if (child.getNodeType() == Node.ELEMENT_NODE) {
+		    this.children.putIfAbsent(child.getNodeName(), child);
+		}
+	    }
+	}
+	return this.children;
+    }
+
+}
@@ -45,6 +45,10 @@ import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 /**
+ * Reads and writes XML documents. {@link Transformer} and
+ * {@link DocumentBuilder} are not thread-safe, so every thread gets its own.
+ * Loaded documents are built in full while parsing, so their nodes can be read
+ * from several threads, as parallel nested restores do.
  *
  * @author Simon Berndt
  */
@@ -52,24 +56,46 @@ public class DocumentIO {
 
     private static final Logger LOG = Logger.getLogger(DocumentIO.class.getName());
 
-    private final Transformer xmlOutputTransformer;
-    private final DocumentBuilder documentBuilder;
+    private static final String DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    private final ThreadLocal<Transformer> xmlOutputTransformer = ThreadLocal.withInitial(DocumentIO::newTransformer);
+    private final ThreadLocal<DocumentBuilder> documentBuilder = ThreadLocal.withInitial(DocumentIO::newDocumentBuilder);
 
     public DocumentIO() {
+        // fail on a broken XML setup right away, not on first use
+        this.xmlOutputTransformer.get();
+        this.documentBuilder.get();
+    }
+
+    private static Transformer newTransformer() {
         try {
-            this.xmlOutputTransformer = TransformerFactory.newInstance().newTransformer();
-            this.xmlOutputTransformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-            this.xmlOutputTransformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            final Transformer transformer = TransformerFactory.newInstance().newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            return transformer;
+        } catch (final TransformerConfigurationException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
 
-            this.documentBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-        } catch (ParserConfigurationException | TransformerConfigurationException ex) {
+    private static DocumentBuilder newDocumentBuilder() {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try {
+            factory.setFeature(DEFER_NODE_EXPANSION, false);
+        } catch (final ParserConfigurationException ex) {
+            // only the Xerces parsers build nodes lazily
+            LOG.log(Level.FINE, null, ex);
+        }
+        try {
+            return factory.newDocumentBuilder();
+        } catch (final ParserConfigurationException ex) {
             throw new RuntimeException(ex);
         }
     }
 
     public Document loadDocumentFromXML(Path sourcePath) throws IOException {
         try (InputStream inputStream = Files.newInputStream(sourcePath, StandardOpenOption.READ)) {
-            return this.documentBuilder.parse(inputStream);
+            return this.documentBuilder.get().parse(inputStream);
         } catch (final SAXException ex) {
             throw new IOException(ex);
         }
@@ -79,7 +105,7 @@ public class DocumentIO {
         try {
             Files.createDirectories(destinationPath.getParent());
             try (Writer fileWriter = Files.newBufferedWriter(destinationPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
-                this.xmlOutputTransformer.transform(new DOMSource(xmlDoc), new StreamResult(fileWriter));
+                this.xmlOutputTransformer.get().transform(new DOMSource(xmlDoc), new StreamResult(fileWriter));
             }
         } catch (TransformerException | IOException ex) {
             LOG.log(Level.SEVERE, null, ex);
@@ -0,0 +1,139 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import org.w3c.dom.Document;
+
+/**
+ * XML file backend that streams every save straight to disk instead of
+ * building a {@link Document} first. Each save replaces the whole file.
+ * <p>
+ * Restores pull the file forward with a {@link XMLStreamLoadVisitor}, which
+ * skips everything that is not asked for and decodes only the restored
+ * values.
+ *
+ * @author Simon Berndt
+ */
+public class StreamingXMLPersistenceManager implements PersistenceManager {
+
+    private static final Logger LOG = Logger.getLogger(StreamingXMLPersistenceManager.class.getName());
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final Path configFileLocation;
+    private final String rootElementIdentifier;
+    private final XMLOutputFactory outputFactory;
+    private final XMLInputFactory inputFactory;
+
+    public StreamingXMLPersistenceManager(Path configFileLocation) {
+	this(configFileLocation, DOMPersistenceManager.DEFAULT_ROOT_ELEMENT_IDENTIFIER);
+    }
+
+    public StreamingXMLPersistenceManager(Path configFileLocation, String rootElementIdentifier) {
+	this.configFileLocation = configFileLocation.toAbsolutePath();
+	this.rootElementIdentifier = rootElementIdentifier;
+	this.outputFactory = XMLOutputFactory.newInstance();
+	this.inputFactory = XMLInputFactory.newInstance();
+	this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+	this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Override
+    public void restore(Loadable peristable) {
+	if (Files.exists(this.configFileLocation)) {
+	    try (XMLStreamLoadSession session = new XMLStreamLoadSession(this.configFileLocation, this.inputFactory)) {
+		final LoadVisitor loadVisitor = session.openRoot();
+		if (loadVisitor != null) {
+		    peristable.accept(loadVisitor);
+		}
+	    } catch (final IOException | XMLStreamException ex) {
+		LOG.log(Level.SEVERE, null, ex);
+	    } catch (final UncheckedXMLStreamException ex) {
+		LOG.log(Level.SEVERE, null, ex.getCause());
+	    }
+	}
+    }
+
+    @Override
+    public void save(Saveable peristable) {
+	trySave(peristable);
+    }
+
+    @Override
+    public boolean trySave(Saveable peristable) {
+	try {
+	    Files.createDirectories(this.configFileLocation.getParent());
+	    final Path tempFile = Files.createTempFile(this.configFileLocation.getParent(), this.configFileLocation.getFileName().toString(), ".tmp");
+	    try {
+		try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tempFile, StandardOpenOption.WRITE), WRITE_BUFFER_SIZE)) {
+		    writeDocument(peristable, outputStream);
+		}
+		Files.move(tempFile, this.configFileLocation, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	    } finally {
+		Files.deleteIfExists(tempFile);
+	    }
+	    return true;
+	} catch (final IOException | XMLStreamException ex) {
+	    LOG.log(Level.SEVERE, null, ex);
+	} catch (final UncheckedXMLStreamException ex) {
+	    LOG.log(Level.SEVERE, null, ex.getCause());
+	}
+	return false;
+    }
+
+    private void writeDocument(Saveable peristable, OutputStream outputStream) throws XMLStreamException {
+	final XMLStreamWriter writer = this.outputFactory.createXMLStreamWriter(outputStream, StandardCharsets.UTF_8.name());
+	try {
+	    writer.writeStartDocument(StandardCharsets.UTF_8.name(), "1.0");
+	    writer.writeStartElement(this.rootElementIdentifier);
+	    final SaveVisitor saveVisitor = new XMLStreamSaveVisitor(writer);
+	    peristable.accept(saveVisitor);
+	    writer.writeEndElement();
+	    writer.writeEndDocument();
+	    writer.flush();
+	} finally {
+	    writer.close();
+	}
+    }
+
+}
@@ -23,11 +23,19 @@
  */
 package libSB.persistence.xmlBased;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
 import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import libSB.persistence.LoadVisitor;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -39,51 +47,181 @@ import org.w3c.dom.NodeList;
 public class XMLLoadVisitor implements LoadVisitor {
 
     private final Node root;
+    private final ChildIndex children;
 
     public XMLLoadVisitor(Node root) {
 	this.root = root;
+	this.children = new ChildIndex(root);
     }
 
     @Override
     public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
-	byte[] data = null;
-	final NodeList childNodes = this.root.getChildNodes();
-	for (int i = 0; i < childNodes.getLength(); i++) {
-	    final Node childNode = childNodes.item(i);
-	    if (childNode.getNodeName().equals(key)) {
-		final String nodeValue = childNode.getNodeValue();
-		if (nodeValue != null) {
-		    data = Base64.getDecoder().decode(nodeValue.getBytes(StandardCharsets.UTF_8));
-		    break;
-		}
-	    }
-	}
+	final byte[] data = restoreBytes(key);
 	if (data != null) {
 	    field.accept(typeConverter.apply(data));
 	}
     }
 
     @Override
-    public Stream<LoadVisitor> restoreNested(String key) {
-	final NodeList childNodes = this.root.getChildNodes();
-	Node nestedNode = null;
-	for (int i = 0; i < childNodes.getLength(); i++) {
-	    if (childNodes.item(i).getNodeName().equals(key)) {
-		nestedNode = childNodes.item(i);
-		break;
-	    }
+    public void restoreInt(String key, IntConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Integer.BYTES);
+	if (data != null) {
+	    field.accept(data.getInt(0));
+	}
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Long.BYTES);
+	if (data != null) {
+	    field.accept(data.getLong(0));
+	}
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Double.BYTES);
+	if (data != null) {
+	    field.accept(data.getDouble(0));
+	}
+    }
+
+    private byte[] restoreBytes(String key) {
+	final Node childNode = this.children.get(key);
+	if (childNode != null) {
+	    return Base64.getDecoder().decode(childNode.getTextContent().getBytes(StandardCharsets.UTF_8));
+	}
+	return null;
+    }
+
+    private ByteBuffer restoreFixed(String key, int length) {
+	final byte[] data = restoreBytes(key);
+	if (data == null) {
+	    return null;
+	}
+	if (data.length != length) {
+	    throw new IllegalArgumentException();
 	}
+	return ByteBuffer.wrap(data);
+    }
+
+    @Override
+    public Stream<LoadVisitor> restoreNested(String key) {
+	final Node nestedNode = this.children.get(key);
 	if (nestedNode != null) {
 	    final NodeList subChildNodes = nestedNode.getChildNodes();
-	    final Stream.Builder<Node> builder = Stream.builder();
-	    for (int i = 0; i < subChildNodes.getLength(); i++) {
-		builder.add(subChildNodes.item(i));
-	    }
-	    return builder.build().filter((Node node) -> {
-		return node.getNodeName().equals(key + "Item");
-	    }).map(XMLLoadVisitor::new);
+	    return StreamSupport.stream(new ItemSpliterator(subChildNodes, key + "Item", 0, subChildNodes.getLength()), false);
 	}
 	return Stream.empty();
     }
 
+    /**
+     * Walks the child nodes of a nested element and opens the item elements
+     * among them as they are consumed. The child nodes may also contain
+     * whitespace from indentation, so the size is only an estimate.
+     * <p>
+     * The node list is not safe for use by several threads, so the first
+     * split copies the remaining item nodes into an array on the splitting
+     * thread. From then on all parts only read that array. A DOM may also
+     * build its nodes lazily on first access, as the deferred DOM of Xerces
+     * does, so the subtrees of the items are walked once on the splitting
+     * thread as well.
+     */
+    private static final class ItemSpliterator implements Spliterator<LoadVisitor> {
+
+	private static final int MIN_SPLIT_SIZE = 64;
+
+	private final NodeList nodes;
+	private final String itemName;
+	private Node[] items;
+	private int index;
+	private int fence;
+
+	ItemSpliterator(NodeList nodes, String itemName, int index, int fence) {
+	    this.nodes = nodes;
+	    this.itemName = itemName;
+	    this.index = index;
+	    this.fence = fence;
+	}
+
+	private ItemSpliterator(Node[] items, int index, int fence) {
+	    this.nodes = null;
+	    this.itemName = null;
+	    this.items = items;
+	    this.index = index;
+	    this.fence = fence;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super LoadVisitor> action) {
+	    if (this.items != null) {
+		if (this.index < this.fence) {
+		    action.accept(new XMLLoadVisitor(this.items[this.index++]));
+		    return true;
+		}
+		return false;
+	    }
+	    while (this.index < this.fence) {
+		final Node node = this.nodes.item(this.index++);
+		if (this.itemName.equals(node.getNodeName())) {
+		    action.accept(new XMLLoadVisitor(node));
+		    return true;
+		}
+	    }
+	    return false;
+	}
+
+	@Override
+	public Spliterator<LoadVisitor> trySplit() {
+	    if (this.fence - this.index < 2 * MIN_SPLIT_SIZE) {
+		return null;
+	    }
+	    if (this.items == null) {
+		snapshotItems();
+	    }
+	    final int middle = (this.index + this.fence) >>> 1;
+	    if (middle - this.index < MIN_SPLIT_SIZE) {
+		return null;
+	    }
+	    final Spliterator<LoadVisitor> prefix = new ItemSpliterator(this.items, this.index, middle);
+	    this.index = middle;
+	    return prefix;
+	}
+
+	private void snapshotItems() {
+	    final List<Node> remaining = new ArrayList<>(this.fence - this.index);
+	    for (int i = this.index; i < this.fence; i++) {
+		final Node node = this.nodes.item(i);
+		if (this.itemName.equals(node.getNodeName())) {
+		    expand(node);
+		    remaining.add(node);
+		}
+	    }
+	    this.items = remaining.toArray(new Node[remaining.size()]);
+	    this.index = 0;
+	    this.fence = this.items.length;
+	}
+
+	private static void expand(Node node) {
+	    node.getNodeValue();
+	    if (node.hasAttributes()) {
+		node.getAttributes().getLength();
+	    }
+	    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+		expand(child);
+	    }
+	}
+
+	@Override
+	public long estimateSize() {
+	    return this.fence - this.index;
+	}
+
+	@Override
+	public int characteristics() {
+	    return Spliterator.ORDERED | Spliterator.NONNULL;
+	}
+
+    }
+
 }
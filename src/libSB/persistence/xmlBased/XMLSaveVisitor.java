@@ -23,6 +23,7 @@
  */
 package libSB.persistence.xmlBased;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.function.Consumer;
@@ -31,7 +32,6 @@ import java.util.function.Supplier;
 import java.util.stream.Stream;
 import libSB.persistence.SaveVisitor;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  *
@@ -41,10 +41,12 @@ public class XMLSaveVisitor implements SaveVisitor {
 
     private final Node root;
     private final Function<String, Node> nodeFactory;
+    private final ChildIndex children;
 
     public XMLSaveVisitor(Node root, Function<String, Node> nodeFactory) {
 	this.root = root;
 	this.nodeFactory = nodeFactory;
+	this.children = new ChildIndex(root);
     }
 
     @Override
@@ -52,19 +54,26 @@ public class XMLSaveVisitor implements SaveVisitor {
 	insertElement(key, typeConverter.apply(value.get()));
     }
 
+    @Override
+    public void persistInt(String key, int value) {
+	insertElement(key, ByteBuffer.allocate(Integer.BYTES).putInt(0, value).array());
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	insertElement(key, ByteBuffer.allocate(Long.BYTES).putLong(0, value).array());
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	insertElement(key, ByteBuffer.allocate(Double.BYTES).putDouble(0, value).array());
+    }
+
     @Override
     public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
-	final NodeList childNodes = this.root.getChildNodes();
-	Node nestedNode = null;
-	for (int i = 0; i < childNodes.getLength(); i++) {
-	    if (childNodes.item(i).getNodeName().equals(key)) {
-		nestedNode = childNodes.item(i);
-		break;
-	    }
-	}
+	Node nestedNode = this.children.get(key);
 	if (nestedNode == null) {
-	    nestedNode = this.nodeFactory.apply(key);
-		this.root.appendChild(nestedNode);
+	    nestedNode = this.children.append(this.nodeFactory.apply(key));
 	}
 	while (nestedNode.hasChildNodes()) {
 	    nestedNode.removeChild(nestedNode.getFirstChild());
@@ -74,27 +83,17 @@ public class XMLSaveVisitor implements SaveVisitor {
 	    final Node nestedSubNode = this.nodeFactory.apply(key + "Item");
 	    final SaveVisitor subVisitor = new XMLSaveVisitor(nestedSubNode, this.nodeFactory);
 	    consumer.accept(subVisitor);
-	    if (finalNestedNode.hasChildNodes()) {
-		finalNestedNode.appendChild(nestedSubNode);
-	    }
+	    finalNestedNode.appendChild(nestedSubNode);
 	});
     }
 
     private void insertElement(String identifier, byte[] value) {
-	final NodeList childNodes = this.root.getChildNodes();
-	Node nestedNode = null;
-	for (int i = 0; i < childNodes.getLength(); i++) {
-	    if (childNodes.item(i).getNodeName().equals(identifier)) {
-		nestedNode = childNodes.item(i);
-		break;
-	    }
-	}
+	Node nestedNode = this.children.get(identifier);
 	if (nestedNode == null && value != null) {
-	    nestedNode = this.nodeFactory.apply(identifier);
-		this.root.appendChild(nestedNode);
+	    nestedNode = this.children.append(this.nodeFactory.apply(identifier));
 	}
 	if (nestedNode != null) {
-	    nestedNode.setNodeValue(new String(Base64.getEncoder().encode(value), StandardCharsets.UTF_8));
+	    nestedNode.setTextContent(new String(Base64.getEncoder().encode(value), StandardCharsets.UTF_8));
 	}
     }
 
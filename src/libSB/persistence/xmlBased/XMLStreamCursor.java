@@ -0,0 +1,124 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Forward-only position in an XML file shared by the
+ * {@link XMLStreamLoadVisitor}s of one restore. Every opened element gets a
+ * serial number, so a visitor can tell whether the cursor is still inside the
+ * element it was created for.
+ *
+ * @author Simon Berndt
+ */
+final class XMLStreamCursor implements AutoCloseable {
+
+    private final InputStream inputStream;
+    private final XMLStreamReader reader;
+    private long[] openElements;
+    private int depth;
+    private long lastSerial;
+    private boolean replay;
+
+    XMLStreamCursor(InputStream inputStream, XMLStreamReader reader) {
+	this.inputStream = inputStream;
+	this.reader = reader;
+	this.openElements = new long[16];
+    }
+
+    XMLStreamReader reader() {
+	return this.reader;
+    }
+
+    int depth() {
+	return this.depth;
+    }
+
+    long currentSerial() {
+	return this.openElements[this.depth - 1];
+    }
+
+    boolean isInside(int level, long serial) {
+	return this.depth > level && this.openElements[level] == serial;
+    }
+
+    int next() throws XMLStreamException {
+	if (this.replay) {
+	    this.replay = false;
+	    push();
+	    return XMLStreamConstants.START_ELEMENT;
+	}
+	if (!this.reader.hasNext()) {
+	    this.depth = 0;
+	    return XMLStreamConstants.END_DOCUMENT;
+	}
+	final int event = this.reader.next();
+	if (event == XMLStreamConstants.START_ELEMENT) {
+	    push();
+	} else if (event == XMLStreamConstants.END_ELEMENT) {
+	    this.depth--;
+	} else if (event == XMLStreamConstants.END_DOCUMENT) {
+	    this.depth = 0;
+	}
+	return event;
+    }
+
+    /**
+     * Hands the start element just read out once more on the next call of
+     * {@link #next()}.
+     */
+    void unread() {
+	this.depth--;
+	this.replay = true;
+    }
+
+    void skipTo(int targetDepth) throws XMLStreamException {
+	while (this.depth > targetDepth) {
+	    next();
+	}
+    }
+
+    @Override
+    public void close() throws XMLStreamException, IOException {
+	try {
+	    this.reader.close();
+	} finally {
+	    this.inputStream.close();
+	}
+    }
+
+    private void push() {
+	if (this.depth == this.openElements.length) {
+	    this.openElements = Arrays.copyOf(this.openElements, 2 * this.depth);
+	}
+	this.openElements[this.depth++] = ++this.lastSerial;
+    }
+
+}
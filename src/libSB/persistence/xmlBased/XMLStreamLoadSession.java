@@ -0,0 +1,131 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import libSB.persistence.LoadVisitor;
+
+/**
+ * Owns the cursors opened during one restore. Besides the main cursor,
+ * further cursors are only opened when a visitor goes back to a nested
+ * element the main cursor skipped without buffering it.
+ *
+ * @author Simon Berndt
+ */
+final class XMLStreamLoadSession implements AutoCloseable {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Path sourcePath;
+    private final XMLInputFactory inputFactory;
+    private final List<XMLStreamCursor> cursors;
+
+    XMLStreamLoadSession(Path sourcePath, XMLInputFactory inputFactory) {
+	this.sourcePath = sourcePath;
+	this.inputFactory = inputFactory;
+	this.cursors = new ArrayList<>();
+    }
+
+    /**
+     * @return the visitor for the document element or {@code null} for an
+     * empty document
+     */
+    XMLStreamLoadVisitor openRoot() {
+	try {
+	    final XMLStreamCursor cursor = openCursor();
+	    int event;
+	    do {
+		event = cursor.next();
+	    } while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_DOCUMENT);
+	    if (event == XMLStreamConstants.END_DOCUMENT) {
+		return null;
+	    }
+	    return new XMLStreamLoadVisitor(this, cursor, 0, cursor.currentSerial(), Collections.emptyList());
+	} catch (final XMLStreamException ex) {
+	    throw new UncheckedXMLStreamException(ex);
+	}
+    }
+
+    /**
+     * Walks a fresh cursor along {@code path} from the document element.
+     *
+     * @return the visitor of the nested item at the end of the path or
+     * {@code null} if the path does not exist
+     */
+    XMLStreamLoadVisitor openAt(List<XMLStreamLoadVisitor.Step> path) {
+	XMLStreamLoadVisitor visitor = openRoot();
+	for (final XMLStreamLoadVisitor.Step step : path) {
+	    if (visitor == null) {
+		return null;
+	    }
+	    final Optional<LoadVisitor> item = visitor.restoreNested(step.key).skip(step.index).findFirst();
+	    visitor = (XMLStreamLoadVisitor) item.orElse(null);
+	}
+	return visitor;
+    }
+
+    @Override
+    public void close() throws IOException, XMLStreamException {
+	for (final XMLStreamCursor cursor : this.cursors) {
+	    cursor.close();
+	}
+	this.cursors.clear();
+    }
+
+    private XMLStreamCursor openCursor() throws XMLStreamException {
+	final InputStream inputStream;
+	try {
+	    inputStream = new BufferedInputStream(Files.newInputStream(this.sourcePath, StandardOpenOption.READ), READ_BUFFER_SIZE);
+	} catch (final IOException ex) {
+	    throw new XMLStreamException(ex);
+	}
+	try {
+	    final XMLStreamReader reader = this.inputFactory.createXMLStreamReader(inputStream);
+	    final XMLStreamCursor cursor = new XMLStreamCursor(inputStream, reader);
+	    this.cursors.add(cursor);
+	    return cursor;
+	} catch (final XMLStreamException ex) {
+	    try {
+		inputStream.close();
+	    } catch (final IOException closeEx) {
+		ex.addSuppressed(closeEx);
+	    }
+	    throw ex;
+	}
+    }
+
+}
@@ -0,0 +1,466 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import libSB.persistence.LoadVisitor;
+
+/**
+ * Restores from the layout of {@link XMLSaveVisitor} by pulling events from
+ * an {@link XMLStreamCursor} instead of a parsed document.
+ * <p>
+ * Each request reads forward until the key is found. Values passed on the way
+ * are kept as undecoded text, nested elements passed on the way are skipped
+ * without being buffered. Restoring keys in the order they were saved reads
+ * the file exactly once.
+ * <p>
+ * Before the cursor leaves the element of a visitor or item stream that may
+ * still be used, the rest of that element is read into memory, so items
+ * collected from a nested stream are served from there. Only going back to a
+ * nested element that was skipped opens another cursor.
+ *
+ * @author Simon Berndt
+ */
+class XMLStreamLoadVisitor implements LoadVisitor {
+
+    private final XMLStreamLoadSession session;
+    private final XMLStreamCursor cursor;
+    private final int level;
+    private final long serial;
+    private final List<Step> path;
+
+    private final Map<String, String> passedValues;
+    private final Set<String> passedNested;
+    private final Map<String, List<LoadVisitor>> bufferedNested;
+    private boolean exhausted;
+    private XMLStreamLoadVisitor reopened;
+    private ItemSpliterator activeItems;
+
+    XMLStreamLoadVisitor(XMLStreamLoadSession session, XMLStreamCursor cursor, int level, long serial, List<Step> path) {
+	this.session = session;
+	this.cursor = cursor;
+	this.level = level;
+	this.serial = serial;
+	this.path = path;
+	this.passedValues = new HashMap<>();
+	this.passedNested = new HashSet<>();
+	this.bufferedNested = new HashMap<>();
+    }
+
+    /**
+     * A visitor over an element read into memory completely.
+     */
+    private XMLStreamLoadVisitor(XMLStreamLoadSession session, Map<String, String> values, Set<String> nestedNames, Map<String, List<LoadVisitor>> nested) {
+	this.session = session;
+	this.cursor = null;
+	this.level = -1;
+	this.serial = -1;
+	this.path = Collections.emptyList();
+	this.passedValues = values;
+	this.passedNested = nestedNames;
+	this.bufferedNested = nested;
+	this.exhausted = true;
+    }
+
+    @Override
+    public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+	final byte[] data = restoreBytes(key);
+	if (data != null) {
+	    field.accept(typeConverter.apply(data));
+	}
+    }
+
+    @Override
+    public void restoreInt(String key, IntConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Integer.BYTES);
+	if (data != null) {
+	    field.accept(data.getInt(0));
+	}
+    }
+
+    @Override
+    public void restoreLong(String key, LongConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Long.BYTES);
+	if (data != null) {
+	    field.accept(data.getLong(0));
+	}
+    }
+
+    @Override
+    public void restoreDouble(String key, DoubleConsumer field) {
+	final ByteBuffer data = restoreFixed(key, Double.BYTES);
+	if (data != null) {
+	    field.accept(data.getDouble(0));
+	}
+    }
+
+    @Override
+    public Stream<LoadVisitor> restoreNested(String key) {
+	if (this.passedValues.containsKey(key) || key == null) {
+	    return Stream.empty();
+	}
+	final List<LoadVisitor> buffered = this.bufferedNested.get(key);
+	if (buffered != null) {
+	    return buffered.stream();
+	}
+	if (this.passedNested.contains(key)) {
+	    final XMLStreamLoadVisitor fresh = this.session.openAt(this.path);
+	    return fresh == null ? Stream.empty() : fresh.restoreNested(key);
+	}
+	if (this.exhausted) {
+	    return Stream.empty();
+	}
+	if (!isPositioned()) {
+	    return reopened() == null ? Stream.empty() : reopened().restoreNested(key);
+	}
+	try {
+	    if (!scanTo(key) || this.passedValues.containsKey(key)) {
+		return Stream.empty();
+	    }
+	    this.activeItems = new ItemSpliterator(key, this.level + 1, this.cursor.currentSerial());
+	    return StreamSupport.stream(this.activeItems, false);
+	} catch (final XMLStreamException ex) {
+	    throw new UncheckedXMLStreamException(ex);
+	}
+    }
+
+    private byte[] restoreBytes(String key) {
+	final String text = findValue(key);
+	if (text != null) {
+	    return Base64.getDecoder().decode(text.trim());
+	}
+	return null;
+    }
+
+    private ByteBuffer restoreFixed(String key, int length) {
+	final byte[] data = restoreBytes(key);
+	if (data == null) {
+	    return null;
+	}
+	if (data.length != length) {
+	    throw new IllegalArgumentException();
+	}
+	return ByteBuffer.wrap(data);
+    }
+
+    private String findValue(String key) {
+	if (key == null || this.passedNested.contains(key)) {
+	    return null;
+	}
+	final String passed = this.passedValues.get(key);
+	if (passed != null || this.exhausted) {
+	    return passed;
+	}
+	if (!isPositioned()) {
+	    return reopened() == null ? null : reopened().findValue(key);
+	}
+	try {
+	    if (!scanTo(key)) {
+		return null;
+	    }
+	    if (!this.passedValues.containsKey(key)) {
+		this.cursor.skipTo(this.level + 1);
+	    }
+	    return this.passedValues.get(key);
+	} catch (final XMLStreamException ex) {
+	    throw new UncheckedXMLStreamException(ex);
+	}
+    }
+
+    /**
+     * Reads forward to the first child element named {@code key}. Values are
+     * read completely, the cursor stops inside a nested element.
+     *
+     * @return whether the element was found
+     */
+    private boolean scanTo(String key) throws XMLStreamException {
+	while (true) {
+	    final int event = this.cursor.next();
+	    if (this.cursor.depth() <= this.level) {
+		this.exhausted = true;
+		return false;
+	    }
+	    if (event == XMLStreamConstants.START_ELEMENT && this.cursor.depth() == this.level + 2) {
+		final String name = this.cursor.reader().getLocalName();
+		final boolean firstOccurrence = !this.passedValues.containsKey(name) && !this.passedNested.contains(name);
+		final String text = readValueOrEnterNested();
+		if (text != null) {
+		    if (firstOccurrence) {
+			this.passedValues.put(name, text);
+		    }
+		} else if (firstOccurrence) {
+		    this.passedNested.add(name);
+		}
+		if (firstOccurrence && name.equals(key)) {
+		    return true;
+		}
+		this.cursor.skipTo(this.level + 1);
+	    }
+	}
+    }
+
+    /**
+     * Reads the text of the element just started. If a child element shows
+     * up instead, the cursor is left inside the element before that child.
+     *
+     * @return the text or {@code null} for a nested element
+     */
+    private String readValueOrEnterNested() throws XMLStreamException {
+	return readValueOrEnterNested(this.cursor);
+    }
+
+    private static String readValueOrEnterNested(XMLStreamCursor cursor) throws XMLStreamException {
+	final int elementDepth = cursor.depth();
+	final StringBuilder text = new StringBuilder();
+	while (true) {
+	    final int event = cursor.next();
+	    switch (event) {
+		case XMLStreamConstants.CHARACTERS:
+		case XMLStreamConstants.CDATA:
+		case XMLStreamConstants.SPACE:
+		    text.append(cursor.reader().getText());
+		    break;
+		case XMLStreamConstants.START_ELEMENT:
+		    cursor.unread();
+		    return null;
+		case XMLStreamConstants.END_ELEMENT:
+		case XMLStreamConstants.END_DOCUMENT:
+		    if (cursor.depth() < elementDepth) {
+			return text.toString();
+		    }
+		    break;
+		default:
+		    break;
+	    }
+	}
+    }
+
+    private boolean isPositioned() {
+	if (!this.cursor.isInside(this.level, this.serial)) {
+	    return false;
+	}
+	try {
+	    detachActiveItems();
+	    this.cursor.skipTo(this.level + 1);
+	} catch (final XMLStreamException ex) {
+	    throw new UncheckedXMLStreamException(ex);
+	}
+	return true;
+    }
+
+    /**
+     * Reads the rest of this visitor's element into memory, called before the
+     * cursor leaves it.
+     */
+    private void detach() throws XMLStreamException {
+	if (this.exhausted || !this.cursor.isInside(this.level, this.serial)) {
+	    return;
+	}
+	detachActiveItems();
+	this.cursor.skipTo(this.level + 1);
+	bufferRest(this.cursor, this.level + 1, this.passedValues, this.passedNested, this.bufferedNested);
+	this.exhausted = true;
+    }
+
+    private void detachActiveItems() throws XMLStreamException {
+	if (this.activeItems != null) {
+	    this.activeItems.detach();
+	    this.activeItems = null;
+	}
+    }
+
+    /**
+     * Reads the remaining children of the element at {@code depth} the cursor
+     * is in, keeping the first occurrence of every name like
+     * {@link #scanTo(String)}.
+     */
+    private void bufferRest(XMLStreamCursor cursor, int depth, Map<String, String> values, Set<String> nestedNames, Map<String, List<LoadVisitor>> nested) throws XMLStreamException {
+	while (true) {
+	    final int event = cursor.next();
+	    if (cursor.depth() < depth) {
+		return;
+	    }
+	    if (event == XMLStreamConstants.START_ELEMENT && cursor.depth() == depth + 1) {
+		final String name = cursor.reader().getLocalName();
+		final boolean firstOccurrence = !values.containsKey(name) && !nestedNames.contains(name);
+		final String text = readValueOrEnterNested(cursor);
+		if (text != null) {
+		    if (firstOccurrence) {
+			values.put(name, text);
+		    }
+		} else {
+		    final List<LoadVisitor> items = bufferItems(cursor, depth + 1, name + "Item");
+		    if (firstOccurrence) {
+			nestedNames.add(name);
+			nested.put(name, items);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Reads the remaining items of the nested element at {@code depth} the
+     * cursor is in.
+     */
+    private List<LoadVisitor> bufferItems(XMLStreamCursor cursor, int depth, String itemName) throws XMLStreamException {
+	final List<LoadVisitor> items = new ArrayList<>();
+	while (true) {
+	    final int event = cursor.next();
+	    if (cursor.depth() < depth) {
+		return items;
+	    }
+	    if (event == XMLStreamConstants.START_ELEMENT && cursor.depth() == depth + 1) {
+		if (cursor.reader().getLocalName().equals(itemName)) {
+		    final Map<String, String> values = new HashMap<>();
+		    final Set<String> nestedNames = new HashSet<>();
+		    final Map<String, List<LoadVisitor>> nested = new HashMap<>();
+		    bufferRest(cursor, depth + 1, values, nestedNames, nested);
+		    items.add(new XMLStreamLoadVisitor(this.session, values, nestedNames, nested));
+		} else {
+		    cursor.skipTo(depth);
+		}
+	    }
+	}
+    }
+
+    private XMLStreamLoadVisitor reopened() {
+	if (this.reopened == null) {
+	    this.reopened = this.session.openAt(this.path);
+	}
+	return this.reopened;
+    }
+
+    static final class Step {
+
+	final String key;
+	final int index;
+
+	Step(String key, int index) {
+	    this.key = key;
+	    this.index = index;
+	}
+
+    }
+
+    private final class ItemSpliterator extends Spliterators.AbstractSpliterator<LoadVisitor> {
+
+	private final String key;
+	private final String itemName;
+	private final int containerLevel;
+	private final long containerSerial;
+	private int index;
+	private boolean done;
+	private XMLStreamLoadVisitor lastItem;
+	private Spliterator<LoadVisitor> remainingItems;
+
+	ItemSpliterator(String key, int containerLevel, long containerSerial) {
+	    super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+	    this.key = key;
+	    this.itemName = key + "Item";
+	    this.containerLevel = containerLevel;
+	    this.containerSerial = containerSerial;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super LoadVisitor> action) {
+	    if (this.remainingItems != null) {
+		return this.remainingItems.tryAdvance(action);
+	    }
+	    if (this.done) {
+		return false;
+	    }
+	    if (!cursor.isInside(this.containerLevel, this.containerSerial)) {
+		final XMLStreamLoadVisitor fresh = session.openAt(path);
+		this.remainingItems = fresh == null ? Spliterators.emptySpliterator() : fresh.restoreNested(this.key).skip(this.index).spliterator();
+		return this.remainingItems.tryAdvance(action);
+	    }
+	    try {
+		detachLastItem();
+		cursor.skipTo(this.containerLevel + 1);
+		while (true) {
+		    final int event = cursor.next();
+		    if (cursor.depth() <= this.containerLevel) {
+			this.done = true;
+			return false;
+		    }
+		    if (event == XMLStreamConstants.START_ELEMENT && cursor.depth() == this.containerLevel + 2) {
+			if (cursor.reader().getLocalName().equals(this.itemName)) {
+			    final List<Step> itemPath = new ArrayList<>(path.size() + 1);
+			    itemPath.addAll(path);
+			    itemPath.add(new Step(this.key, this.index++));
+			    this.lastItem = new XMLStreamLoadVisitor(session, cursor, this.containerLevel + 1, cursor.currentSerial(), Collections.unmodifiableList(itemPath));
+			    action.accept(this.lastItem);
+			    return true;
+			}
+			cursor.skipTo(this.containerLevel + 1);
+		    }
+		}
+	    } catch (final XMLStreamException ex) {
+		throw new UncheckedXMLStreamException(ex);
+	    }
+	}
+
+	/**
+	 * Reads the items not handed out yet into memory, called before the
+	 * cursor leaves the nested element.
+	 */
+	void detach() throws XMLStreamException {
+	    if (this.done || this.remainingItems != null || !cursor.isInside(this.containerLevel, this.containerSerial)) {
+		return;
+	    }
+	    detachLastItem();
+	    cursor.skipTo(this.containerLevel + 1);
+	    this.remainingItems = bufferItems(cursor, this.containerLevel + 1, this.itemName).spliterator();
+	}
+
+	private void detachLastItem() throws XMLStreamException {
+	    if (this.lastItem != null) {
+		this.lastItem.detach();
+		this.lastItem = null;
+	    }
+	}
+
+    }
+
+}
@@ -0,0 +1,104 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import libSB.persistence.SaveVisitor;
+
+/**
+ * Writes every value straight to an {@link XMLStreamWriter} in the layout of
+ * {@link XMLSaveVisitor}. As nothing is kept in memory, a key written twice
+ * ends up twice in the document and the first occurrence wins on restore.
+ *
+ * @author Simon Berndt
+ */
+public class XMLStreamSaveVisitor implements SaveVisitor {
+
+    private final XMLStreamWriter writer;
+
+    public XMLStreamSaveVisitor(XMLStreamWriter writer) {
+	this.writer = writer;
+    }
+
+    @Override
+    public <T> void persistSingle(String key, Supplier<? extends T> value, Function<T, byte[]> typeConverter) {
+	writeElement(key, typeConverter.apply(value.get()));
+    }
+
+    @Override
+    public void persistInt(String key, int value) {
+	writeElement(key, ByteBuffer.allocate(Integer.BYTES).putInt(0, value).array());
+    }
+
+    @Override
+    public void persistLong(String key, long value) {
+	writeElement(key, ByteBuffer.allocate(Long.BYTES).putLong(0, value).array());
+    }
+
+    @Override
+    public void persistDouble(String key, double value) {
+	writeElement(key, ByteBuffer.allocate(Double.BYTES).putDouble(0, value).array());
+    }
+
+    @Override
+    public void persistNested(String key, Stream<? extends Consumer<? super SaveVisitor>> values) {
+	Objects.requireNonNull(values);
+	try {
+	    this.writer.writeStartElement(key);
+	    values.forEachOrdered((Consumer<? super SaveVisitor> consumer) -> {
+		try {
+		    this.writer.writeStartElement(key + "Item");
+		    consumer.accept(new XMLStreamSaveVisitor(this.writer));
+		    this.writer.writeEndElement();
+		} catch (final XMLStreamException ex) {
+		    throw new UncheckedXMLStreamException(ex);
+		}
+	    });
+	    this.writer.writeEndElement();
+	} catch (final XMLStreamException ex) {
+	    throw new UncheckedXMLStreamException(ex);
+	}
+    }
+
+    private void writeElement(String identifier, byte[] value) {
+	if (value != null) {
+	    try {
+		this.writer.writeStartElement(identifier);
+		this.writer.writeCharacters(Base64.getEncoder().encodeToString(value));
+		this.writer.writeEndElement();
+	    } catch (final XMLStreamException ex) {
+		throw new UncheckedXMLStreamException(ex);
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,217 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class CompactByteConvertersTest {
+
+    private static final int[] INTS = {0, 1, 63, 64, 127, 128, 16383, 16384, 2097151, 2097152, 268435455, 268435456,
+	Integer.MAX_VALUE, -1, -64, -65, Integer.MIN_VALUE};
+    private static final long[] LONGS = {0, 1, 127, 128, Integer.MAX_VALUE, 1L << 35, (1L << 56) - 1, 1L << 56, (1L << 63) - 1,
+	Long.MAX_VALUE, -1, -64, -65, Integer.MIN_VALUE, Long.MIN_VALUE};
+
+    @Test
+    public void roundTripsVarInts() {
+	for (final int value : INTS) {
+	    final byte[] bytes = CompactByteConverters.varIntToBytes(value);
+	    assertEquals(value, (int) CompactByteConverters.varIntFromBytes(bytes));
+	    assertEquals(value < 0 ? 5 : (38 - Integer.numberOfLeadingZeros(value | 1)) / 7, bytes.length);
+	    assertEquals(value, (int) CompactByteConverters.zigZagIntFromBytes(CompactByteConverters.zigZagIntToBytes(value)));
+	}
+    }
+
+    @Test
+    public void roundTripsVarLongs() {
+	for (final long value : LONGS) {
+	    final byte[] bytes = CompactByteConverters.varLongToBytes(value);
+	    assertEquals(value, (long) CompactByteConverters.varLongFromBytes(bytes));
+	    assertEquals(value < 0 ? 10 : (70 - Long.numberOfLeadingZeros(value | 1)) / 7, bytes.length);
+	    assertEquals(value, (long) CompactByteConverters.zigZagLongFromBytes(CompactByteConverters.zigZagLongToBytes(value)));
+	}
+    }
+
+    @Test
+    public void zigZagKeepsSmallMagnitudesShort() {
+	assertEquals(1, CompactByteConverters.zigZagIntToBytes(-1).length);
+	assertEquals(1, CompactByteConverters.zigZagIntToBytes(-64).length);
+	assertEquals(1, CompactByteConverters.zigZagIntToBytes(63).length);
+	assertEquals(2, CompactByteConverters.zigZagIntToBytes(64).length);
+	assertEquals(1, CompactByteConverters.zigZagLongToBytes(-1L).length);
+	assertEquals(10, CompactByteConverters.zigZagLongToBytes(Long.MIN_VALUE).length);
+    }
+
+    @Test
+    public void roundTripsDeltas() {
+	final Random random = new Random(0);
+	final int[][] ints = {new int[0], INTS, {Integer.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE}, random.ints(500).toArray()};
+	for (final int[] values : ints) {
+	    assertArrayEquals(values, CompactByteConverters.deltaIntsFromBytes(CompactByteConverters.deltaIntsToBytes(values)));
+	}
+	final long[][] longs = {new long[0], LONGS, {Long.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE}, random.longs(500).toArray()};
+	for (final long[] values : longs) {
+	    assertArrayEquals(values, CompactByteConverters.deltaLongsFromBytes(CompactByteConverters.deltaLongsToBytes(values)));
+	}
+    }
+
+    @Test
+    public void deltasOfSortedValuesAreShort() {
+	final int[] sorted = new int[1000];
+	for (int i = 0; i < sorted.length; i++) {
+	    sorted[i] = 1_000_000 + 3 * i;
+	}
+	assertTrue(CompactByteConverters.deltaIntsToBytes(sorted).length < 1010);
+    }
+
+    @Test
+    public void roundTripsFlags() {
+	for (int count = 0; count < 20; count++) {
+	    final boolean[] flags = new boolean[count];
+	    for (int i = 0; i < count; i++) {
+		flags[i] = i % 3 == 0;
+	    }
+	    assertArrayEquals(flags, CompactByteConverters.packedBooleansFromBytes(CompactByteConverters.packedBooleansToBytes(flags)));
+	}
+	final BitSet bits = new BitSet();
+	bits.set(3);
+	bits.set(70);
+	assertEquals(bits, CompactByteConverters.bitSetFromBytes(CompactByteConverters.bitSetToBytes(bits)));
+	assertEquals(new BitSet(), CompactByteConverters.bitSetFromBytes(CompactByteConverters.bitSetToBytes(new BitSet())));
+    }
+
+    @Test
+    public void rejectsOverlongVarInts() {
+	assertRejected(CompactByteConverters::varIntFromBytes, 0x80, 0x00);
+	assertRejected(CompactByteConverters::varIntFromBytes, 0x81, 0x80, 0x00);
+	assertRejected(CompactByteConverters::varIntFromBytes, 0xFF, 0xFF, 0xFF, 0xFF, 0x00);
+	assertRejected(CompactByteConverters::varLongFromBytes, 0x80, 0x00);
+	assertRejected(CompactByteConverters::varLongFromBytes, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x00);
+	assertRejected(CompactByteConverters::zigZagIntFromBytes, 0x80, 0x00);
+	assertRejected(CompactByteConverters::deltaIntsFromBytes, 0x01, 0x80, 0x00);
+	assertRejected(CompactByteConverters::deltaLongsFromBytes, 0x81, 0x00, 0x00);
+	assertRejected(CompactByteConverters::packedBooleansFromBytes, 0x81, 0x00, 0x00);
+    }
+
+    @Test
+    public void rejectsVarIntsOutOfRange() {
+	assertRejected(CompactByteConverters::varIntFromBytes, 0xFF, 0xFF, 0xFF, 0xFF, 0x10);
+	assertRejected(CompactByteConverters::varIntFromBytes, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01);
+	assertRejected(CompactByteConverters::varLongFromBytes, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x02);
+	assertRejected(CompactByteConverters::varLongFromBytes, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x80, 0x01);
+    }
+
+    @Test
+    public void rejectsTruncatedAndTrailingInput() {
+	assertRejected(CompactByteConverters::varIntFromBytes);
+	assertRejected(CompactByteConverters::varIntFromBytes, 0x80);
+	assertRejected(CompactByteConverters::varIntFromBytes, 0x01, 0x00);
+	assertRejected(CompactByteConverters::varLongFromBytes, 0xFF, 0xFF);
+	assertRejected(CompactByteConverters::varLongFromBytes, 0x7F, 0x7F);
+	assertRejected(CompactByteConverters::bitSetFromBytes, 0x01, 0x00);
+	assertRejected(CompactByteConverters::packedBooleansFromBytes, 0x03, 0x08);
+	assertRejected(CompactByteConverters::packedBooleansFromBytes, 0x03, 0x01, 0x01);
+	final byte[] ints = CompactByteConverters.deltaIntsToBytes(INTS);
+	final byte[] longs = CompactByteConverters.deltaLongsToBytes(LONGS);
+	for (int length = 0; length < ints.length; length++) {
+	    assertRejected(CompactByteConverters::deltaIntsFromBytes, Arrays.copyOf(ints, length));
+	}
+	for (int length = 0; length < longs.length; length++) {
+	    assertRejected(CompactByteConverters::deltaLongsFromBytes, Arrays.copyOf(longs, length));
+	}
+	assertRejected(CompactByteConverters::deltaIntsFromBytes, Arrays.copyOf(ints, ints.length + 1));
+	// a count larger than the input
+	assertRejected(CompactByteConverters::deltaIntsFromBytes, 0xFF, 0xFF, 0xFF, 0xFF, 0x07);
+	assertRejected(CompactByteConverters::deltaLongsFromBytes, 0x7F);
+    }
+
+    @Test
+    public void rejectsNull() {
+	assertRejected(CompactByteConverters::varIntFromBytes, (byte[]) null);
+	assertRejected(CompactByteConverters::deltaLongsFromBytes, (byte[]) null);
+	assertRejected(CompactByteConverters::bitSetFromBytes, (byte[]) null);
+	try {
+	    CompactByteConverters.deltaIntsToBytes(null);
+	    fail("accepted null");
+	} catch (final IllegalArgumentException ex) {
+	    assertEquals("Null value", ex.getMessage());
+	}
+    }
+
+    @Test
+    public void failsOnlyWithIllegalArgumentOnRandomInput() {
+	final Random random = new Random(1);
+	final List<Function<byte[], ?>> decoders = Arrays.asList(
+		CompactByteConverters::varIntFromBytes,
+		CompactByteConverters::varLongFromBytes,
+		CompactByteConverters::zigZagIntFromBytes,
+		CompactByteConverters::zigZagLongFromBytes,
+		CompactByteConverters::packedBooleansFromBytes,
+		CompactByteConverters::bitSetFromBytes,
+		CompactByteConverters::deltaIntsFromBytes,
+		CompactByteConverters::deltaLongsFromBytes);
+	for (int i = 0; i < 5000; i++) {
+	    final byte[] input = new byte[random.nextInt(16)];
+	    random.nextBytes(input);
+	    for (final Function<byte[], ?> decoder : decoders) {
+		try {
+		    decoder.apply(input);
+		} catch (final IllegalArgumentException ex) {
+		    assertTrue(ex.getMessage() != null);
+		}
+	    }
+	}
+    }
+
+    private static void assertRejected(Function<byte[], ?> decoder, int... bytes) {
+	final byte[] input = new byte[bytes.length];
+	for (int i = 0; i < bytes.length; i++) {
+	    input[i] = (byte) bytes[i];
+	}
+	assertRejected(decoder, input);
+    }
+
+    private static void assertRejected(Function<byte[], ?> decoder, byte[] input) {
+	try {
+	    decoder.apply(input);
+	    fail("accepted " + Arrays.toString(input));
+	} catch (final IllegalArgumentException ex) {
+	    assertTrue(ex.getMessage() != null);
+	}
+    }
+
+}
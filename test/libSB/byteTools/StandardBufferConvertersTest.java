@@ -0,0 +1,173 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class StandardBufferConvertersTest {
+
+    private static final String[] STRINGS = {
+	"",
+	"plain ascii",
+	"äöü ß ©",
+	"€ 中文 ￿",
+	"😀 emoji 🎉",
+	"\u007f\u0080߿ࠀ",
+	"unpaired high \ud83d end",
+	"unpaired low \ude00 end",
+	"\ud83d",
+	"\ude00\ud83d",
+	"\u0000 nul"
+    };
+
+    @Test
+    public void encodesStringsLikeTheCharset() {
+	for (final String value : STRINGS) {
+	    final byte[] expected = value.getBytes(StandardCharsets.UTF_8);
+	    final byte[] encoded = StandardBufferConverters.toBytes(value, StandardBufferConverters.STRING);
+	    assertEquals(value, Integer.BYTES + expected.length, StandardBufferConverters.STRING.sizeOf(value));
+	    assertEquals(value, expected.length, ByteBuffer.wrap(encoded).getInt());
+	    assertArrayEquals(value, expected, Arrays.copyOfRange(encoded, Integer.BYTES, encoded.length));
+	}
+    }
+
+    @Test
+    public void encodesRandomStringsLikeTheCharset() {
+	final Random random = new Random(0);
+	for (int i = 0; i < 1000; i++) {
+	    final char[] chars = new char[random.nextInt(20)];
+	    for (int j = 0; j < chars.length; j++) {
+		chars[j] = (char) random.nextInt(Character.MAX_VALUE + 1);
+	    }
+	    final String value = new String(chars);
+	    final byte[] encoded = StandardBufferConverters.toBytes(value, StandardBufferConverters.STRING);
+	    assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), Arrays.copyOfRange(encoded, Integer.BYTES, encoded.length));
+	}
+    }
+
+    @Test
+    public void roundTripsStrings() {
+	for (final String value : STRINGS) {
+	    final String expected = new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	    assertEquals(expected, StandardBufferConverters.fromBytes(StandardBufferConverters.toBytes(value, StandardBufferConverters.STRING), StandardBufferConverters.STRING));
+	}
+    }
+
+    @Test
+    public void readsStringsFromSharedAndDirectBuffers() {
+	final ByteBuffer heap = ByteBuffer.allocate(256);
+	heap.put((byte) 7);
+	StandardBufferConverters.STRING.write("first ä", heap);
+	StandardBufferConverters.STRING.write("second 😀", heap);
+	heap.flip();
+	heap.get();
+	final ByteBuffer slice = heap.slice();
+	assertEquals("first ä", StandardBufferConverters.STRING.read(slice));
+	assertEquals("second 😀", StandardBufferConverters.STRING.read(slice));
+	assertEquals(0, slice.remaining());
+	final ByteBuffer direct = ByteBuffer.allocateDirect(64);
+	StandardBufferConverters.STRING.write("direct €", direct);
+	direct.flip();
+	assertEquals("direct €", StandardBufferConverters.STRING.read(direct.asReadOnlyBuffer()));
+    }
+
+    @Test
+    public void rejectsCorruptStrings() {
+	assertRejected(new byte[0]);
+	assertRejected(new byte[]{0, 0});
+	assertRejected(new byte[]{-1, -1, -1, -1});
+	assertRejected(new byte[]{0, 0, 0, 5, 'a', 'b'});
+	assertRejected(new byte[]{0, 0, 0, 1, 'a', 'b'});
+    }
+
+    @Test
+    public void refusesToWriteBeyondTheTarget() {
+	final ByteBuffer target = ByteBuffer.allocate(6);
+	try {
+	    StandardBufferConverters.STRING.write("ää", target);
+	    fail("wrote past the limit");
+	} catch (final BufferOverflowException ex) {
+	    assertEquals(0, target.position());
+	}
+    }
+
+    @Test
+    public void refusesNull() {
+	try {
+	    StandardBufferConverters.STRING.sizeOf(null);
+	    fail("accepted null");
+	} catch (final IllegalArgumentException ex) {
+	    // expected
+	}
+    }
+
+    @Test
+    public void roundTripsArrays() {
+	assertArrayEquals(new byte[]{1, -2, 3}, roundTrip(new byte[]{1, -2, 3}, StandardBufferConverters.BYTE_ARRAY));
+	assertArrayEquals(new int[]{0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}, roundTrip(new int[]{0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE}, StandardBufferConverters.INT_ARRAY));
+	assertArrayEquals(new long[]{Long.MIN_VALUE, 42}, roundTrip(new long[]{Long.MIN_VALUE, 42}, StandardBufferConverters.LONG_ARRAY));
+	assertArrayEquals(new double[]{Double.NaN, -0.0, 1.5}, roundTrip(new double[]{Double.NaN, -0.0, 1.5}, StandardBufferConverters.DOUBLE_ARRAY), 0);
+	assertArrayEquals(new int[0], roundTrip(new int[0], StandardBufferConverters.INT_ARRAY));
+    }
+
+    @Test
+    public void rejectsTruncatedArrays() {
+	final byte[] encoded = StandardBufferConverters.toBytes(new int[]{1, 2, 3}, StandardBufferConverters.INT_ARRAY);
+	for (int length = 0; length < encoded.length; length++) {
+	    try {
+		StandardBufferConverters.fromBytes(Arrays.copyOf(encoded, length), StandardBufferConverters.INT_ARRAY);
+		fail("accepted " + length + " of " + encoded.length + " bytes");
+	    } catch (final IllegalArgumentException ex) {
+		// expected
+	    }
+	}
+    }
+
+    private static <T> T roundTrip(T value, BufferConverter<T> converter) {
+	return StandardBufferConverters.fromBytes(StandardBufferConverters.toBytes(value, converter), converter);
+    }
+
+    private static void assertRejected(byte[] bytes) {
+	try {
+	    StandardBufferConverters.fromBytes(bytes, StandardBufferConverters.STRING);
+	    fail("accepted " + Arrays.toString(bytes));
+	} catch (final IllegalArgumentException ex) {
+	    // expected
+	}
+    }
+
+}
@@ -0,0 +1,206 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.byteTools.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class CodecChainTest {
+
+    private static final int[] SIZES = {0, 1, 3, 4, 5, 15, 16, 63, 64, 255, 256, 4096, 70000};
+
+    @Test
+    public void deflateRoundTrips() {
+	assertRoundTrips(new DeflateCodec());
+	assertRoundTrips(new DeflateCodec(1));
+    }
+
+    @Test
+    public void lzRoundTrips() {
+	assertRoundTrips(new LZCodec());
+    }
+
+    @Test
+    public void chainRoundTrips() {
+	final CodecChain chain = CodecChain.of(new LZCodec(), new DeflateCodec());
+	final Random random = new Random(1);
+	for (final int size : SIZES) {
+	    for (final byte[] raw : samples(random, size)) {
+		assertArrayEquals(raw, chain.decode(chain.encode(raw)));
+	    }
+	}
+	assertEquals(null, chain.decode(chain.encode(null)));
+    }
+
+    @Test
+    public void storesShortAndIncompressibleValuesRaw() {
+	final CodecChain chain = CodecChain.of(new DeflateCodec());
+	final byte[] shortValue = "short".getBytes(StandardCharsets.UTF_8);
+	final byte[] encoded = chain.encode(shortValue);
+	assertEquals(0, encoded[0]);
+	assertArrayEquals(shortValue, Arrays.copyOfRange(encoded, 1, encoded.length));
+	final byte[] noise = new byte[1024];
+	new Random(2).nextBytes(noise);
+	assertEquals(0, chain.encode(noise)[0]);
+    }
+
+    @Test
+    public void compressesRepetitiveValues() {
+	final byte[] raw = repetitive(4096);
+	assertTrue(CodecChain.of(new LZCodec()).encode(raw).length < raw.length / 4);
+	assertTrue(CodecChain.of(new DeflateCodec()).encode(raw).length < raw.length / 4);
+    }
+
+    @Test
+    public void decodesValuesOfOtherChains() {
+	final byte[] raw = repetitive(1000);
+	final byte[] encoded = CodecChain.of(new LZCodec(), new DeflateCodec()).encode(raw);
+	assertArrayEquals(raw, CodecChain.of().decode(encoded));
+    }
+
+    @Test
+    public void rejectsCorruptHeaders() {
+	final CodecChain chain = CodecChain.of(new DeflateCodec());
+	assertRejected(chain, new byte[0]);
+	assertRejected(chain, new byte[]{-1, 1});
+	assertRejected(chain, new byte[]{3, 1});
+	assertRejected(chain, new byte[]{1, 42, 0, 0, 0, 0});
+    }
+
+    @Test
+    public void rejectsTruncatedValues() {
+	final byte[] raw = repetitive(4096);
+	for (final ValueCodec codec : new ValueCodec[]{new DeflateCodec(), new LZCodec()}) {
+	    final byte[] encoded = codec.encode(raw);
+	    for (int length = 0; length < encoded.length; length++) {
+		try {
+		    codec.decode(Arrays.copyOf(encoded, length));
+		    fail(codec.getClass().getSimpleName() + " accepted " + length + " of " + encoded.length + " bytes");
+		} catch (final IllegalArgumentException ex) {
+		    // expected
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void rejectsInvalidLZSequences() {
+	final LZCodec codec = new LZCodec();
+	// match reaching before the start of the output
+	assertRejected(codec, new byte[]{0, 0, 0, 8, 0x10, 'a', 0, 2});
+	// zero match offset
+	assertRejected(codec, new byte[]{0, 0, 0, 8, 0x10, 'a', 0, 0});
+	// literals beyond the raw length
+	assertRejected(codec, new byte[]{0, 0, 0, 1, 0x20, 'a', 'b'});
+	// trailing bytes
+	assertRejected(codec, new byte[]{0, 0, 0, 1, 0x10, 'a', 0});
+	assertRejected(codec, new byte[]{-1, -1, -1, -1, 0});
+    }
+
+    @Test
+    public void rejectsInvalidDeflateLengths() {
+	final DeflateCodec codec = new DeflateCodec();
+	assertRejected(codec, new byte[]{-1, -1, -1, -1, 0});
+	assertRejected(codec, new byte[]{0x7F, -1, -1, -1, 0});
+    }
+
+    @Test
+    public void failsOnlyWithIllegalArgumentOnRandomInput() {
+	final Random random = new Random(3);
+	final ValueCodec[] codecs = {new DeflateCodec(), new LZCodec()};
+	for (int i = 0; i < 2000; i++) {
+	    final byte[] input = new byte[random.nextInt(64)];
+	    random.nextBytes(input);
+	    if (input.length >= Integer.BYTES) {
+		input[0] = 0;
+		input[1] = 0;
+	    }
+	    for (final ValueCodec codec : codecs) {
+		try {
+		    codec.decode(input);
+		} catch (final IllegalArgumentException ex) {
+		    // expected for most inputs
+		}
+	    }
+	}
+    }
+
+    private static void assertRoundTrips(ValueCodec codec) {
+	final Random random = new Random(0);
+	for (final int size : SIZES) {
+	    for (final byte[] raw : samples(random, size)) {
+		assertArrayEquals(codec.getClass().getSimpleName() + " " + size, raw, codec.decode(codec.encode(raw)));
+	    }
+	}
+    }
+
+    private static void assertRejected(CodecChain chain, byte[] stored) {
+	try {
+	    chain.decode(stored);
+	    fail("accepted " + Arrays.toString(stored));
+	} catch (final IllegalArgumentException ex) {
+	    // expected
+	}
+    }
+
+    private static void assertRejected(ValueCodec codec, byte[] encoded) {
+	try {
+	    codec.decode(encoded);
+	    fail("accepted " + Arrays.toString(encoded));
+	} catch (final IllegalArgumentException ex) {
+	    // expected
+	}
+    }
+
+    private static byte[][] samples(Random random, int size) {
+	final byte[] noise = new byte[size];
+	random.nextBytes(noise);
+	final byte[] runs = new byte[size];
+	for (int i = 0; i < size; i++) {
+	    runs[i] = (byte) (i / 300);
+	}
+	return new byte[][]{noise, runs, repetitive(size), new byte[size]};
+    }
+
+    private static byte[] repetitive(int size) {
+	final byte[] phrase = "the quick brown fox jumps over the lazy dog, ".getBytes(StandardCharsets.UTF_8);
+	final byte[] bytes = new byte[size];
+	for (int i = 0; i < size; i++) {
+	    bytes[i] = phrase[i % phrase.length];
+	}
+	return bytes;
+    }
+
+}
@@ -0,0 +1,201 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.binaryBased;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import libSB.byteTools.StandardBufferConverters;
+import libSB.persistence.KeySchema;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import libSB.persistence.SlotValues;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class BinaryPersistenceManagerTest {
+
+    private enum Key {
+	FIRST, SECOND
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() {
+	this.file = folder.getRoot().toPath().resolve("values.bin");
+    }
+
+    @Test
+    public void roundTripsAllValueKinds() {
+	new BinaryPersistenceManager(this.file).save(values());
+	assertEquals(expected(), restore(new BinaryPersistenceManager(this.file)));
+    }
+
+    @Test
+    public void roundTripsSlots() {
+	final KeySchema<Key> schema = KeySchema.of(Key.class);
+	new BinaryPersistenceManager(this.file).save((SaveVisitor visitor) -> {
+	    final SlotValues<Key> values = new SlotValues<>(schema);
+	    values.putInt(Key.FIRST, 1);
+	    values.put(Key.SECOND, "two", StandardBufferConverters.STRING);
+	    visitor.persistSlots(values);
+	});
+	final List<Object> restored = new ArrayList<>();
+	new BinaryPersistenceManager(this.file).restore((LoadVisitor visitor) -> {
+	    final SlotValues<Key> values = visitor.restoreSlots(schema);
+	    restored.add(values.getInt(Key.FIRST, -1));
+	    restored.add(values.get(Key.SECOND, StandardBufferConverters.STRING, null));
+	});
+	assertEquals(Arrays.asList(1, "two"), restored);
+    }
+
+    @Test
+    public void restoresTheIntactRecordsOfTruncatedFiles() throws IOException {
+	new BinaryPersistenceManager(this.file).save(values());
+	final byte[] bytes = Files.readAllBytes(this.file);
+	final List<Object> expected = expected();
+	for (int length = 0; length < bytes.length; length++) {
+	    Files.write(this.file, Arrays.copyOf(bytes, length));
+	    final List<Object> restored = restore(new BinaryPersistenceManager(this.file));
+	    for (int i = 0; i < restored.size(); i++) {
+		final Object value = restored.get(i);
+		assertTrue(length + ": " + value, value == null || value.equals(expected.get(i)) || value.equals(Arrays.asList()));
+	    }
+	}
+    }
+
+    @Test
+    public void stopsAtCorruptLengths() throws IOException {
+	final int[] lengths = {-1, Integer.MAX_VALUE, Integer.MAX_VALUE - 1, Integer.MAX_VALUE - 3};
+	for (final int length : lengths) {
+	    // a corrupt key length, followed by a record that must not be read
+	    writeRecords(ByteBuffer.allocate(64).put(BinaryFormat.SINGLE).putInt(length).putInt(7).putInt(Integer.BYTES).putInt(1));
+	    assertEquals(-1, restoreInt("key"));
+	    assertEquals(-1, restoreSlot());
+	    // an intact record followed by one with a corrupt payload length
+	    writeRecords(record("key", 42).put(BinaryFormat.SINGLE).putInt(1).put((byte) 'x').putInt(length).putInt(1));
+	    assertEquals(42, restoreInt("key"));
+	    assertEquals(-1, restoreInt("x"));
+	}
+    }
+
+    @Test
+    public void rejectsFixedWidthMismatches() throws IOException {
+	writeRecords(record("key", 42));
+	new BinaryPersistenceManager(this.file).restore((LoadVisitor visitor) -> {
+	    try {
+		visitor.restoreLong("key", -1L);
+		fail("read an int as a long");
+	    } catch (final IllegalArgumentException ex) {
+		assertTrue(ex.getMessage().contains("key"));
+	    }
+	});
+    }
+
+    @Test
+    public void ignoresForeignFiles() throws IOException {
+	Files.write(this.file, "not binary".getBytes(StandardCharsets.UTF_8));
+	assertEquals(-1, restoreInt("key"));
+    }
+
+    private static Saveable values() {
+	return (SaveVisitor visitor) -> {
+	    visitor.persistInt("int", 1);
+	    visitor.persistLong("long", Long.MAX_VALUE);
+	    visitor.persistDouble("double", 0.5);
+	    visitor.persistSingle("single", () -> "single", (String value) -> value.getBytes(StandardCharsets.UTF_8));
+	    visitor.persistBuffered("buffered", "buffered ä", StandardBufferConverters.STRING);
+	    visitor.persistNested("items", IntStream.range(0, 3)
+		    .mapToObj((int i) -> (Consumer<SaveVisitor>) (SaveVisitor item) -> item.persistInt("value", i)));
+	};
+    }
+
+    private static List<Object> expected() {
+	return Arrays.asList(1, Long.MAX_VALUE, 0.5, "single", "buffered ä", Arrays.asList(0, 1, 2));
+    }
+
+    private static List<Object> restore(BinaryPersistenceManager manager) {
+	final List<Object> restored = new ArrayList<>(Arrays.asList(null, null, null, null, null, null));
+	manager.restore((LoadVisitor visitor) -> {
+	    visitor.restoreInt("int", (int value) -> restored.set(0, value));
+	    visitor.restoreLong("long", (long value) -> restored.set(1, value));
+	    visitor.restoreDouble("double", (double value) -> restored.set(2, value));
+	    visitor.restoreSingle("single", (String value) -> restored.set(3, value), (byte[] bytes) -> new String(bytes, StandardCharsets.UTF_8));
+	    visitor.restoreBuffered("buffered", (String value) -> restored.set(4, value), StandardBufferConverters.STRING);
+	    restored.set(5, visitor.restoreNested("items")
+		    .map((LoadVisitor item) -> item.restoreInt("value", -1))
+		    .collect(Collectors.toList()));
+	});
+	return restored;
+    }
+
+    private int restoreInt(String key) {
+	final int[] restored = {-1};
+	new BinaryPersistenceManager(this.file).restore((LoadVisitor visitor) -> restored[0] = visitor.restoreInt(key, -1));
+	return restored[0];
+    }
+
+    private int restoreSlot() {
+	final int[] restored = {-1};
+	new BinaryPersistenceManager(this.file).restore((LoadVisitor visitor)
+		-> restored[0] = visitor.restoreSlots(KeySchema.of(Key.class)).getInt(Key.FIRST, -1));
+	return restored[0];
+    }
+
+    private static ByteBuffer record(String key, int value) {
+	final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+	return ByteBuffer.allocate(64).put(BinaryFormat.SINGLE).putInt(keyBytes.length).put(keyBytes).putInt(Integer.BYTES).putInt(value);
+    }
+
+    private void writeRecords(ByteBuffer records) throws IOException {
+	records.flip();
+	final ByteBuffer bytes = ByteBuffer.allocate(BinaryFormat.HEADER_BYTES + records.remaining());
+	bytes.putInt(BinaryFormat.MAGIC).put(BinaryFormat.VERSION).put(records);
+	Files.write(this.file, bytes.array());
+    }
+
+}
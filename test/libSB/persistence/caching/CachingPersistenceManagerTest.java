@@ -0,0 +1,188 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.caching;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import libSB.persistence.xmlBased.DOMPersistenceManager;
+import libSB.persistence.xmlBased.StreamingXMLPersistenceManager;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class CachingPersistenceManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoresThroughDelegateScopedToRestore() {
+	final StreamingXMLPersistenceManager delegate = new StreamingXMLPersistenceManager(folder.getRoot().toPath().resolve("values.xml"));
+	delegate.save(values());
+	final CachingPersistenceManager manager = new CachingPersistenceManager(delegate, 1024 * 1024);
+	assertEquals(expected(), restore(manager));
+	assertEquals(expected(), restore(manager));
+	final CacheStatistics statistics = manager.getStatistics();
+	assertEquals(1, statistics.getLoadCount());
+	assertEquals(0, statistics.getEvictionCount());
+    }
+
+    @Test
+    public void detachedVisitorsAreRestoredOnFirstMissOnly() throws ParserConfigurationException {
+	final DOMPersistenceManager delegate = new DOMPersistenceManager(DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument());
+	delegate.save(values());
+	final CachingPersistenceManager manager = new CachingPersistenceManager(delegate, 1024 * 1024, true, true);
+	assertEquals(expected(), restore(manager));
+	assertEquals(expected(), restore(manager));
+	assertEquals(1, manager.getStatistics().getLoadCount());
+    }
+
+    @Test
+    public void servesHitsWithoutRestoringTheDelegate() {
+	final CountingManager delegate = new CountingManager(new StreamingXMLPersistenceManager(folder.getRoot().toPath().resolve("values.xml")));
+	delegate.save(values());
+	final CachingPersistenceManager manager = new CachingPersistenceManager(delegate, 1024 * 1024);
+	assertEquals(expected(), restore(manager));
+	assertEquals(1, delegate.restores);
+	assertEquals(expected(), restore(manager));
+	assertEquals(expected(), restore(manager));
+	assertEquals(1, delegate.restores);
+    }
+
+    @Test
+    public void failedSavesDoNotReachTheCache() throws ParserConfigurationException {
+	final CountingManager delegate = new CountingManager(new DOMPersistenceManager(DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument()));
+	delegate.save(values());
+	final CachingPersistenceManager manager = new CachingPersistenceManager(delegate, 1024 * 1024);
+	assertEquals(expected(), restore(manager));
+	delegate.failing = true;
+	assertFalse(manager.trySave((SaveVisitor visitor) -> visitor.persistInt("first", 5)));
+	assertEquals(expected(), restore(manager));
+	delegate.failing = false;
+	assertTrue(manager.trySave((SaveVisitor visitor) -> visitor.persistInt("first", 5)));
+	final int restores = delegate.restores;
+	assertEquals(5, restoreInt(manager, "first"));
+	assertEquals(restores, delegate.restores);
+    }
+
+    @Test
+    public void restoresWhenTheDelegateHasNothingStored() {
+	final CountingManager delegate = new CountingManager(new StreamingXMLPersistenceManager(folder.getRoot().toPath().resolve("missing.xml")));
+	final CachingPersistenceManager manager = new CachingPersistenceManager(delegate, 1024 * 1024);
+	assertEquals(-1, restoreInt(manager, "first"));
+	assertEquals(-1, restoreInt(manager, "first"));
+	assertEquals(1, delegate.restores);
+    }
+
+    private static int restoreInt(PersistenceManager manager, String key) {
+	final int[] restored = {0};
+	manager.restore((LoadVisitor visitor) -> restored[0] = visitor.restoreInt(key, -1));
+	return restored[0];
+    }
+
+    private static Saveable values() {
+	return (SaveVisitor visitor) -> {
+	    visitor.persistInt("first", 1);
+	    visitor.persistNested("items", IntStream.range(0, 3)
+		    .mapToObj((int i) -> (Consumer<SaveVisitor>) (SaveVisitor item) -> item.persistInt("value", 10 * i)));
+	    visitor.persistInt("last", 2);
+	};
+    }
+
+    private static List<Integer> expected() {
+	final List<Integer> expected = new ArrayList<>();
+	expected.add(1);
+	expected.add(0);
+	expected.add(10);
+	expected.add(20);
+	expected.add(2);
+	return expected;
+    }
+
+    private static List<Integer> restore(PersistenceManager manager) {
+	final List<Integer> restored = new ArrayList<>();
+	manager.restore((LoadVisitor visitor) -> {
+	    restored.add(visitor.restoreInt("first", -1));
+	    restored.addAll(visitor.restoreNested("items")
+		    .map((LoadVisitor item) -> item.restoreInt("value", -1))
+		    .collect(Collectors.toList()));
+	    restored.add(visitor.restoreInt("last", -1));
+	});
+	return restored;
+    }
+
+    /**
+     * Counts the restores of a delegate and fails its saves on request,
+     * without writing anything.
+     */
+    private static final class CountingManager implements PersistenceManager {
+
+	private final PersistenceManager delegate;
+	private int restores;
+	private boolean failing;
+
+	CountingManager(PersistenceManager delegate) {
+	    this.delegate = delegate;
+	}
+
+	@Override
+	public void restore(Loadable peristable) {
+	    this.restores++;
+	    this.delegate.restore(peristable);
+	}
+
+	@Override
+	public void save(Saveable peristable) {
+	    trySave(peristable);
+	}
+
+	@Override
+	public boolean trySave(Saveable peristable) {
+	    if (this.failing) {
+		return false;
+	    }
+	    return this.delegate.trySave(peristable);
+	}
+
+    }
+
+}
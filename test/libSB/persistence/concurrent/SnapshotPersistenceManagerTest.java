@@ -0,0 +1,159 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.concurrent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class SnapshotPersistenceManagerTest {
+
+    private static final int ITEMS = 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setUp() {
+	this.file = folder.getRoot().toPath().resolve("snapshot.xml");
+    }
+
+    @Test
+    public void restoresSeeCompleteSavesOnly() throws Exception {
+	final SnapshotPersistenceManager manager = new SnapshotPersistenceManager(this.file);
+	manager.save(values(0));
+	final ExecutorService executor = Executors.newFixedThreadPool(6);
+	final AtomicBoolean saving = new AtomicBoolean(true);
+	try {
+	    final List<Future<?>> tasks = new ArrayList<>();
+	    for (int writer = 0; writer < 2; writer++) {
+		final int offset = writer;
+		tasks.add(executor.submit(() -> {
+		    for (int round = 1; round <= 100; round++) {
+			assertTrue(manager.trySave(values(2 * round + offset)));
+		    }
+		}));
+	    }
+	    for (int reader = 0; reader < 4; reader++) {
+		tasks.add(executor.submit(() -> {
+		    while (saving.get()) {
+			final List<Integer> restored = restore(manager);
+			assertEquals(ITEMS + 1, restored.size());
+			assertEquals(1, restored.stream().distinct().count());
+		    }
+		}));
+	    }
+	    tasks.get(0).get();
+	    tasks.get(1).get();
+	    saving.set(false);
+	    for (final Future<?> task : tasks) {
+		task.get();
+	    }
+	} finally {
+	    executor.shutdownNow();
+	    executor.awaitTermination(10, TimeUnit.SECONDS);
+	}
+	assertEquals(restore(manager), restore(new SnapshotPersistenceManager(this.file)));
+    }
+
+    @Test
+    public void failedWriteKeepsThePublishedState() throws IOException {
+	final SnapshotPersistenceManager manager = new SnapshotPersistenceManager(this.file);
+	assertTrue(manager.trySave(values(1)));
+	// a non-empty directory cannot be replaced by the written file
+	Files.delete(this.file);
+	Files.createDirectory(this.file);
+	Files.createFile(this.file.resolve("content"));
+	assertFalse(manager.trySave(values(2)));
+	assertEquals(expected(1), restore(manager));
+    }
+
+    @Test
+    public void skipsCorruptValues() throws IOException {
+	Files.write(this.file, ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+		+ "<!DOCTYPE properties SYSTEM \"http://java.sun.com/dtd/properties.dtd\">\n"
+		+ "<properties>\n"
+		+ "<entry key=\"a\">AAAAAQ==</entry>\n"
+		+ "<entry key=\"b\">not base64!</entry>\n"
+		+ "</properties>\n").getBytes(StandardCharsets.UTF_8));
+	final SnapshotPersistenceManager manager = new SnapshotPersistenceManager(this.file);
+	final int[] restored = {0, 0};
+	manager.restore((LoadVisitor visitor) -> {
+	    restored[0] = visitor.restoreInt("a", -1);
+	    restored[1] = visitor.restoreInt("b", -1);
+	});
+	assertEquals(1, restored[0]);
+	assertEquals(-1, restored[1]);
+    }
+
+    private static Saveable values(int value) {
+	return (SaveVisitor visitor) -> {
+	    visitor.persistInt("value", value);
+	    visitor.persistNested("items", IntStream.range(0, ITEMS)
+		    .mapToObj((int i) -> (Consumer<SaveVisitor>) (SaveVisitor item) -> item.persistInt("value", value)));
+	};
+    }
+
+    private static List<Integer> expected(int value) {
+	return IntStream.range(0, ITEMS + 1).mapToObj((int i) -> value).collect(Collectors.toList());
+    }
+
+    private static List<Integer> restore(SnapshotPersistenceManager manager) {
+	final List<Integer> restored = new ArrayList<>();
+	manager.restore((LoadVisitor visitor) -> {
+	    restored.add(visitor.restoreInt("value", -1));
+	    visitor.restoreNested("items").forEach((LoadVisitor item) -> restored.add(item.restoreInt("value", -1)));
+	});
+	return restored;
+    }
+
+}
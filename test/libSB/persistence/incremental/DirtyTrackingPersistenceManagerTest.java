@@ -0,0 +1,172 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.incremental;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import libSB.persistence.caching.CachingPersistenceManager;
+import libSB.persistence.concurrent.SnapshotPersistenceManager;
+import libSB.persistence.mapBased.MapLoadVisitor;
+import libSB.persistence.mapBased.MapSaveVisitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class DirtyTrackingPersistenceManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MapPersistenceManager delegate;
+    private DirtyTrackingPersistenceManager manager;
+
+    @Before
+    public void setUp() {
+	this.delegate = new MapPersistenceManager();
+	this.manager = new DirtyTrackingPersistenceManager(this.delegate);
+    }
+
+    @Test
+    public void passesOnChangedKeysOnly() {
+	this.manager.save(values(1, 2));
+	this.manager.save(values(1, 3));
+	assertEquals(listOf("a", "b", "b"), this.delegate.savedKeys);
+    }
+
+    @Test
+    public void skipsKeysRestoredThroughNativePaths() {
+	this.delegate.save(values(1, 2));
+	this.delegate.savedKeys.clear();
+	this.manager.restore((LoadVisitor visitor) -> {
+	    visitor.restoreInt("a", -1);
+	    visitor.restoreLong("b", -1L);
+	});
+	this.manager.save(values(1, 2));
+	assertEquals(listOf(), this.delegate.savedKeys);
+    }
+
+    @Test
+    public void repeatsFailedSave() {
+	this.manager.save(values(1, 2));
+	this.delegate.failing = true;
+	this.manager.save(values(1, 3));
+	this.delegate.failing = false;
+	this.manager.save(values(1, 3));
+	assertEquals(listOf("a", "b", "b", "b"), this.delegate.savedKeys);
+    }
+
+    @Test
+    public void repeatsSaveFailedBelowCaching() {
+	final DirtyTrackingPersistenceManager tracking = new DirtyTrackingPersistenceManager(new CachingPersistenceManager(this.delegate, 1024 * 1024, true));
+	tracking.save(values(1, 2));
+	this.delegate.failing = true;
+	assertFalse(tracking.trySave(values(1, 3)));
+	this.delegate.failing = false;
+	assertTrue(tracking.trySave(values(1, 3)));
+	assertEquals(listOf("a", "b", "b", "b"), this.delegate.savedKeys);
+    }
+
+    @Test
+    public void repeatsSaveFailedBelowSnapshot() throws IOException {
+	final Path file = this.folder.getRoot().toPath().resolve("snapshot.xml");
+	final DirtyTrackingPersistenceManager tracking = new DirtyTrackingPersistenceManager(new SnapshotPersistenceManager(file));
+	assertTrue(tracking.trySave(values(1, 2)));
+	// a non-empty directory cannot be replaced by the written file
+	Files.delete(file);
+	Files.createDirectory(file);
+	Files.createFile(file.resolve("content"));
+	assertFalse(tracking.trySave(values(1, 3)));
+	Files.delete(file.resolve("content"));
+	Files.delete(file);
+	assertTrue(tracking.trySave(values(1, 3)));
+	final long[] restored = {0};
+	new SnapshotPersistenceManager(file).restore((LoadVisitor visitor) -> restored[0] = visitor.restoreLong("b", -1L));
+	assertEquals(3, restored[0]);
+    }
+
+    private static Saveable values(int a, long b) {
+	return (SaveVisitor visitor) -> {
+	    visitor.persistInt("a", a);
+	    visitor.persistLong("b", b);
+	};
+    }
+
+    private static List<String> listOf(String... values) {
+	final List<String> list = new ArrayList<>();
+	for (final String value : values) {
+	    list.add(value);
+	}
+	return list;
+    }
+
+    private static final class MapPersistenceManager implements PersistenceManager {
+
+	private final NavigableMap<String, byte[]> values = new TreeMap<>();
+	private final List<String> savedKeys = new ArrayList<>();
+	private boolean failing;
+
+	@Override
+	public void restore(Loadable peristable) {
+	    peristable.accept(new MapLoadVisitor(this.values));
+	}
+
+	@Override
+	public void save(Saveable peristable) {
+	    trySave(peristable);
+	}
+
+	@Override
+	public boolean trySave(Saveable peristable) {
+	    final NavigableMap<String, byte[]> written = new TreeMap<>();
+	    peristable.accept(new MapSaveVisitor(written));
+	    this.savedKeys.addAll(written.keySet());
+	    if (this.failing) {
+		return false;
+	    }
+	    this.values.putAll(written);
+	    return true;
+	}
+
+    }
+
+}
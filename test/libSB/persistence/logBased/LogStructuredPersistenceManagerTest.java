@@ -0,0 +1,278 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.logBased;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SaveVisitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class LogStructuredPersistenceManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private List<FailingChannel> channels;
+
+    @Before
+    public void setUp() {
+	this.directory = folder.getRoot().toPath().resolve("log");
+	this.channels = new ArrayList<>();
+    }
+
+    @Test
+    public void replaysSavedValues() throws IOException {
+	try (LogStructuredPersistenceManager manager = new LogStructuredPersistenceManager(this.directory)) {
+	    manager.save((SaveVisitor visitor) -> {
+		visitor.persistInt("a", 1);
+		visitor.persistInt("b", 2);
+	    });
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 3));
+	}
+	assertEquals(3, restoreInt("a"));
+	assertEquals(2, restoreInt("b"));
+    }
+
+    @Test
+    public void dropsRecordTornByCrash() throws IOException {
+	try (LogStructuredPersistenceManager manager = new LogStructuredPersistenceManager(this.directory)) {
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 1));
+	}
+	final Path segment = onlySegment();
+	final long intactSize = Files.size(segment);
+	Files.write(segment, new byte[]{LogRecords.PUT, 0, 0, 0, 1, 'a', 0}, StandardOpenOption.APPEND);
+	try (LogStructuredPersistenceManager manager = new LogStructuredPersistenceManager(this.directory)) {
+	    assertEquals(intactSize, Files.size(segment));
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 2));
+	}
+	assertEquals(2, restoreInt("a"));
+    }
+
+    @Test
+    public void dropsRecordWithDamagedChecksum() throws IOException {
+	try (LogStructuredPersistenceManager manager = new LogStructuredPersistenceManager(this.directory)) {
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 1));
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 2));
+	}
+	final Path segment = onlySegment();
+	final byte[] bytes = Files.readAllBytes(segment);
+	bytes[bytes.length - 1] ^= 1;
+	Files.write(segment, bytes);
+	assertEquals(1, restoreInt("a"));
+    }
+
+    @Test
+    public void failedAppendDoesNotHideLaterRecords() throws IOException {
+	try (LogStructuredPersistenceManager manager = failingManager()) {
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 1));
+	    this.channels.get(0).failWrites = true;
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 2));
+	    this.channels.get(0).failWrites = false;
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("b", 3));
+	    assertEquals(1, restoreInt(manager, "a"));
+	}
+	assertEquals(1, this.channels.size());
+	assertEquals(1, restoreInt("a"));
+	assertEquals(3, restoreInt("b"));
+    }
+
+    @Test
+    public void rollsSegmentWhenTruncationFails() throws IOException {
+	try (LogStructuredPersistenceManager manager = failingManager()) {
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 1));
+	    this.channels.get(0).failWrites = true;
+	    this.channels.get(0).failTruncate = true;
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("a", 2));
+	    manager.save((SaveVisitor visitor) -> visitor.persistInt("b", 3));
+	}
+	assertEquals(2, this.channels.size());
+	assertEquals(1, restoreInt("a"));
+	assertEquals(3, restoreInt("b"));
+    }
+
+    private LogStructuredPersistenceManager failingManager() throws IOException {
+	return new LogStructuredPersistenceManager(this.directory, LogStructuredPersistenceManager.DEFAULT_COMPACTION_THRESHOLD, (Path segment) -> {
+	    final FailingChannel channel = new FailingChannel(FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+	    this.channels.add(channel);
+	    return channel;
+	});
+    }
+
+    private int restoreInt(String key) throws IOException {
+	try (LogStructuredPersistenceManager manager = new LogStructuredPersistenceManager(this.directory)) {
+	    return restoreInt(manager, key);
+	}
+    }
+
+    private static int restoreInt(LogStructuredPersistenceManager manager, String key) {
+	final int[] value = {-1};
+	manager.restore((LoadVisitor visitor) -> value[0] = visitor.restoreInt(key, -1));
+	return value[0];
+    }
+
+    private Path onlySegment() throws IOException {
+	final List<Path> segments = new ArrayList<>();
+	try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory)) {
+	    entries.forEach(segments::add);
+	}
+	assertEquals(1, segments.size());
+	return segments.get(0);
+    }
+
+    /**
+     * Writes half of the first buffer handed to it and fails afterwards while
+     * {@link #failWrites} is set.
+     */
+    private static final class FailingChannel extends FileChannel {
+
+	private final FileChannel channel;
+	private volatile boolean failWrites;
+	private volatile boolean failTruncate;
+
+	FailingChannel(FileChannel channel) {
+	    this.channel = channel;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+	    if (this.failWrites) {
+		final ByteBuffer half = src.duplicate();
+		half.limit(src.position() + src.remaining() / 2);
+		final int written = this.channel.write(half);
+		src.position(src.position() + written);
+		throw new IOException("simulated write failure");
+	    }
+	    return this.channel.write(src);
+	}
+
+	@Override
+	public FileChannel truncate(long size) throws IOException {
+	    if (this.failTruncate) {
+		throw new IOException("simulated truncate failure");
+	    }
+	    this.channel.truncate(size);
+	    return this;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+	    return this.channel.read(dst);
+	}
+
+	@Override
+	public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+	    return this.channel.read(dsts, offset, length);
+	}
+
+	@Override
+	public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+	    return this.channel.write(srcs, offset, length);
+	}
+
+	@Override
+	public long position() throws IOException {
+	    return this.channel.position();
+	}
+
+	@Override
+	public FileChannel position(long newPosition) throws IOException {
+	    this.channel.position(newPosition);
+	    return this;
+	}
+
+	@Override
+	public long size() throws IOException {
+	    return this.channel.size();
+	}
+
+	@Override
+	public void force(boolean metaData) throws IOException {
+	    this.channel.force(metaData);
+	}
+
+	@Override
+	public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+	    return this.channel.transferTo(position, count, target);
+	}
+
+	@Override
+	public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+	    return this.channel.transferFrom(src, position, count);
+	}
+
+	@Override
+	public int read(ByteBuffer dst, long position) throws IOException {
+	    return this.channel.read(dst, position);
+	}
+
+	@Override
+	public int write(ByteBuffer src, long position) throws IOException {
+	    return this.channel.write(src, position);
+	}
+
+	@Override
+	public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+	    return this.channel.map(mode, position, size);
+	}
+
+	@Override
+	public FileLock lock(long position, long size, boolean shared) throws IOException {
+	    return this.channel.lock(position, size, shared);
+	}
+
+	@Override
+	public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+	    return this.channel.tryLock(position, size, shared);
+	}
+
+	@Override
+	protected void implCloseChannel() throws IOException {
+	    this.channel.close();
+	}
+
+    }
+
+}
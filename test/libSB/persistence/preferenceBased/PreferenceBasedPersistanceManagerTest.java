@@ -0,0 +1,138 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.preferenceBased;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class PreferenceBasedPersistanceManagerTest {
+
+    private String application;
+    private Preferences node;
+
+    @Before
+    public void setUp() {
+	this.application = "libSB-test-" + System.nanoTime();
+	this.node = Preferences.userRoot().node(this.application);
+    }
+
+    @After
+    public void tearDown() throws BackingStoreException {
+	this.node.removeNode();
+    }
+
+    @Test
+    public void removesItemsBeyondTheNewCount() throws BackingStoreException {
+	final PreferenceBasedPersistanceManager manager = new PreferenceBasedPersistanceManager(this.application, true);
+	manager.save(items(5));
+	manager.save(items(2));
+	assertEquals(2, this.node.node("items").childrenNames().length);
+	assertEquals(IntStream.range(0, 2).boxed().collect(Collectors.toList()), restoreItems(manager));
+    }
+
+    @Test
+    public void removesKeysAndNodesAnItemNoLongerWrites() throws BackingStoreException {
+	final PreferenceBasedPersistanceManager manager = new PreferenceBasedPersistanceManager(this.application, true);
+	manager.save(item((SaveVisitor item) -> {
+	    item.persistInt("kept", 1);
+	    item.persistInt("dropped", 2);
+	    item.persistNested("children", IntStream.range(0, 1).mapToObj((int i) -> (SaveVisitor child) -> child.persistInt("value", i)));
+	}));
+	manager.save(item((SaveVisitor item) -> item.persistInt("kept", 1)));
+	final Preferences itemNode = this.node.node("items/items_0");
+	assertArrayEquals(new String[]{"kept"}, itemNode.keys());
+	assertArrayEquals(new String[0], itemNode.childrenNames());
+    }
+
+    @Test
+    public void keepsTheFirstNodeOfNestedPaths() throws BackingStoreException {
+	final PreferenceBasedPersistanceManager manager = new PreferenceBasedPersistanceManager(this.application, true);
+	final Saveable nestedPath = item((SaveVisitor item) -> item.persistNested("group/children",
+		IntStream.range(0, 1).mapToObj((int i) -> (SaveVisitor child) -> child.persistInt("value", i))));
+	manager.save(nestedPath);
+	manager.save(nestedPath);
+	assertTrue(this.node.node("items/items_0").nodeExists("group/children"));
+    }
+
+    @Test
+    public void leavesTopLevelValuesOfOtherSaveables() throws BackingStoreException {
+	final PreferenceBasedPersistanceManager manager = new PreferenceBasedPersistanceManager(this.application, true);
+	manager.save((SaveVisitor visitor) -> visitor.persistInt("other", 7));
+	manager.save(items(1));
+	assertEquals(7, restoreInt(manager, "other"));
+	assertFalse(this.node.nodeExists("items/items_1"));
+    }
+
+    @Test
+    public void unbatchedModeKeepsStaleItems() throws BackingStoreException {
+	final PreferenceBasedPersistanceManager manager = new PreferenceBasedPersistanceManager(this.application);
+	manager.save(items(3));
+	manager.save(items(1));
+	assertEquals(3, this.node.node("items").childrenNames().length);
+    }
+
+    private static Saveable items(int count) {
+	return (SaveVisitor visitor) -> visitor.persistNested("items", IntStream.range(0, count)
+		.mapToObj((int i) -> (Consumer<SaveVisitor>) (SaveVisitor item) -> item.persistInt("value", i)));
+    }
+
+    private static Saveable item(Consumer<SaveVisitor> item) {
+	return (SaveVisitor visitor) -> visitor.persistNested("items", IntStream.range(0, 1).mapToObj((int i) -> item));
+    }
+
+    private static List<Integer> restoreItems(PreferenceBasedPersistanceManager manager) {
+	final List<List<Integer>> restored = new ArrayList<>();
+	manager.restore((LoadVisitor visitor) -> restored.add(visitor.restoreNested("items")
+		.map((LoadVisitor item) -> item.restoreInt("value", -1))
+		.collect(Collectors.toList())));
+	return restored.get(0);
+    }
+
+    private static int restoreInt(PreferenceBasedPersistanceManager manager, String key) {
+	final int[] restored = {-1};
+	manager.restore((LoadVisitor visitor) -> restored[0] = visitor.restoreInt(key, -1));
+	return restored[0];
+    }
+
+}
@@ -0,0 +1,111 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.propertiesBased;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SaveVisitor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class PropertiesBase64_LoadVisitorTest {
+
+    @Test
+    public void decodesViewsLikeTheBase64Decoder() {
+	final Random random = new Random(0);
+	final Properties properties = new Properties();
+	final byte[][] values = new byte[300][];
+	for (int i = 0; i < values.length; i++) {
+	    values[i] = new byte[i < 20 ? i : random.nextInt(2000)];
+	    random.nextBytes(values[i]);
+	    final String encoded = Base64.getEncoder().encodeToString(values[i]);
+	    properties.setProperty("key" + i, i % 2 == 0 ? encoded : encoded.replace("=", ""));
+	}
+	final LoadVisitor visitor = new PropertiesBase64_LoadVisitor(properties, null);
+	for (int i = 0; i < values.length; i++) {
+	    assertArrayEquals(values[i], restoreView(visitor, "key" + i));
+	}
+    }
+
+    @Test
+    public void rejectsWhatTheBase64DecoderRejects() {
+	final String[] invalid = {"Q", "QQ=", "QUJD=", "QUJD====", "QQ=A", "Q===", "QU-D", "QUJä", "QU JD"};
+	for (final String property : invalid) {
+	    try {
+		Base64.getDecoder().decode(property);
+		fail("decoder accepted " + property);
+	    } catch (final IllegalArgumentException ex) {
+		// expected
+	    }
+	    final Properties properties = new Properties();
+	    properties.setProperty("key", property);
+	    try {
+		restoreView(new PropertiesBase64_LoadVisitor(properties, null), "key");
+		fail("accepted " + property);
+	    } catch (final IllegalArgumentException ex) {
+		// expected
+	    }
+	}
+    }
+
+    @Test
+    public void decodesViewsOfParallelItems() {
+	final Properties properties = new Properties();
+	final SaveVisitor saveVisitor = new PropertiesBase64_SaveVisitor(properties, Base64.getEncoder()::encode);
+	saveVisitor.persistNested("items", IntStream.range(0, 2000).mapToObj((int i) -> (Consumer<SaveVisitor>) (SaveVisitor item)
+		-> item.persistSingle("value", () -> "item " + i, (String value) -> value.getBytes(StandardCharsets.UTF_8))));
+	final LoadVisitor visitor = new PropertiesBase64_LoadVisitor(properties, null);
+	final List<String> restored = visitor.restoreNested("items").parallel()
+		.map((LoadVisitor item) -> new String(restoreView(item, "value"), StandardCharsets.UTF_8))
+		.collect(Collectors.toList());
+	assertEquals(IntStream.range(0, 2000).mapToObj((int i) -> "item " + i).collect(Collectors.toList()), restored);
+    }
+
+    private static byte[] restoreView(LoadVisitor visitor, String key) {
+	final byte[][] restored = new byte[1][];
+	visitor.restoreView(key, (byte[] bytes) -> restored[0] = bytes, (Function<ByteBuffer, byte[]>) (ByteBuffer view) -> {
+	    final byte[] bytes = new byte[view.remaining()];
+	    view.get(bytes);
+	    return bytes;
+	});
+	return restored[0] != null ? restored[0] : new byte[0];
+    }
+
+}
@@ -0,0 +1,150 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.sharded;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class ShardedPersistenceManagerTest {
+
+    private static final int KEYS = 32;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void setUp() {
+	this.directory = folder.getRoot().toPath().resolve("shards");
+    }
+
+    @Test
+    public void roundTripsAcrossShards() throws IOException {
+	new ShardedPersistenceManager(this.directory, 4).save(values(1));
+	assertEquals(expected(1), restore(new ShardedPersistenceManager(this.directory, 4)));
+    }
+
+    @Test
+    public void failedShardKeepsItsPreviousContent() throws IOException {
+	final ShardedPersistenceManager manager = new ShardedPersistenceManager(this.directory, 2);
+	assertTrue(manager.trySave(values(1)));
+	final Path blocker = block(1, 2);
+	assertFalse(manager.trySave(values(2)));
+	final Map<String, Integer> restored = restore(manager);
+	assertTrue(restored.containsValue(1));
+	assertTrue(restored.containsValue(2));
+	unblock(blocker);
+	assertEquals(restored, restore(new ShardedPersistenceManager(this.directory, 2)));
+	assertTrue(manager.trySave(values(2)));
+	assertEquals(expected(2), restore(new ShardedPersistenceManager(this.directory, 2)));
+    }
+
+    @Test
+    public void keepsPreviousLayoutUntilRedistributed() throws IOException {
+	new ShardedPersistenceManager(this.directory, 3).save(values(1));
+	final Path blocker = block(1, 2);
+	new ShardedPersistenceManager(this.directory, 2);
+	assertTrue(Files.exists(this.directory.resolve("shard-0-of-3.xml")));
+	unblock(blocker);
+	assertEquals(expected(1), restore(new ShardedPersistenceManager(this.directory, 2)));
+	assertFalse(Files.exists(this.directory.resolve("shard-0-of-3.xml")));
+    }
+
+    /**
+     * Puts a non-empty directory where the shard file goes, so replacing it
+     * fails. An existing shard file is moved into it.
+     */
+    private Path block(int shard, int shardCount) throws IOException {
+	final Path blocker = this.directory.resolve(String.format("shard-%d-of-%d.xml", shard, shardCount));
+	final Path aside = blocker.resolveSibling("aside");
+	Files.createDirectories(this.directory);
+	if (Files.exists(blocker)) {
+	    Files.move(blocker, aside);
+	} else {
+	    Files.createFile(aside);
+	}
+	Files.createDirectory(blocker);
+	Files.move(aside, blocker.resolve("content"));
+	return blocker;
+    }
+
+    private void unblock(Path blocker) throws IOException {
+	final Path aside = blocker.resolveSibling("aside");
+	Files.move(blocker.resolve("content"), aside);
+	Files.delete(blocker);
+	if (Files.size(aside) > 0) {
+	    Files.move(aside, blocker);
+	} else {
+	    Files.delete(aside);
+	}
+    }
+
+    private static Saveable values(int value) {
+	return (SaveVisitor visitor) -> {
+	    for (int i = 0; i < KEYS; i++) {
+		visitor.persistInt("key" + i, value);
+	    }
+	};
+    }
+
+    private static Map<String, Integer> expected(int value) {
+	final Map<String, Integer> expected = new TreeMap<>();
+	for (int i = 0; i < KEYS; i++) {
+	    expected.put("key" + i, value);
+	}
+	return expected;
+    }
+
+    private static Map<String, Integer> restore(PersistenceManager manager) {
+	final Map<String, Integer> restored = new TreeMap<>();
+	manager.restore((LoadVisitor visitor) -> {
+	    for (int i = 0; i < KEYS; i++) {
+		final String key = "key" + i;
+		visitor.restoreInt(key, (int value) -> restored.put(key, value));
+	    }
+	});
+	return restored;
+    }
+
+}
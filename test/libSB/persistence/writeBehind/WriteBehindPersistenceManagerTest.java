@@ -0,0 +1,225 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.writeBehind;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import libSB.byteTools.StandardByteConverters;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.Loadable;
+import libSB.persistence.PersistenceManager;
+import libSB.persistence.SaveSnapshot;
+import libSB.persistence.Saveable;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class WriteBehindPersistenceManagerTest {
+
+    @Test
+    public void coalescesSavesWithinTheWindow() {
+	final RecordingManager delegate = new RecordingManager();
+	try (final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.HOURS)) {
+	    manager.save(values("a", 1));
+	    manager.save(values("a", 2));
+	    manager.save(values("a", 3));
+	    assertTrue(delegate.writes.isEmpty());
+	    assertTrue(manager.flush());
+	    assertEquals(Arrays.asList(map("a", 3)), delegate.writes);
+	}
+    }
+
+    @Test
+    public void writesOnlyTheLastSaveToRewritingDelegates() {
+	final RecordingManager delegate = new RecordingManager();
+	try (final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.HOURS)) {
+	    manager.save(values("a", 1, "b", 1));
+	    manager.save(values("b", 2));
+	    assertTrue(manager.flush());
+	    assertEquals(Arrays.asList(map("b", 2)), delegate.writes);
+	}
+    }
+
+    @Test
+    public void mergesSavesForMergingDelegates() {
+	final RecordingManager delegate = new RecordingManager();
+	try (final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.HOURS, true)) {
+	    manager.save(values("a", 1, "b", 1));
+	    manager.save(values("c", 2, "a", 2));
+	    assertTrue(manager.flush());
+	    assertEquals(Arrays.asList(map("a", 2, "b", 1, "c", 2)), delegate.writes);
+	    assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<>(delegate.writes.get(0).keySet()));
+	}
+    }
+
+    @Test
+    public void keepsFailedSavesAheadOfNewerOnes() {
+	final RecordingManager delegate = new RecordingManager();
+	try (final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.HOURS, true)) {
+	    delegate.failing = true;
+	    manager.save(values("a", 1, "b", 1));
+	    assertFalse(manager.flush());
+	    manager.save(values("b", 2));
+	    assertFalse(manager.flush());
+	    assertEquals(2, delegate.attempts);
+	    delegate.failing = false;
+	    assertTrue(manager.flush());
+	    assertEquals(Arrays.asList(map("a", 1, "b", 2)), delegate.writes);
+	    assertTrue(manager.flush());
+	    assertEquals(1, delegate.writes.size());
+	}
+    }
+
+    @Test
+    public void trySaveReportsTheWrite() {
+	final RecordingManager delegate = new RecordingManager();
+	try (final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.HOURS)) {
+	    delegate.failing = true;
+	    assertFalse(manager.trySave(values("a", 1)));
+	    delegate.failing = false;
+	    assertTrue(manager.trySave(values("a", 2)));
+	    assertEquals(Arrays.asList(map("a", 2)), delegate.writes);
+	}
+    }
+
+    @Test
+    public void writesInTheBackgroundAfterTheWindow() throws InterruptedException {
+	final RecordingManager delegate = new RecordingManager();
+	try (final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.MILLISECONDS)) {
+	    manager.save(values("a", 1));
+	    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+	    while (delegate.writeCount() == 0 && System.nanoTime() < deadline) {
+		Thread.sleep(1);
+	    }
+	    assertEquals(Arrays.asList(map("a", 1)), delegate.writes);
+	}
+    }
+
+    @Test
+    public void restoresPendingSaves() {
+	final RecordingManager delegate = new RecordingManager();
+	try (final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.HOURS)) {
+	    manager.save(values("a", 1));
+	    final Map<String, Integer> restored = new LinkedHashMap<>();
+	    manager.restore((Loadable) (visitor) -> visitor.restoreInt("a", (int value) -> restored.put("a", value)));
+	    assertEquals(map("a", 1), restored);
+	}
+    }
+
+    @Test
+    public void closeWritesPendingSaves() {
+	final RecordingManager delegate = new RecordingManager();
+	final WriteBehindPersistenceManager manager = new WriteBehindPersistenceManager(delegate, 1, TimeUnit.HOURS);
+	manager.save(values("a", 1));
+	manager.close();
+	assertEquals(Arrays.asList(map("a", 1)), delegate.writes);
+	try {
+	    manager.save(values("a", 2));
+	    fail("saved after close");
+	} catch (final IllegalStateException ex) {
+	    // expected
+	}
+	assertEquals(1, delegate.writes.size());
+    }
+
+    private static Saveable values(Object... keysAndValues) {
+	return (visitor) -> {
+	    for (int i = 0; i < keysAndValues.length; i += 2) {
+		visitor.persistInt((String) keysAndValues[i], (Integer) keysAndValues[i + 1]);
+	    }
+	};
+    }
+
+    private static Map<String, Integer> map(Object... keysAndValues) {
+	final Map<String, Integer> map = new LinkedHashMap<>();
+	for (int i = 0; i < keysAndValues.length; i += 2) {
+	    map.put((String) keysAndValues[i], (Integer) keysAndValues[i + 1]);
+	}
+	return map;
+    }
+
+    private static final class RecordingManager implements PersistenceManager {
+
+	private final List<Map<String, Integer>> writes = new ArrayList<>();
+	private volatile boolean failing;
+	private int attempts;
+
+	synchronized int writeCount() {
+	    return this.writes.size();
+	}
+
+	@Override
+	public synchronized void restore(Loadable peristable) {
+	    final Map<String, Integer> stored = this.writes.isEmpty() ? new LinkedHashMap<>() : this.writes.get(this.writes.size() - 1);
+	    peristable.accept(new LoadVisitor() {
+		@Override
+		public <T> void restoreSingle(String key, Consumer<? super T> field, Function<byte[], T> typeConverter) {
+		    if (stored.containsKey(key)) {
+			field.accept(typeConverter.apply(StandardByteConverters.intToBytes(stored.get(key))));
+		    }
+		}
+
+		@Override
+		public Stream<LoadVisitor> restoreNested(String key) {
+		    return Stream.empty();
+		}
+	    });
+	}
+
+	@Override
+	public void save(Saveable peristable) {
+	    trySave(peristable);
+	}
+
+	@Override
+	public synchronized boolean trySave(Saveable peristable) {
+	    this.attempts++;
+	    if (this.failing) {
+		return false;
+	    }
+	    final Map<String, Integer> stored = new LinkedHashMap<>();
+	    for (final SaveSnapshot.Entry entry : SaveSnapshot.of(peristable).entries()) {
+		stored.put(entry.getKey(), StandardByteConverters.intFromBytes(entry.getValue()));
+	    }
+	    this.writes.add(stored);
+	    return true;
+	}
+
+    }
+
+}
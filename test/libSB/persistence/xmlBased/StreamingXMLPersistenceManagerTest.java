@@ -0,0 +1,132 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class StreamingXMLPersistenceManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StreamingXMLPersistenceManager manager;
+
+    @Before
+    public void setUp() {
+	final Path file = folder.getRoot().toPath().resolve("values.xml");
+	this.manager = new StreamingXMLPersistenceManager(file);
+    }
+
+    @Test
+    public void restoresKeysInAnyOrder() {
+	this.manager.save(items(3));
+	final List<Integer> restored = new ArrayList<>();
+	this.manager.restore((LoadVisitor visitor) -> {
+	    visitor.restoreInt("after", (int value) -> restored.add(value));
+	    visitor.restoreNested("items").forEach((LoadVisitor item) -> item.restoreInt("value", (int value) -> restored.add(value)));
+	    visitor.restoreInt("before", (int value) -> restored.add(value));
+	});
+	assertEquals(listOf(-1, 0, 10, 20, -2), restored);
+    }
+
+    @Test(timeout = 20000)
+    public void collectedItemsAreServedWithoutReparsing() {
+	final int count = 20000;
+	this.manager.save(items(count));
+	final List<Integer> restored = new ArrayList<>();
+	this.manager.restore((LoadVisitor visitor) -> {
+	    final List<LoadVisitor> items = visitor.restoreNested("items").collect(Collectors.toList());
+	    for (final LoadVisitor item : items) {
+		item.restoreNested("inner").forEach((LoadVisitor inner) -> inner.restoreInt("value", (int value) -> restored.add(value)));
+		item.restoreInt("value", (int value) -> restored.add(value));
+	    }
+	});
+	assertEquals(2 * count, restored.size());
+	assertEquals(Integer.valueOf(1), restored.get(0));
+	assertEquals(Integer.valueOf(0), restored.get(1));
+	assertEquals(Integer.valueOf((count - 1) * 10), restored.get(restored.size() - 1));
+    }
+
+    @Test
+    public void unconsumedStreamIsBufferedWhenTheCursorMovesOn() {
+	this.manager.save(items(4));
+	final List<Integer> restored = new ArrayList<>();
+	this.manager.restore((LoadVisitor visitor) -> {
+	    final Stream<LoadVisitor> items = visitor.restoreNested("items");
+	    visitor.restoreInt("after", (int value) -> restored.add(value));
+	    items.forEach((LoadVisitor item) -> item.restoreInt("value", (int value) -> restored.add(value)));
+	});
+	assertEquals(listOf(-1, 0, 10, 20, 30), restored);
+    }
+
+    @Test
+    public void skippedNestedValueIsRestoredFromTheFile() {
+	this.manager.save(items(2));
+	final List<Integer> restored = new ArrayList<>();
+	this.manager.restore((LoadVisitor visitor) -> {
+	    visitor.restoreInt("after", (int value) -> restored.add(value));
+	    visitor.restoreNested("items").forEach((LoadVisitor item) -> item.restoreInt("value", (int value) -> restored.add(value)));
+	});
+	assertEquals(listOf(-1, 0, 10), restored);
+    }
+
+    private static Saveable items(int count) {
+	return (SaveVisitor visitor) -> {
+	    visitor.persistInt("before", -2);
+	    visitor.persistNested("items", IntStream.range(0, count).mapToObj((int index) -> (Consumer<SaveVisitor>) (SaveVisitor item) -> {
+		item.persistNested("inner", Stream.of((Consumer<SaveVisitor>) (SaveVisitor inner) -> inner.persistInt("value", index + 1)));
+		item.persistInt("value", index * 10);
+	    }));
+	    visitor.persistInt("after", -1);
+	};
+    }
+
+    private static List<Integer> listOf(Integer... values) {
+	final List<Integer> list = new ArrayList<>();
+	for (final Integer value : values) {
+	    list.add(value);
+	}
+	return list;
+    }
+
+}
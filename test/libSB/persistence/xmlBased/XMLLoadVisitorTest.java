@@ -0,0 +1,111 @@
+/* 
+ * The MIT License
+ *
+ * Copyright 2015 Simon Berndt.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package libSB.persistence.xmlBased;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import libSB.persistence.LoadVisitor;
+import libSB.persistence.SaveVisitor;
+import libSB.persistence.Saveable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ *
+ * @author Simon Berndt
+ */
+public class XMLLoadVisitorTest {
+
+    private static final int COUNT = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parallelNestedRestoreKeepsItemOrder() throws ParserConfigurationException {
+	final DOMPersistenceManager manager = new DOMPersistenceManager(DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument());
+	manager.save(items());
+	assertEquals(expected(), restoreParallel(manager));
+    }
+
+    @Test
+    public void parallelNestedRestoreOfLoadedDocument() throws ParserConfigurationException, IOException {
+	final Path file = writeItems();
+	final DocumentIO documentIO = new DocumentIO();
+	for (int i = 0; i < 5; i++) {
+	    final Document document = documentIO.loadDocumentFromXML(file);
+	    assertFalse(document.getClass().getSimpleName().startsWith("Deferred"));
+	    assertEquals(expected(), restoreParallel(new DOMPersistenceManager(document)));
+	}
+    }
+
+    @Test
+    public void parallelNestedRestoreOfDeferredDocument() throws ParserConfigurationException, IOException, SAXException {
+	final Path file = writeItems();
+	for (int i = 0; i < 5; i++) {
+	    final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file.toFile());
+	    assertEquals(expected(), restoreParallel(new DOMPersistenceManager(document)));
+	}
+    }
+
+    private Path writeItems() throws ParserConfigurationException, IOException {
+	final Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+	new DOMPersistenceManager(document).save(items());
+	final Path file = folder.getRoot().toPath().resolve("items.xml");
+	new DocumentIO().writeDocumentToXML(document, file);
+	return file;
+    }
+
+    private static Saveable items() {
+	return (SaveVisitor visitor) -> visitor.persistNested("items", IntStream.range(0, COUNT)
+		.mapToObj((int i) -> (Consumer<SaveVisitor>) (SaveVisitor item) -> item.persistInt("value", i)));
+    }
+
+    private static List<Integer> expected() {
+	return IntStream.range(0, COUNT).boxed().collect(Collectors.toList());
+    }
+
+    private static List<Integer> restoreParallel(DOMPersistenceManager manager) {
+	final List<List<Integer>> restored = new ArrayList<>();
+	manager.restore((LoadVisitor visitor) -> restored.add(visitor.restoreNested("items")
+		.parallel()
+		.map((LoadVisitor item) -> item.restoreInt("value", -1))
+		.collect(Collectors.toList())));
+	return restored.get(0);
+    }
+
+}